@@ -1,7 +1,8 @@
 package it.fulminazzo.tagparser;
 
-import it.fulminazzo.tagparser.nodes.Node;
 import it.fulminazzo.tagparser.nodes.exceptions.NotValidTagNameException;
+import it.fulminazzo.tagparser.nodes.validators.NameValidator;
+import it.fulminazzo.tagparser.utils.Entities;
 import it.fulminazzo.tagparser.utils.StringUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -18,15 +19,16 @@ public interface Attributable<T extends Attributable<?>> {
 
     /**
      * Sets attribute.
+     * Its character references are decoded, as specified by {@link Entities#decodeAttribute(String)}.
      *
      * @param name  the name
      * @param value the value
      * @return the attribute
      */
     default @NotNull T setAttribute(@NotNull String name, @Nullable String value) {
-        if (!name.matches(Node.TAG_NAME_REGEX))
+        if (!NameValidator.isValidName(name))
             throw new NotValidTagNameException(name);
-        getAttributes().put(name, StringUtils.removeQuotes(value));
+        getAttributes().put(name, Entities.decodeAttribute(StringUtils.removeQuotes(value)));
         return (T) this;
     }
 
@@ -0,0 +1,131 @@
+package it.fulminazzo.tagparser.markup;
+
+import it.fulminazzo.tagparser.nodes.FrozenNode;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * A wrapper that allows many threads to query an {@link INodeObject} while another one updates it.
+ * <p>
+ * Writers are serialized by a {@link StampedLock}: every update is applied to the wrapped object while holding
+ * the write lock, and then a {@link FrozenNode} of its root and its HTML are published.
+ * Readers never touch the wrapped object, whose nodes are not safe to read concurrently:
+ * they only read the published state with an optimistic read, validated without blocking.
+ * Only a reader overlapping an update falls back to the read lock, waiting for the update to end.
+ * <p>
+ * Since the snapshot and the HTML are rebuilt upon every update, updates should be rare compared to reads.
+ *
+ * @param <T> the type of the object
+ */
+public final class ConcurrentNodeObject<T extends INodeObject> {
+    private final @NotNull T object;
+    private final @NotNull StampedLock lock;
+    private @Nullable FrozenNode snapshot;
+    private @NotNull String html;
+
+    /**
+     * Instantiates a new Concurrent node object.
+     * The given object should not be used directly anymore, but only through {@link #update(Consumer)}.
+     *
+     * @param object the object
+     */
+    public ConcurrentNodeObject(@NotNull T object) {
+        this.object = object;
+        this.lock = new StampedLock();
+        this.snapshot = object.freeze();
+        this.html = object.toHTML();
+    }
+
+    /**
+     * Update the object with the given function, while no other thread updates it.
+     *
+     * @param writer the function
+     * @return this object
+     */
+    public @NotNull ConcurrentNodeObject<T> update(@NotNull Consumer<? super T> writer) {
+        final long stamp = this.lock.writeLock();
+        try {
+            writer.accept(this.object);
+            this.snapshot = this.object.freeze();
+            this.html = this.object.toHTML();
+        } finally {
+            this.lock.unlockWrite(stamp);
+        }
+        return this;
+    }
+
+    /**
+     * Gets the snapshot of the root node published by the last update.
+     *
+     * @return the snapshot or null if there is no root
+     */
+    public @Nullable FrozenNode getSnapshot() {
+        final StampedLock lock = this.lock;
+        long stamp = lock.tryOptimisticRead();
+        final FrozenNode snapshot = this.snapshot;
+        if (lock.validate(stamp)) return snapshot;
+        stamp = lock.readLock();
+        try {
+            return this.snapshot;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Query the snapshot of the root node published by the last update, that is null if there is no root.
+     *
+     * @param <R>    the type of the result
+     * @param reader the query
+     * @return the result
+     */
+    public <R> R read(@NotNull Function<? super FrozenNode, ? extends R> reader) {
+        return reader.apply(getSnapshot());
+    }
+
+    /**
+     * Get the first node with the given tag name, in the root node and its descendants.
+     *
+     * @param tagName the tag name
+     * @return the node
+     */
+    public @Nullable FrozenNode getNode(@NotNull String tagName) {
+        final FrozenNode snapshot = getSnapshot();
+        return snapshot == null ? null : snapshot.getNode(tagName);
+    }
+
+    /**
+     * Get all the nodes with the given tag name, in the root node and its descendants.
+     *
+     * @param tagName the tag name
+     * @return the nodes
+     */
+    public @NotNull List<FrozenNode> getNodes(@NotNull String tagName) {
+        final FrozenNode snapshot = getSnapshot();
+        return snapshot == null ? Collections.emptyList() : snapshot.getNodes(tagName);
+    }
+
+    /**
+     * Converts the object in a HTML format, as it was after the last update.
+     *
+     * @return the string
+     */
+    public @NotNull String toHTML() {
+        final StampedLock lock = this.lock;
+        long stamp = lock.tryOptimisticRead();
+        final String html = this.html;
+        if (lock.validate(stamp)) return html;
+        stamp = lock.readLock();
+        try {
+            return this.html;
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
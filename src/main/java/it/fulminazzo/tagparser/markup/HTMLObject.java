@@ -1,10 +1,15 @@
 package it.fulminazzo.tagparser.markup;
 
+import it.fulminazzo.tagparser.markup.exceptions.WriteException;
+import it.fulminazzo.tagparser.nodes.CompactDocument;
 import it.fulminazzo.tagparser.nodes.ContainerNode;
+import it.fulminazzo.tagparser.nodes.FrozenNode;
 import it.fulminazzo.tagparser.nodes.Node;
 import it.fulminazzo.tagparser.nodes.NodeBuilder;
+import it.fulminazzo.tagparser.nodes.NodeIndex;
+import it.fulminazzo.tagparser.nodes.NodeWriter;
 import it.fulminazzo.tagparser.serializables.Serializable;
-import it.fulminazzo.tagparser.utils.StringUtils;
+import it.fulminazzo.tagparser.utils.Entities;
 import lombok.Getter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -12,12 +17,8 @@ import org.jetbrains.annotations.Nullable;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.LinkedHashMap;
-import java.util.LinkedHashSet;
-import java.util.Map;
-import java.util.Set;
-import java.util.function.BiConsumer;
-import java.util.function.Predicate;
+import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * An object to load, handle and dump HTML files.
@@ -25,12 +26,32 @@ import java.util.function.Predicate;
 @Getter
 @SuppressWarnings("UnusedReturnValue")
 public class HTMLObject implements Serializable, INodeObject {
+    /**
+     * The factory of the nodes rebuilt from a {@link CompactDocument}, validated like the ones read by the builder.
+     */
+    private static final CompactDocument.NodeFactory NODE_FACTORY = nodeFactory(new HTMLBuilder().getValidTags());
+
     protected Node rootNode;
+    /**
+     * The read-only representation of the document, if set with {@link #setDocument(CompactDocument)}.
+     * In that case, it is converted to the root node only when requested.
+     */
+    protected transient @Nullable CompactDocument document;
+    /**
+     * If enabled, the queries on the document will use a {@link NodeIndex} of the root node.
+     */
+    protected transient boolean indexing;
+    /**
+     * If enabled, the children of the nodes read will be parsed only when first requested.
+     *
+     * @see NodeBuilder#deferChildren()
+     */
+    protected transient boolean deferringChildren;
 
     /**
      * Instantiates a new Html object.
      */
-    protected HTMLObject() {
+    public HTMLObject() {
 
     }
 
@@ -68,7 +89,7 @@ public class HTMLObject implements Serializable, INodeObject {
      * @return the root
      */
     public @Nullable HTMLObject setRootNode(@NotNull String string) {
-        return setRootNode(new HTMLBuilder().from(string).build());
+        return setRootNode(newBuilder().from(string).build());
     }
 
     /**
@@ -78,7 +99,7 @@ public class HTMLObject implements Serializable, INodeObject {
      * @return the root
      */
     public @Nullable HTMLObject setRootNode(@NotNull File file) {
-        return setRootNode(new HTMLBuilder().from(file).build());
+        return setRootNode(newBuilder().from(file).build());
     }
 
     /**
@@ -88,7 +109,18 @@ public class HTMLObject implements Serializable, INodeObject {
      * @return the root
      */
     public @Nullable HTMLObject setRootNode(@NotNull InputStream stream) {
-        return setRootNode(new HTMLBuilder().from(stream).build());
+        return setRootNode(newBuilder().from(stream).build());
+    }
+
+    /**
+     * Set the root node from a new tree of nodes created from the given snapshot.
+     *
+     * @param snapshot the snapshot
+     * @return this object
+     * @see #freeze()
+     */
+    public @NotNull HTMLObject setRootNode(@NotNull FrozenNode snapshot) {
+        return setRootNode(snapshot.toNode(NODE_FACTORY));
     }
 
     /**
@@ -98,26 +130,184 @@ public class HTMLObject implements Serializable, INodeObject {
      * @return the root
      */
     public @NotNull HTMLObject setRootNode(@Nullable Node node) {
+        if (this.rootNode != null) NodeIndex.detach(this.rootNode);
         this.rootNode = node;
+        this.document = null;
+        return this;
+    }
+
+    /**
+     * Gets the root node.
+     * If the document is held as a {@link CompactDocument}, it is converted to a tree of nodes,
+     * that is held in its place from then on, so that the changes to the tree are kept.
+     *
+     * @return the root
+     */
+    @Override
+    public @Nullable Node getRootNode() {
+        if (this.document != null) setRootNode(this.document.toNode(NODE_FACTORY));
+        return this.rootNode;
+    }
+
+    @Override
+    public @NotNull CompactDocument.NodeFactory getNodeFactory() {
+        return NODE_FACTORY;
+    }
+
+    private static @NotNull CompactDocument.NodeFactory nodeFactory(@NotNull Map<String, Boolean> validTags) {
+        return (tagName, container) -> {
+            final Node node = CompactDocument.NodeFactory.DEFAULT.create(tagName, container);
+            return container ? new HTMLNode(node, validTags) : node;
+        };
+    }
+
+    /**
+     * Set the document from string, holding it as a read-only {@link CompactDocument}.
+     * Values and texts are decoded only when requested.
+     *
+     * @param string the string
+     * @return this object
+     */
+    public @NotNull HTMLObject setDocument(@NotNull String string) {
+        return setDocument(new HTMLBuilder().decodeLazily().from(string).buildCompact());
+    }
+
+    /**
+     * Set the document from file, holding it as a read-only {@link CompactDocument}.
+     * Values and texts are decoded only when requested.
+     *
+     * @param file the file
+     * @return this object
+     */
+    public @NotNull HTMLObject setDocument(@NotNull File file) {
+        return setDocument(new HTMLBuilder().decodeLazily().from(file).buildCompact());
+    }
+
+    /**
+     * Set the document from stream, holding it as a read-only {@link CompactDocument}.
+     * Values and texts are decoded only when requested.
+     *
+     * @param stream the stream
+     * @return this object
+     */
+    public @NotNull HTMLObject setDocument(@NotNull InputStream stream) {
+        return setDocument(new HTMLBuilder().decodeLazily().from(stream).buildCompact());
+    }
+
+    /**
+     * Hold the document as the given {@link CompactDocument}, in place of the root node.
+     *
+     * @param document the document
+     * @return this object
+     */
+    public @NotNull HTMLObject setDocument(@Nullable CompactDocument document) {
+        setRootNode((Node) null);
+        this.document = document;
+        return this;
+    }
+
+    /**
+     * Convert the root node to a {@link CompactDocument}, that will be held in its place.
+     *
+     * @return this object
+     */
+    public @NotNull HTMLObject compact() {
+        if (this.rootNode != null) setDocument(CompactDocument.of(this.rootNode));
+        return this;
+    }
+
+    /**
+     * Enable the index of the document, that will be built on the first query.
+     * If the document is held as a {@link CompactDocument}, it will be converted to a tree of nodes.
+     *
+     * @return this object
+     */
+    public @NotNull HTMLObject enableIndex() {
+        this.indexing = true;
+        return this;
+    }
+
+    /**
+     * Disable the index of the document.
+     *
+     * @return this object
+     */
+    public @NotNull HTMLObject disableIndex() {
+        this.indexing = false;
+        if (this.rootNode != null) NodeIndex.detach(this.rootNode);
+        return this;
+    }
+
+    /**
+     * Parse the children of the nodes read from now on only when first requested.
+     *
+     * @return this object
+     */
+    public @NotNull HTMLObject deferChildren() {
+        this.deferringChildren = true;
+        return this;
+    }
+
+    /**
+     * Parse the children of the nodes read from now on while reading.
+     *
+     * @return this object
+     */
+    public @NotNull HTMLObject undeferChildren() {
+        this.deferringChildren = false;
         return this;
     }
 
+    private @NotNull NodeBuilder newBuilder() {
+        final NodeBuilder builder = new HTMLBuilder();
+        return this.deferringChildren ? builder.deferChildren() : builder;
+    }
+
+    /**
+     * Gets the index of the root node, if enabled.
+     * If the document is held as a {@link CompactDocument}, it is converted to a tree of nodes first.
+     *
+     * @return the index or null if indexing is not enabled
+     * @see #getRootNode()
+     */
+    @Override
+    public @Nullable NodeIndex getIndex() {
+        if (!this.indexing) return null;
+        final Node rootNode = getRootNode();
+        return rootNode == null ? null : NodeIndex.of(rootNode);
+    }
+
     /**
      * Get the head node.
+     * If the document is held as a {@link CompactDocument}, it is converted to a tree of nodes first.
      *
      * @return the head
+     * @see #getRootNode()
      */
     public @Nullable Node getHead() {
-        return rootNode == null ? null : rootNode.getNode("head");
+        return getFirstNode("head");
     }
 
     /**
      * Get the body node.
+     * If the document is held as a {@link CompactDocument}, it is converted to a tree of nodes first.
      *
      * @return the body
+     * @see #getRootNode()
      */
     public @Nullable Node getBody() {
-        return rootNode == null ? null : rootNode.getNode("body");
+        return getFirstNode("body");
+    }
+
+    private @Nullable Node getFirstNode(@NotNull String tagName) {
+        // The document is converted once, so that the node returned is part of the tree and its changes are kept.
+        final NodeIndex index = getIndex();
+        if (index == null) {
+            final Node rootNode = getRootNode();
+            return rootNode == null ? null : rootNode.getNode(tagName);
+        }
+        final Iterator<Node> nodes = index.getNodesByTagName(tagName).iterator();
+        return nodes.hasNext() ? nodes.next() : null;
     }
 
     /**
@@ -126,7 +316,7 @@ public class HTMLObject implements Serializable, INodeObject {
      * @return the scripts
      */
     public @NotNull Set<Node> getScripts() {
-        return rootNode == null ? new LinkedHashSet<>() : rootNode.getNodes("script");
+        return new LinkedHashSet<>(getNodesByTagName("script"));
     }
 
     /**
@@ -135,62 +325,69 @@ public class HTMLObject implements Serializable, INodeObject {
      * @return the styles
      */
     public @NotNull Set<Node> getStyles() {
-        return rootNode == null ? new LinkedHashSet<>() : rootNode.getNodes(n -> {
+        // Tag names are matched ignoring the case, so the nodes are looked up by their attribute.
+        return getNodesByAttribute("rel").stream().filter(n -> {
             if (!n.getTagName().equalsIgnoreCase("link")) return false;
             final String rel = n.getAttribute("rel");
             if (rel == null) return false;
             else return rel.endsWith("stylesheet");
-        });
+        }).collect(Collectors.toCollection(LinkedHashSet::new));
     }
 
     @Override
     public @NotNull String toHTML() {
-        final StringBuilder output = new StringBuilder("<!DOCTYPE html>");
-        if (this.rootNode != null) output.append("\n").append(rootNode.toHTML());
+        final StringBuilder output = new StringBuilder();
+        try {
+            write(new NodeWriter(output));
+        } catch (IOException e) {
+            throw new WriteException(e.getMessage());
+        }
         return output.toString();
     }
 
+    @Override
+    public void write(@NotNull NodeWriter writer) throws IOException {
+        writer.append("<!DOCTYPE html>");
+        if (this.document != null) {
+            // The document is written without converting it.
+            final CompactDocument.Element root = this.document.getRoot();
+            if (root != null) writer.newLine().write(root, NODE_FACTORY);
+            return;
+        }
+        if (this.rootNode != null) writer.newLine().write(this.rootNode);
+    }
+
     private static class HTMLNode extends ContainerNode {
         private final Map<String, Boolean> validTags;
 
         /**
-         * Instantiates a new HTML node.
+         * Instantiates a new HTML node, with the tag name and the attributes of the given node.
          *
-         * @param tagName   the tag name
+         * @param node      the node
          * @param validTags the valid tags
          */
-        public HTMLNode(@NotNull String tagName, Map<String, Boolean> validTags) {
-            super(tagName);
+        public HTMLNode(@NotNull Node node, Map<String, Boolean> validTags) {
+            super(node);
             this.validTags = validTags;
         }
 
-        @SuppressWarnings("DuplicatedCode")
         @Override
-        public @NotNull String toHTML() {
-            final StringBuilder builder = new StringBuilder("<").append(tagName);
-            if (!this.attributes.isEmpty())
-                this.attributes.forEach((k, v) -> {
-                    if (k == null) return;
-                    builder.append(" ").append(k);
-                    if (v != null) builder.append("=\"")
-                            .append(v.replace("\"", "\\\""))
-                            .append("\"");
-                });
-            builder.append(">");
-
-            if (text != null) builder.append(StringUtils.unParseContent(text));
-            Node child = this.child;
-            while (child != null) {
-                String output = child.toHTML();
-                if (child.getClass().equals(Node.class) && !validTags.getOrDefault(child.getTagName(), true))
-                    output = output.substring(0, output.length() - 2) + ">";
-                builder.append("\n").append(ContainerNode.INDENTATION);
-                builder.append(output.replace("\n", "\n" + ContainerNode.INDENTATION));
-                child = child.getNext();
-            }
-            if (this.child != null) builder.append("\n");
-            builder.append("</").append(tagName).append(">");
-            return builder.toString();
+        protected void writeStart(@NotNull NodeWriter writer) throws IOException {
+            // The contents of <script> and <style> are not parsed by browsers, so they are not escaped.
+            if (this.tagName.equalsIgnoreCase("script") || this.tagName.equalsIgnoreCase("style"))
+                writer.writeTag(this, ">").writeText(getText(), Entities.RAW_TEXT);
+            // The white spaces of <pre> and <textarea> are meaningful, so they are kept even when minifying.
+            else if (this.tagName.equalsIgnoreCase("pre") || this.tagName.equalsIgnoreCase("textarea"))
+                writer.writeTag(this, ">").writeText(getText(), Entities.TEXT, true);
+            else super.writeStart(writer);
+        }
+
+        @Override
+        protected void writeChild(@NotNull Node child, @NotNull NodeWriter writer) throws IOException {
+            // Void tags, like <meta>, are written without the closing slash.
+            if (child.getClass().equals(Node.class) && !validTags.getOrDefault(child.getTagName(), true))
+                writer.writeTag(child, ">");
+            else super.writeChild(child, writer);
         }
     }
 
@@ -198,7 +395,6 @@ public class HTMLObject implements Serializable, INodeObject {
      * The type Html builder.
      */
     protected static class HTMLBuilder extends NodeBuilder {
-        protected int read;
 
         /**
          * Instantiates a new Html builder.
@@ -229,39 +425,28 @@ public class HTMLObject implements Serializable, INodeObject {
             if (node == null) return null;
             if (node instanceof ContainerNode) {
                 ContainerNode n = (ContainerNode) node;
-                HTMLNode tmp = new HTMLNode(n.getTagName(), validTags);
-                tmp.setAttributes(n.getAttributes());
+                HTMLNode tmp = new HTMLNode(n, validTags);
                 tmp.setNext(n.getNext());
                 tmp.setChild(n.getChild());
                 node = tmp;
             }
-            // Set attributes to lowercase.
-            final @NotNull Map<String, String> attributes = new LinkedHashMap<>(node.getAttributes());
-            for (final String k : attributes.keySet())
-                node.unsetAttribute(k).setAttribute(k.toLowerCase(), attributes.get(k));
             return node;
         }
 
         @Override
-        protected char read(int start, @Nullable Predicate<Character> tester, @NotNull BiConsumer<StringBuilder, Character> read) throws IOException {
-            boolean checkPrologue = this.read == 0;
-            return super.read(start, tester, (buffer, readChar) -> {
-                if (checkPrologue) {
-                    if (buffer.length() > 1 && buffer.charAt(buffer.length() - 1) == '!' && buffer.charAt(buffer.length() - 2) == '<') {
-                        createNode();
-                        return;
-                    }
-                }
-                this.read++;
-                read.accept(buffer, readChar);
-            });
+        protected boolean isRawText(@NotNull String tagName) {
+            // The contents of <script> and <style> are not parsed by browsers, so they are not decoded.
+            return tagName.equalsIgnoreCase("script") || tagName.equalsIgnoreCase("style");
+        }
+
+        @Override
+        protected @NotNull String attributeName(@NotNull String name) {
+            return name.toLowerCase();
         }
 
         @Override
         public @NotNull NodeBuilder cloneBuilder() {
-            HTMLBuilder builder = new HTMLBuilder(this);
-            builder.read = this.read;
-            return builder;
+            return new HTMLBuilder(this);
         }
     }
 }
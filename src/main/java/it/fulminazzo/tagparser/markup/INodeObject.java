@@ -1,8 +1,13 @@
 package it.fulminazzo.tagparser.markup;
 
 import it.fulminazzo.tagparser.markup.exceptions.WriteException;
+import it.fulminazzo.tagparser.nodes.CompactDocument;
 import it.fulminazzo.tagparser.nodes.ContainerNode;
+import it.fulminazzo.tagparser.nodes.FrozenNode;
 import it.fulminazzo.tagparser.nodes.Node;
+import it.fulminazzo.tagparser.nodes.NodeIndex;
+import it.fulminazzo.tagparser.nodes.NodeWriter;
+import it.fulminazzo.tagparser.selectors.Selector;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
@@ -10,15 +15,22 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.util.LinkedHashMap;
-import java.util.List;
-import java.util.Map;
-import java.util.Objects;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.*;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
  * An INodeObject is a type that contains only one {@link it.fulminazzo.tagparser.nodes.Node}: the root.
  * It allows for easy conversion from any type of data stream into nodes or even maps containing variables.
+ * <p>
+ * The root may be held as a read-only {@link CompactDocument} instead, returned by {@link #getDocument()}.
+ * In that case, the queries by tag name, id, class or attribute scan the document
+ * and return new nodes, created for the elements found: changing them does not change the document.
+ * The document is written, frozen and converted to a map without converting it.
+ * Everything else, like {@link #getRootNode()}, {@link #getIndex()} or {@link #select(String)},
+ * converts it once to a tree of nodes, that is held in its place from then on.
  */
 public interface INodeObject {
 
@@ -29,6 +41,149 @@ public interface INodeObject {
      */
     Node getRootNode();
 
+    /**
+     * Gets the document, if the root is held as a read-only {@link CompactDocument}.
+     *
+     * @return the document or null if the root is held as a tree of nodes
+     */
+    default @Nullable CompactDocument getDocument() {
+        return null;
+    }
+
+    /**
+     * Gets the factory of the nodes created from the {@link #getDocument()}.
+     *
+     * @return the factory
+     */
+    default @NotNull CompactDocument.NodeFactory getNodeFactory() {
+        return CompactDocument.NodeFactory.DEFAULT;
+    }
+
+    /**
+     * Create an immutable snapshot of the root node, that can be shared between threads.
+     *
+     * @return the snapshot or null if there is no root
+     * @see Node#freeze()
+     */
+    default @Nullable FrozenNode freeze() {
+        // A temporary tree is created from the document, so that it is not converted.
+        final CompactDocument document = getDocument();
+        final Node root = document == null ? getRootNode() : document.toNode(getNodeFactory());
+        return root == null ? null : root.freeze();
+    }
+
+    /**
+     * Get the index of the root node.
+     * When present, it is used by {@link #getNodesByTagName(String)} and the other queries.
+     *
+     * @return the index or null if indexing is not enabled
+     */
+    default @Nullable NodeIndex getIndex() {
+        return null;
+    }
+
+    /**
+     * Get all the nodes with the given tag name, in the root node and its descendants.
+     *
+     * @param tagName the tag name
+     * @return the nodes
+     */
+    default @NotNull Set<Node> getNodesByTagName(@NotNull String tagName) {
+        final NodeIndex index = getIndex();
+        if (index != null) return index.getNodesByTagName(tagName);
+        final CompactDocument document = getDocument();
+        if (document != null) return new LinkedHashSet<>(document.toNodes(document.getNodes(tagName), getNodeFactory()));
+        return findNodes(n -> n.getTagName().equals(tagName));
+    }
+
+    /**
+     * Get the first node with the given id, in the root node and its descendants.
+     *
+     * @param id the id
+     * @return the node
+     */
+    default @Nullable Node getNodeById(@NotNull String id) {
+        final NodeIndex index = getIndex();
+        if (index != null) return index.getNodeById(id);
+        final CompactDocument document = getDocument();
+        if (document != null) {
+            final Iterator<CompactDocument.Element> elements =
+                    document.findNodes(e -> id.equals(e.getAttribute("id"))).iterator();
+            return elements.hasNext() ? elements.next().toNode(getNodeFactory()) : null;
+        }
+        final Node root = getRootNode();
+        return root == null ? null : root.stream().filter(n -> id.equals(n.getAttribute("id"))).findFirst().orElse(null);
+    }
+
+    /**
+     * Get all the nodes that have the given class among their classes, in the root node and its descendants.
+     *
+     * @param className the class name
+     * @return the nodes
+     */
+    default @NotNull Set<Node> getNodesByClass(@NotNull String className) {
+        final NodeIndex index = getIndex();
+        if (index != null) return index.getNodesByClass(className);
+        final CompactDocument document = getDocument();
+        if (document != null) return new LinkedHashSet<>(document.toNodes(document.findNodes(e -> {
+            final String classes = e.getAttribute("class");
+            return classes != null && Arrays.asList(classes.trim().split("\\s+")).contains(className);
+        }), getNodeFactory()));
+        return findNodes(n -> {
+            final String classes = n.getAttribute("class");
+            return classes != null && Arrays.asList(classes.trim().split("\\s+")).contains(className);
+        });
+    }
+
+    /**
+     * Get all the nodes that have the given attribute, in the root node and its descendants.
+     *
+     * @param attribute the attribute name
+     * @return the nodes
+     */
+    default @NotNull Set<Node> getNodesByAttribute(@NotNull String attribute) {
+        final NodeIndex index = getIndex();
+        if (index != null) return index.getNodesByAttribute(attribute);
+        final CompactDocument document = getDocument();
+        if (document != null)
+            return new LinkedHashSet<>(document.toNodes(document.findNodes(e -> e.hasAttribute(attribute)), getNodeFactory()));
+        return findNodes(n -> n.getAttributes().containsKey(attribute));
+    }
+
+    /**
+     * Get all the nodes that pass the given test, in the root node and its descendants, without using the index.
+     *
+     * @param validator the validator
+     * @return the nodes
+     */
+    default @NotNull Set<Node> findNodes(@NotNull Predicate<? super Node> validator) {
+        final Node root = getRootNode();
+        if (root == null) return new LinkedHashSet<>();
+        return root.stream().filter(validator).collect(Collectors.toCollection(LinkedHashSet::new));
+    }
+
+    /**
+     * Get all the nodes that match the given CSS selector, in the root node and its descendants.
+     *
+     * @param selector the selector
+     * @return the nodes
+     * @see Selector
+     */
+    default @NotNull List<Node> select(@NotNull String selector) {
+        return Selector.compile(selector).select(this);
+    }
+
+    /**
+     * Get the first node that matches the given CSS selector, in the root node and its descendants.
+     *
+     * @param selector the selector
+     * @return the node
+     * @see Selector
+     */
+    default @Nullable Node selectFirst(@NotNull String selector) {
+        return Selector.compile(selector).selectFirst(this);
+    }
+
     /**
      * Convert the root node to a map of elements.
      * Duplicate nodes are NOT allowed.
@@ -36,7 +191,9 @@ public interface INodeObject {
      * @return the map
      */
     default @NotNull Map<?, ?> toMap() {
-        return toMap(getRootNode(), true);
+        // A temporary tree is created from the document, so that it is not converted.
+        final CompactDocument document = getDocument();
+        return toMap(document == null ? getRootNode() : document.toNode(getNodeFactory()), true);
     }
 
     /**
@@ -72,36 +229,89 @@ public interface INodeObject {
     }
 
     /**
-     * Write to file.
+     * Write to file, using the default charset.
      *
      * @param file the file
      */
     default void write(final @NotNull File file) {
+        write(file, Charset.defaultCharset());
+    }
+
+    /**
+     * Write to file.
+     *
+     * @param file    the file
+     * @param charset the charset
+     */
+    default void write(final @NotNull File file, final @NotNull Charset charset) {
         if (!file.getParentFile().isDirectory() && !file.mkdirs())
             throw new WriteException(String.format("Cannot create file parent directory: %s", file.getAbsolutePath()));
 
         try (final OutputStream stream = new FileOutputStream(file)) {
-            write(stream);
+            write(stream, charset);
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
     /**
-     * Write to stream.
+     * Write to stream, using the default charset.
      *
      * @param stream the stream
      */
     default void write(final @NotNull OutputStream stream) {
-        final Node root = getRootNode();
-        if (root == null) throw new WriteException("Cannot write null root node");
+        write(stream, Charset.defaultCharset());
+    }
+
+    /**
+     * Write to stream.
+     * The document is encoded while it is written, without rendering it in memory first.
+     * The stream is flushed, but not closed.
+     *
+     * @param stream  the stream
+     * @param charset the charset
+     */
+    default void write(final @NotNull OutputStream stream, final @NotNull Charset charset) {
+        if (getDocument() == null && getRootNode() == null) throw new WriteException("Cannot write null root node");
+
+        try {
+            final NodeWriter writer = new NodeWriter(stream, charset);
+            write(writer);
+            writer.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Write to channel.
+     * The document is encoded while it is written, without rendering it in memory first.
+     * The channel is not closed.
+     *
+     * @param channel the channel
+     * @param charset the charset
+     */
+    default void write(final @NotNull WritableByteChannel channel, final @NotNull Charset charset) {
+        if (getDocument() == null && getRootNode() == null) throw new WriteException("Cannot write null root node");
 
         try {
-            stream.write(toHTML().getBytes());
+            final NodeWriter writer = new NodeWriter(channel, charset);
+            write(writer);
+            writer.flush();
         } catch (IOException e) {
             throw new RuntimeException(e);
         }
     }
 
+    /**
+     * Write to the given writer the same contents returned by {@link #toHTML()}.
+     *
+     * @param writer the writer
+     * @throws IOException the io exception
+     */
+    default void write(final @NotNull NodeWriter writer) throws IOException {
+        writer.append(toHTML());
+    }
+
     String toHTML();
 }
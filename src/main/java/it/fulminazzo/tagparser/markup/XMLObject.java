@@ -1,9 +1,15 @@
 package it.fulminazzo.tagparser.markup;
 
 import it.fulminazzo.tagparser.Attributable;
+import it.fulminazzo.tagparser.markup.exceptions.WriteException;
+import it.fulminazzo.tagparser.nodes.CompactDocument;
+import it.fulminazzo.tagparser.nodes.FrozenNode;
 import it.fulminazzo.tagparser.nodes.Node;
 import it.fulminazzo.tagparser.nodes.NodeBuilder;
+import it.fulminazzo.tagparser.nodes.NodeIndex;
+import it.fulminazzo.tagparser.nodes.NodeWriter;
 import it.fulminazzo.tagparser.serializables.Serializable;
+import it.fulminazzo.tagparser.utils.Entities;
 import lombok.Getter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -13,8 +19,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.function.BiConsumer;
-import java.util.function.Predicate;
 
 /**
  * An object to load, handle and dump XML files.
@@ -24,13 +28,30 @@ public class XMLObject implements Serializable, Attributable<XMLObject>, INodeOb
     @Getter
     protected String documentType;
     protected final @NotNull Map<String, String> prologAttributes;
-    @Getter
     protected Node rootNode;
+    /**
+     * The read-only representation of the document, if set with {@link #setDocument(CompactDocument)}.
+     * In that case, it is converted to the root node only when requested.
+     */
+    @Getter
+    protected transient @Nullable CompactDocument document;
+    /**
+     * If enabled, the queries on the document will use a {@link NodeIndex} of the root node.
+     */
+    @Getter
+    protected transient boolean indexing;
+    /**
+     * If enabled, the children of the nodes read will be parsed only when first requested.
+     *
+     * @see NodeBuilder#deferChildren()
+     */
+    @Getter
+    protected transient boolean deferringChildren;
 
     /**
      * Instantiates a new Xml object.
      */
-    protected XMLObject() {
+    public XMLObject() {
         this.prologAttributes = new LinkedHashMap<>();
     }
 
@@ -72,7 +93,7 @@ public class XMLObject implements Serializable, Attributable<XMLObject>, INodeOb
      */
     public @NotNull XMLObject setRootNode(@NotNull String string) {
         this.prologAttributes.clear();
-        return setRootNode(new XMLBuilder(this).from(string).build());
+        return setRootNode(newBuilder().from(string).build());
     }
 
     /**
@@ -83,7 +104,7 @@ public class XMLObject implements Serializable, Attributable<XMLObject>, INodeOb
      */
     public @NotNull XMLObject setRootNode(@NotNull File file) {
         this.prologAttributes.clear();
-        return setRootNode(new XMLBuilder(this).from(file).build());
+        return setRootNode(newBuilder().from(file).build());
     }
 
     /**
@@ -94,7 +115,18 @@ public class XMLObject implements Serializable, Attributable<XMLObject>, INodeOb
      */
     public @NotNull XMLObject setRootNode(@NotNull InputStream stream) {
         this.prologAttributes.clear();
-        return setRootNode(new XMLBuilder(this).from(stream).build());
+        return setRootNode(newBuilder().from(stream).build());
+    }
+
+    /**
+     * Set the root node from a new tree of nodes created from the given snapshot.
+     *
+     * @param snapshot the snapshot
+     * @return this object
+     * @see #freeze()
+     */
+    public @NotNull XMLObject setRootNode(@NotNull FrozenNode snapshot) {
+        return setRootNode(snapshot.toNode());
     }
 
     /**
@@ -104,10 +136,144 @@ public class XMLObject implements Serializable, Attributable<XMLObject>, INodeOb
      * @return the root
      */
     public @NotNull XMLObject setRootNode(@Nullable Node node) {
+        if (this.rootNode != null) NodeIndex.detach(this.rootNode);
         this.rootNode = node;
+        this.document = null;
+        return this;
+    }
+
+    /**
+     * Gets the root node.
+     * If the document is held as a {@link CompactDocument}, it is converted to a tree of nodes,
+     * that is held in its place from then on, so that the changes to the tree are kept.
+     *
+     * @return the root
+     */
+    @Override
+    public @Nullable Node getRootNode() {
+        if (this.document != null) setRootNode(this.document.toNode());
+        return this.rootNode;
+    }
+
+    /**
+     * Set the document from string, holding it as a read-only {@link CompactDocument}.
+     * Values and texts are decoded only when requested.
+     *
+     * @param string the string
+     * @return this object
+     */
+    public @NotNull XMLObject setDocument(@NotNull String string) {
+        this.prologAttributes.clear();
+        return setDocument(new XMLBuilder(this).decodeLazily().from(string).buildCompact());
+    }
+
+    /**
+     * Set the document from file, holding it as a read-only {@link CompactDocument}.
+     * Values and texts are decoded only when requested.
+     *
+     * @param file the file
+     * @return this object
+     */
+    public @NotNull XMLObject setDocument(@NotNull File file) {
+        this.prologAttributes.clear();
+        return setDocument(new XMLBuilder(this).decodeLazily().from(file).buildCompact());
+    }
+
+    /**
+     * Set the document from stream, holding it as a read-only {@link CompactDocument}.
+     * Values and texts are decoded only when requested.
+     *
+     * @param stream the stream
+     * @return this object
+     */
+    public @NotNull XMLObject setDocument(@NotNull InputStream stream) {
+        this.prologAttributes.clear();
+        return setDocument(new XMLBuilder(this).decodeLazily().from(stream).buildCompact());
+    }
+
+    /**
+     * Hold the document as the given {@link CompactDocument}, in place of the root node.
+     *
+     * @param document the document
+     * @return this object
+     */
+    public @NotNull XMLObject setDocument(@Nullable CompactDocument document) {
+        setRootNode((Node) null);
+        this.document = document;
+        return this;
+    }
+
+    /**
+     * Convert the root node to a {@link CompactDocument}, that will be held in its place.
+     *
+     * @return this object
+     */
+    public @NotNull XMLObject compact() {
+        if (this.rootNode != null) setDocument(CompactDocument.of(this.rootNode));
+        return this;
+    }
+
+    /**
+     * Enable the index of the document, that will be built on the first query.
+     * If the document is held as a {@link CompactDocument}, it will be converted to a tree of nodes.
+     *
+     * @return this object
+     */
+    public @NotNull XMLObject enableIndex() {
+        this.indexing = true;
+        return this;
+    }
+
+    /**
+     * Disable the index of the document.
+     *
+     * @return this object
+     */
+    public @NotNull XMLObject disableIndex() {
+        this.indexing = false;
+        if (this.rootNode != null) NodeIndex.detach(this.rootNode);
         return this;
     }
 
+    /**
+     * Parse the children of the nodes read from now on only when first requested.
+     *
+     * @return this object
+     */
+    public @NotNull XMLObject deferChildren() {
+        this.deferringChildren = true;
+        return this;
+    }
+
+    /**
+     * Parse the children of the nodes read from now on while reading.
+     *
+     * @return this object
+     */
+    public @NotNull XMLObject undeferChildren() {
+        this.deferringChildren = false;
+        return this;
+    }
+
+    private @NotNull NodeBuilder newBuilder() {
+        final NodeBuilder builder = new XMLBuilder(this);
+        return this.deferringChildren ? builder.deferChildren() : builder;
+    }
+
+    /**
+     * Gets the index of the root node, if enabled.
+     * If the document is held as a {@link CompactDocument}, it is converted to a tree of nodes first.
+     *
+     * @return the index or null if indexing is not enabled
+     * @see #getRootNode()
+     */
+    @Override
+    public @Nullable NodeIndex getIndex() {
+        if (!this.indexing) return null;
+        final Node rootNode = getRootNode();
+        return rootNode == null ? null : NodeIndex.of(rootNode);
+    }
+
     @Override
     public @NotNull Map<String, String> getAttributes() {
         return prologAttributes;
@@ -116,21 +282,35 @@ public class XMLObject implements Serializable, Attributable<XMLObject>, INodeOb
     @Override
     public @NotNull String toHTML() {
         final StringBuilder output = new StringBuilder();
+        try {
+            write(new NodeWriter(output));
+        } catch (IOException e) {
+            throw new WriteException(e.getMessage());
+        }
+        return output.toString();
+    }
+
+    @Override
+    public void write(@NotNull NodeWriter writer) throws IOException {
         if (this.documentType != null) {
-            output.append("<?").append(this.documentType);
-            this.prologAttributes.forEach((k, v) -> {
-                output.append(" ").append(k);
-                if (v != null) output.append("=\"")
-                        .append(v.replace("\"", "\\\""))
-                        .append("\"");
-            });
-            output.append("?>");
+            writer.append("<?").append(this.documentType);
+            for (Map.Entry<String, String> entry : this.prologAttributes.entrySet()) {
+                writer.append(' ').append(entry.getKey());
+                final String value = entry.getValue();
+                if (value != null) writer.append("=\"").writeText(value, Entities.ATTRIBUTE).append('"');
+            }
+            writer.append("?>");
         }
-        if (this.rootNode != null) {
-            if (this.documentType != null) output.append("\n");
-            output.append(this.rootNode.toHTML());
+        if (this.document != null) {
+            // The document is written without converting it.
+            final CompactDocument.Element root = this.document.getRoot();
+            if (root == null) return;
+            if (this.documentType != null) writer.newLine();
+            writer.write(root, getNodeFactory());
+        } else if (this.rootNode != null) {
+            if (this.documentType != null) writer.newLine();
+            writer.write(this.rootNode);
         }
-        return output.toString();
     }
 
     /**
@@ -138,7 +318,6 @@ public class XMLObject implements Serializable, Attributable<XMLObject>, INodeOb
      */
     protected static class XMLBuilder extends NodeBuilder {
         protected final @NotNull XMLObject xmlObject;
-        protected int read;
 
         /**
          * Instantiates a new Xml builder.
@@ -147,7 +326,6 @@ public class XMLObject implements Serializable, Attributable<XMLObject>, INodeOb
          */
         protected XMLBuilder(@NotNull XMLObject xmlObject) {
             this.xmlObject = xmlObject;
-            this.read = 0;
             this.allowingClosingTags = false;
         }
 
@@ -160,7 +338,6 @@ public class XMLObject implements Serializable, Attributable<XMLObject>, INodeOb
         protected XMLBuilder(@NotNull NodeBuilder builder, @NotNull XMLObject xmlObject) {
             super(builder);
             this.xmlObject = xmlObject;
-            this.read = 0;
             this.allowingClosingTags = false;
         }
 
@@ -194,28 +371,16 @@ public class XMLObject implements Serializable, Attributable<XMLObject>, INodeOb
         }
 
         @Override
-        protected char read(int start, @Nullable Predicate<Character> tester, @NotNull BiConsumer<StringBuilder, Character> read) throws IOException {
-            boolean checkPrologue = this.read == 0;
-            return super.read(start, tester, (buffer, readChar) -> {
-                if (checkPrologue) {
-                    if (buffer.length() > 1 && buffer.charAt(buffer.length() - 1) == '?' && buffer.charAt(buffer.length() - 2) == '<') {
-                        Node node = createNode();
-                        if (node == null) return;
-                        this.xmlObject.documentType = node.getTagName();
-                        this.xmlObject.setAttributes(node.getAttributes());
-                        return;
-                    }
-                }
-                this.read++;
-                read.accept(buffer, readChar);
-            });
+        protected void onProcessingInstruction(@NotNull String target, @NotNull Map<String, String> attributes) {
+            // Only the declaration before the first tag is the prolog of the document.
+            if (!target.equalsIgnoreCase("xml") || this.reader == null || !this.reader.isInProlog()) return;
+            this.xmlObject.documentType = target;
+            this.xmlObject.setAttributes(attributes);
         }
 
         @Override
         public @NotNull NodeBuilder cloneBuilder() {
-            XMLBuilder builder = new XMLBuilder(this, this.xmlObject);
-            builder.read = this.read;
-            return builder;
+            return new XMLBuilder(this, this.xmlObject);
         }
     }
 }
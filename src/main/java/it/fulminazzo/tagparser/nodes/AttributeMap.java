@@ -0,0 +1,221 @@
+package it.fulminazzo.tagparser.nodes;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * A compact map of the attributes of a {@link Node}, that keeps their insertion order.
+ * <p>
+ * Names and values are stored next to each other in a single array, which is scanned linearly:
+ * most nodes have few attributes, so this is faster and much smaller than a {@link LinkedHashMap}.
+ * Only past {@link #HASH_THRESHOLD} attributes, their positions are also kept in an open addressing table.
+ * Nodes without attributes do not allocate any array.
+ */
+final class AttributeMap extends AbstractMap<String, String> {
+    /**
+     * The number of attributes after which a hash table is used to find them.
+     */
+    static final int HASH_THRESHOLD = 8;
+    private static final String[] EMPTY = new String[0];
+
+    /**
+     * The names and values of the attributes: name0, value0, name1, value1...
+     */
+    private String @NotNull [] entries = EMPTY;
+    private int size;
+    /**
+     * The positions of the attributes plus one, by the hash of their name. Zero marks an empty slot.
+     */
+    private int @Nullable [] table;
+
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return indexOf(key) != -1;
+    }
+
+    @Override
+    public String get(Object key) {
+        final int index = indexOf(key);
+        return index == -1 ? null : this.entries[2 * index + 1];
+    }
+
+    @Override
+    public String put(String key, String value) {
+        final int index = indexOf(key);
+        if (index != -1) {
+            final String previous = this.entries[2 * index + 1];
+            this.entries[2 * index + 1] = value;
+            return previous;
+        }
+        if (2 * this.size == this.entries.length)
+            this.entries = Arrays.copyOf(this.entries, Math.max(4, 2 * this.entries.length));
+        this.entries[2 * this.size] = key;
+        this.entries[2 * this.size + 1] = value;
+        this.size++;
+        if (this.table != null && 2 * this.size <= this.table.length) insert(this.table, key, this.size - 1);
+        else if (this.size > HASH_THRESHOLD) rehash();
+        return null;
+    }
+
+    @Override
+    public String remove(Object key) {
+        final int index = indexOf(key);
+        return index == -1 ? null : removeAt(index);
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(this.entries, 0, 2 * this.size, null);
+        this.size = 0;
+        this.table = null;
+    }
+
+    @Override
+    public @NotNull Set<Entry<String, String>> entrySet() {
+        return new AbstractSet<Entry<String, String>>() {
+            @Override
+            public @NotNull Iterator<Entry<String, String>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return AttributeMap.this.size;
+            }
+
+            @Override
+            public void clear() {
+                AttributeMap.this.clear();
+            }
+        };
+    }
+
+    private int indexOf(@Nullable Object key) {
+        final int[] table = this.table;
+        if (table == null) {
+            for (int i = 0; i < this.size; i++)
+                if (Objects.equals(this.entries[2 * i], key)) return i;
+            return -1;
+        }
+        final int mask = table.length - 1;
+        for (int slot = hash(key) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+            final int index = table[slot] - 1;
+            if (Objects.equals(this.entries[2 * index], key)) return index;
+        }
+        return -1;
+    }
+
+    private String removeAt(int index) {
+        final String previous = this.entries[2 * index + 1];
+        System.arraycopy(this.entries, 2 * index + 2, this.entries, 2 * index, 2 * (this.size - index - 1));
+        this.size--;
+        this.entries[2 * this.size] = null;
+        this.entries[2 * this.size + 1] = null;
+        if (this.table != null) {
+            if (this.size > HASH_THRESHOLD) rehash();
+            else this.table = null;
+        }
+        return previous;
+    }
+
+    /**
+     * Rebuild the hash table, with at least twice the slots as the attributes.
+     */
+    private void rehash() {
+        final int[] table = new int[Integer.highestOneBit(this.size * 4 - 1)];
+        for (int i = 0; i < this.size; i++) insert(table, this.entries[2 * i], i);
+        this.table = table;
+    }
+
+    private static void insert(int @NotNull [] table, @Nullable String key, int index) {
+        final int mask = table.length - 1;
+        int slot = hash(key) & mask;
+        while (table[slot] != 0) slot = (slot + 1) & mask;
+        table[slot] = index + 1;
+    }
+
+    private static int hash(@Nullable Object key) {
+        final int hash = Objects.hashCode(key);
+        return hash ^ (hash >>> 16);
+    }
+
+    /**
+     * An iterator on the entries, that reflects and writes through to the map.
+     */
+    private final class EntryIterator implements Iterator<Entry<String, String>> {
+        private int next;
+        private int last = -1;
+
+        @Override
+        public boolean hasNext() {
+            return this.next < AttributeMap.this.size;
+        }
+
+        @Override
+        public @NotNull Entry<String, String> next() {
+            if (!hasNext()) throw new NoSuchElementException();
+            this.last = this.next++;
+            return new AttributeEntry(this.last);
+        }
+
+        @Override
+        public void remove() {
+            if (this.last == -1) throw new IllegalStateException();
+            removeAt(this.last);
+            this.next = this.last;
+            this.last = -1;
+        }
+    }
+
+    /**
+     * An entry at a position of the map.
+     */
+    private final class AttributeEntry implements Entry<String, String> {
+        private final int index;
+
+        private AttributeEntry(int index) {
+            this.index = index;
+        }
+
+        @Override
+        public String getKey() {
+            return AttributeMap.this.entries[2 * this.index];
+        }
+
+        @Override
+        public String getValue() {
+            return AttributeMap.this.entries[2 * this.index + 1];
+        }
+
+        @Override
+        public String setValue(String value) {
+            final String previous = getValue();
+            AttributeMap.this.entries[2 * this.index + 1] = value;
+            return previous;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Entry)) return false;
+            final Entry<?, ?> entry = (Entry<?, ?>) o;
+            return Objects.equals(getKey(), entry.getKey()) && Objects.equals(getValue(), entry.getValue());
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hashCode(getKey()) ^ Objects.hashCode(getValue());
+        }
+
+        @Override
+        public String toString() {
+            return getKey() + "=" + getValue();
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package it.fulminazzo.tagparser.nodes;
+
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.IOException;
+
+/**
+ * A lightweight node holding a comment.
+ * Comments are retained by a {@link NodeBuilder} only when {@link NodeBuilder#keepComments()} is used.
+ * <p>
+ * Example: &#60;!-- This will be wrapped in a comment node --&#62;
+ */
+@Getter
+public class CommentNode extends Node {
+    /**
+     * The tag name of every comment node.
+     */
+    public static final String TAG_NAME = "#comment";
+    protected @NotNull String comment;
+
+    /**
+     * Instantiates a new Comment node.
+     *
+     * @param comment the comment
+     */
+    public CommentNode(@NotNull String comment) {
+        super(TAG_NAME, new AttributeMap());
+        this.comment = comment;
+    }
+
+    /**
+     * Sets comment.
+     *
+     * @param comment the comment
+     * @return this node
+     */
+    public @NotNull CommentNode setComment(@NotNull String comment) {
+        this.comment = comment;
+        return this;
+    }
+
+    @Override
+    protected void writeStart(@NotNull NodeWriter writer) throws IOException {
+        writer.append("<!--").append(this.comment).append("-->");
+    }
+
+    @Override
+    protected boolean equalsNode(@NotNull Node node) {
+        if (node instanceof CommentNode && !this.comment.equals(((CommentNode) node).getComment())) return false;
+        return super.equalsNode(node);
+    }
+}
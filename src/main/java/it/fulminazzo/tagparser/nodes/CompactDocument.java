@@ -0,0 +1,835 @@
+package it.fulminazzo.tagparser.nodes;
+
+import it.fulminazzo.tagparser.utils.Entities;
+import it.fulminazzo.tagparser.utils.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * A read-only document, stored in a few flat arrays rather than in a {@link Node} for every element.
+ * <p>
+ * Elements are numbered in document order, and for each of them only its parent, first child, next sibling,
+ * tag name and kind are kept, as ints.
+ * Names are kept once, as symbols, while attribute values and texts are offsets in a single shared array of characters.
+ * This makes the document many times smaller than a tree of nodes, and queries by tag name become a scan of an int array.
+ * <p>
+ * Documents are created by {@link NodeBuilder#buildCompact()}, directly from the reader, or from a tree with {@link #of(Node)}.
+ * Elements are accessed with the {@link Element} views, which are created on request,
+ * and the tree of nodes can be rebuilt at any time with {@link #toNode()}.
+ * <p>
+ * If built with {@link NodeBuilder#decodeLazily()}, attribute values and texts are kept as they were read,
+ * and decoded only the first time they are requested.
+ * The strings decoded for the {@link Element} views are cached: the cache is not synchronized,
+ * so concurrent readers may decode a value twice, but they always get equal results.
+ * The strings decoded for the nodes created from the document are not cached,
+ * so that rebuilding or writing the whole document does not keep a copy of every value.
+ */
+public final class CompactDocument {
+    private static final byte NODE = 0;
+    private static final byte CONTAINER = 1;
+    private static final byte COMMENT = 2;
+
+    private final int size;
+    private final int @NotNull [] parents;
+    private final int @NotNull [] firstChildren;
+    private final int @NotNull [] nextSiblings;
+    private final int @NotNull [] tags;
+    private final byte @NotNull [] kinds;
+    private final int @NotNull [] textStarts;
+    private final int @NotNull [] textEnds;
+    /**
+     * The position of the first attribute of every element in the attribute arrays.
+     * The attributes of element i go from attributeStarts[i] (included) to attributeStarts[i + 1] (excluded).
+     */
+    private final int @NotNull [] attributeStarts;
+    private final int @NotNull [] attributeNames;
+    private final int @NotNull [] valueStarts;
+    private final int @NotNull [] valueEnds;
+    private final char @NotNull [] chars;
+    private final String @NotNull [] symbols;
+    private final @NotNull Map<String, Integer> symbolIds;
+    /**
+     * If true, attribute values and texts are kept as they were read.
+     */
+    private final boolean lazy;
+    /**
+     * The elements whose text is kept as it was read, even if the document is lazy.
+     */
+    private final @NotNull BitSet rawTexts;
+    private volatile String @Nullable [] decodedTexts;
+    private volatile String @Nullable [] decodedValues;
+
+    private CompactDocument(@NotNull Builder builder) {
+        this.lazy = builder.lazy;
+        this.rawTexts = (BitSet) builder.rawTexts.clone();
+        this.size = builder.size;
+        this.parents = Arrays.copyOf(builder.parents, this.size);
+        this.firstChildren = Arrays.copyOf(builder.firstChildren, this.size);
+        this.nextSiblings = Arrays.copyOf(builder.nextSiblings, this.size);
+        this.tags = Arrays.copyOf(builder.tags, this.size);
+        this.kinds = Arrays.copyOf(builder.kinds, this.size);
+        this.textStarts = Arrays.copyOf(builder.textStarts, this.size);
+        this.textEnds = Arrays.copyOf(builder.textEnds, this.size);
+        this.attributeStarts = Arrays.copyOf(builder.attributeStarts, this.size + 1);
+        this.attributeStarts[this.size] = builder.attributes;
+        this.attributeNames = Arrays.copyOf(builder.attributeNames, builder.attributes);
+        this.valueStarts = Arrays.copyOf(builder.valueStarts, builder.attributes);
+        this.valueEnds = Arrays.copyOf(builder.valueEnds, builder.attributes);
+        this.chars = new char[builder.chars.length()];
+        builder.chars.getChars(0, this.chars.length, this.chars, 0);
+        this.symbols = builder.symbols.toArray(new String[0]);
+        this.symbolIds = builder.symbolIds;
+    }
+
+    /**
+     * Create a compact document from the given node, its following siblings and all their descendants.
+     *
+     * @param node the node
+     * @return the document
+     */
+    public static @NotNull CompactDocument of(@NotNull Node node) {
+        final Builder builder = new Builder();
+        final Deque<Node> parents = new ArrayDeque<>();
+        Node current = node;
+        while (current != null) {
+            final Node child = builder.add(current);
+            if (child != null) {
+                parents.push(current);
+                current = child;
+                continue;
+            }
+            if (current instanceof ContainerNode) builder.endElement();
+            while (current.getNext() == null && !parents.isEmpty()) {
+                current = parents.pop();
+                builder.endElement();
+            }
+            current = current.getNext();
+        }
+        return builder.build();
+    }
+
+    /**
+     * Gets the number of elements, comments included.
+     *
+     * @return the size
+     */
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Gets the first element of the document.
+     * The other top level elements are its next ones.
+     *
+     * @return the root
+     */
+    public @Nullable Element getRoot() {
+        return element(this.size == 0 ? -1 : 0);
+    }
+
+    /**
+     * Get all the elements with the specified tag name, in document order.
+     *
+     * @param tagName the tag name
+     * @return the elements
+     */
+    public @NotNull Set<Element> getNodes(@NotNull String tagName) {
+        return find(tagName, 0, this.size, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Get the first element with the specified tag name.
+     *
+     * @param tagName the tag name
+     * @return the element
+     */
+    public @Nullable Element getNode(@NotNull String tagName) {
+        return first(find(tagName, 0, this.size, 1));
+    }
+
+    /**
+     * Get all the elements that pass the given test, in document order.
+     *
+     * @param validator the validator
+     * @return the elements
+     */
+    public @NotNull Set<Element> findNodes(@NotNull Predicate<? super Element> validator) {
+        final Set<Element> elements = new LinkedHashSet<>();
+        for (int i = 0; i < this.size; i++) {
+            final Element element = new Element(i);
+            if (validator.test(element)) elements.add(element);
+        }
+        return elements;
+    }
+
+    /**
+     * Create the nodes of the given elements of this document, like {@link Element#toNode(NodeFactory)}.
+     * The elements needed by more of them are created only once, so the nodes returned may share their descendants.
+     *
+     * @param elements the elements
+     * @param factory  the factory
+     * @return the nodes, in the same order of the elements
+     */
+    public @NotNull List<Node> toNodes(@NotNull Collection<Element> elements, @NotNull NodeFactory factory) {
+        int start = this.size;
+        int end = 0;
+        for (Element element : elements) {
+            if (element.document() != this) throw new IllegalArgumentException("Element of another document: " + element);
+            start = Math.min(start, element.index);
+            end = Math.max(end, siblingsEnd(element.index));
+        }
+        final List<Node> nodes = new ArrayList<>(elements.size());
+        if (start >= end) return nodes;
+        final Node[] created = materialize(start, end, factory);
+        for (Element element : elements) nodes.add(created[element.index - start]);
+        return nodes;
+    }
+
+    /**
+     * Rebuild the tree of nodes of the whole document, with the root as first node.
+     *
+     * @return the root node
+     */
+    public @Nullable Node toNode() {
+        return toNode(NodeFactory.DEFAULT);
+    }
+
+    /**
+     * Rebuild the tree of nodes of the whole document, with the root as first node.
+     * The nodes are created by the given factory, except for comments.
+     *
+     * @param factory the factory
+     * @return the root node
+     */
+    public @Nullable Node toNode(@NotNull NodeFactory factory) {
+        return this.size == 0 ? null : materialize(0, this.size, factory)[0];
+    }
+
+    private @Nullable Element element(int index) {
+        return index == -1 ? null : new Element(index);
+    }
+
+    private @NotNull String symbol(int index) {
+        return this.symbols[this.tags[index]];
+    }
+
+    private @Nullable String string(int start, int end) {
+        return start == -1 ? null : new String(this.chars, start, end - start);
+    }
+
+    /**
+     * Get the text of a container, or the contents of a comment.
+     * If the document is lazy, the text of a container is decoded the first time.
+     *
+     * @param index the index of the element
+     * @param cache if true, the decoded text is cached
+     * @return the text
+     */
+    private @Nullable String text(int index, boolean cache) {
+        final int start = this.textStarts[index];
+        if (!this.lazy || start == -1 || this.kinds[index] == COMMENT || this.rawTexts.get(index))
+            return string(start, this.textEnds[index]);
+        String[] texts = this.decodedTexts;
+        String text = texts == null ? null : texts[index];
+        if (text != null) return text;
+        text = StringUtils.parseContent(string(start, this.textEnds[index]));
+        if (cache) {
+            if (texts == null) this.decodedTexts = texts = new String[this.size];
+            texts[index] = text;
+        }
+        return text;
+    }
+
+    /**
+     * Get the value of an attribute.
+     * If the document is lazy, the value is unquoted and decoded the first time.
+     *
+     * @param attribute the index of the attribute
+     * @param cache     if true, the decoded value is cached
+     * @return the value
+     */
+    private @Nullable String value(int attribute, boolean cache) {
+        final int start = this.valueStarts[attribute];
+        if (!this.lazy || start == -1) return string(start, this.valueEnds[attribute]);
+        String[] values = this.decodedValues;
+        String value = values == null ? null : values[attribute];
+        if (value != null) return value;
+        value = Entities.decodeAttribute(StringUtils.removeQuotes(string(start, this.valueEnds[attribute])));
+        if (cache) {
+            if (values == null) this.decodedValues = values = new String[this.valueStarts.length];
+            values[attribute] = value;
+        }
+        return value;
+    }
+
+    /**
+     * Get the end (excluded) of the elements following the given one in document order:
+     * its descendants, its next siblings and their descendants.
+     *
+     * @param index the index
+     * @return the end
+     */
+    private int siblingsEnd(int index) {
+        final int parent = this.parents[index];
+        return parent == -1 ? this.size : subtreeEnd(parent);
+    }
+
+    /**
+     * Get the end (excluded) of the descendants of the given element.
+     * Since elements are numbered in document order, they all are between the element and its end.
+     *
+     * @param index the index
+     * @return the end
+     */
+    private int subtreeEnd(int index) {
+        for (int i = index; i != -1; i = this.parents[i])
+            if (this.nextSiblings[i] != -1) return this.nextSiblings[i];
+        return this.size;
+    }
+
+    private @NotNull Set<Element> find(@NotNull String tagName, int start, int end, int limit) {
+        final Integer symbol = this.symbolIds.get(tagName);
+        if (symbol == null) return Collections.emptySet();
+        final int tag = symbol;
+        final Set<Element> elements = new LinkedHashSet<>();
+        for (int i = start; i < end && elements.size() < limit; i++)
+            if (this.tags[i] == tag) elements.add(new Element(i));
+        return elements;
+    }
+
+    private static @Nullable Element first(@NotNull Set<Element> elements) {
+        final Iterator<Element> iterator = elements.iterator();
+        return iterator.hasNext() ? iterator.next() : null;
+    }
+
+    /**
+     * Create the nodes of the elements between start (included) and end (excluded), linked as in this document.
+     * The elements whose parent is not in the range are linked as next of the previous ones with the same parent.
+     *
+     * @param start   the start
+     * @param end     the end
+     * @param factory the factory
+     * @return the nodes, where the node of the element i is at i - start
+     */
+    private @NotNull Node @NotNull [] materialize(int start, int end, @NotNull NodeFactory factory) {
+        final Node[] nodes = new Node[end - start];
+        final int[] lastChildren = new int[end - start];
+        final Map<Integer, Node> lastOutside = new HashMap<>();
+        for (int i = start; i < end; i++) {
+            final Node node = createNode(i, factory);
+            nodes[i - start] = node;
+            lastChildren[i - start] = -1;
+
+            final int parent = this.parents[i] - start;
+            if (parent < 0) {
+                final Node last = lastOutside.put(this.parents[i], node);
+                if (last != null) last.next = node;
+            } else {
+                final int previous = lastChildren[parent];
+                if (previous == -1) ((ContainerNode) nodes[parent]).child = node;
+                else nodes[previous].next = node;
+                lastChildren[parent] = i - start;
+            }
+        }
+        return nodes;
+    }
+
+    /**
+     * Create the node of the given element, without its children and its next.
+     *
+     * @param index   the index of the element
+     * @param factory the factory
+     * @return the node
+     */
+    private @NotNull Node createNode(int index, @NotNull NodeFactory factory) {
+        if (this.kinds[index] == COMMENT)
+            return new CommentNode(Objects.requireNonNull(text(index, false)));
+        final boolean container = this.kinds[index] == CONTAINER;
+        final Node node = factory.create(symbol(index), container);
+        // Values and texts have already been decoded, so they are set as they are.
+        for (int a = this.attributeStarts[index]; a < this.attributeStarts[index + 1]; a++)
+            node.attributes.put(this.symbols[this.attributeNames[a]], value(a, false));
+        if (container) ((ContainerNode) node).text = text(index, false);
+        return node;
+    }
+
+    /**
+     * Creates the nodes when rebuilding the tree of a {@link CompactDocument}.
+     */
+    @FunctionalInterface
+    public interface NodeFactory {
+        /**
+         * The factory of {@link Node}s and {@link ContainerNode}s.
+         */
+        NodeFactory DEFAULT = Node::trusted;
+
+        /**
+         * Create a node with the given tag name, without attributes or contents.
+         *
+         * @param tagName   the tag name
+         * @param container true if the node should be a {@link ContainerNode}
+         * @return the node
+         */
+        @NotNull Node create(@NotNull String tagName, boolean container);
+    }
+
+    /**
+     * A view on an element of the document.
+     * Views are created on request, and two views are equal if they refer to the same element.
+     */
+    public final class Element {
+        private final int index;
+
+        private Element(int index) {
+            this.index = index;
+        }
+
+        /**
+         * Gets the tag name.
+         *
+         * @return the tag name
+         */
+        public @NotNull String getTagName() {
+            return symbol(this.index);
+        }
+
+        /**
+         * Checks if the element can contain text and other elements.
+         *
+         * @return true if it is a container
+         */
+        public boolean isContainer() {
+            return kinds[this.index] == CONTAINER;
+        }
+
+        /**
+         * Checks if the element is a comment.
+         *
+         * @return true if it is a comment
+         */
+        public boolean isComment() {
+            return kinds[this.index] == COMMENT;
+        }
+
+        /**
+         * Gets the value of an attribute.
+         *
+         * @param name the name of the attribute
+         * @return the value
+         */
+        public @Nullable String getAttribute(@NotNull String name) {
+            for (int a = attributeStarts[this.index]; a < attributeStarts[this.index + 1]; a++)
+                if (symbols[attributeNames[a]].equals(name)) return value(a, true);
+            return null;
+        }
+
+        /**
+         * Checks if the element has the given attribute, without decoding its value.
+         *
+         * @param name the name of the attribute
+         * @return true if present
+         */
+        public boolean hasAttribute(@NotNull String name) {
+            for (int a = attributeStarts[this.index]; a < attributeStarts[this.index + 1]; a++)
+                if (symbols[attributeNames[a]].equals(name)) return true;
+            return false;
+        }
+
+        /**
+         * Gets all the attributes, in their order.
+         *
+         * @return an unmodifiable map of the attributes
+         */
+        public @NotNull Map<String, String> getAttributes() {
+            final Map<String, String> attributes = new LinkedHashMap<>();
+            for (int a = attributeStarts[this.index]; a < attributeStarts[this.index + 1]; a++)
+                attributes.put(symbols[attributeNames[a]], value(a, true));
+            return Collections.unmodifiableMap(attributes);
+        }
+
+        /**
+         * Gets the text of a container, or the contents of a comment.
+         *
+         * @return the text
+         */
+        public @Nullable String getText() {
+            return text(this.index, true);
+        }
+
+        /**
+         * Gets the parent element.
+         *
+         * @return the parent
+         */
+        public @Nullable Element getParent() {
+            return element(parents[this.index]);
+        }
+
+        /**
+         * Gets the next element.
+         *
+         * @return the next
+         */
+        public @Nullable Element getNext() {
+            return element(nextSiblings[this.index]);
+        }
+
+        /**
+         * Gets the first child element.
+         *
+         * @return the child
+         */
+        public @Nullable Element getChild() {
+            return element(firstChildren[this.index]);
+        }
+
+        /**
+         * Get a child element from its tag name, ignoring the case.
+         *
+         * @param tagName the tag name
+         * @return the element
+         */
+        public @Nullable Element getChild(@NotNull String tagName) {
+            for (int c = firstChildren[this.index]; c != -1; c = nextSiblings[c])
+                if (symbol(c).equalsIgnoreCase(tagName)) return new Element(c);
+            return null;
+        }
+
+        /**
+         * Gets all the children elements in a list.
+         *
+         * @return the children
+         */
+        public @NotNull List<Element> getChildren() {
+            final List<Element> children = new ArrayList<>();
+            for (int c = firstChildren[this.index]; c != -1; c = nextSiblings[c]) children.add(new Element(c));
+            return children;
+        }
+
+        /**
+         * Gets the number of children.
+         *
+         * @return the number of children
+         */
+        public int countChildren() {
+            int count = 0;
+            for (int c = firstChildren[this.index]; c != -1; c = nextSiblings[c]) count++;
+            return count;
+        }
+
+        /**
+         * Get all the elements with the specified tag name,
+         * searching this element, its following siblings and all their descendants in document order.
+         *
+         * @param tagName the tag name
+         * @return the elements
+         */
+        public @NotNull Set<Element> getNodes(@NotNull String tagName) {
+            return find(tagName, this.index, siblingsEnd(this.index), Integer.MAX_VALUE);
+        }
+
+        /**
+         * Get the first element with the specified tag name,
+         * searching this element, its following siblings and all their descendants in document order.
+         *
+         * @param tagName the tag name
+         * @return the element
+         */
+        public @Nullable Element getNode(@NotNull String tagName) {
+            return first(find(tagName, this.index, siblingsEnd(this.index), 1));
+        }
+
+        /**
+         * Create the node of this element, linked to the nodes of its next elements, with all their descendants.
+         *
+         * @return the node
+         */
+        public @NotNull Node toNode() {
+            return toNode(NodeFactory.DEFAULT);
+        }
+
+        /**
+         * Create the node of this element, linked to the nodes of its next elements, with all their descendants.
+         * The nodes are created by the given factory, except for comments.
+         *
+         * @param factory the factory
+         * @return the node
+         */
+        public @NotNull Node toNode(@NotNull NodeFactory factory) {
+            return materialize(this.index, siblingsEnd(this.index), factory)[0];
+        }
+
+        /**
+         * Create the node of this element, without its children and its next.
+         *
+         * @param factory the factory
+         * @return the node
+         */
+        @NotNull Node createNode(@NotNull NodeFactory factory) {
+            return CompactDocument.this.createNode(this.index, factory);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Element)) return false;
+            final Element element = (Element) o;
+            return element.document() == CompactDocument.this && element.index == this.index;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(CompactDocument.this) * 31 + this.index;
+        }
+
+        @Override
+        public @NotNull String toString() {
+            return String.format("%s {index: %s, tag-name: %s, attributes: %s}",
+                    Element.class.getSimpleName(), this.index, getTagName(), getAttributes());
+        }
+
+        private @NotNull CompactDocument document() {
+            return CompactDocument.this;
+        }
+    }
+
+    /**
+     * Collects the elements of a new document in document order.
+     * An element is added to the last container opened and not ended yet.
+     */
+    static final class Builder {
+        private final boolean lazy;
+        private int size;
+        private int[] parents = new int[64];
+        private int[] firstChildren = new int[64];
+        private int[] nextSiblings = new int[64];
+        private int[] tags = new int[64];
+        private byte[] kinds = new byte[64];
+        private int[] textStarts = new int[64];
+        private int[] textEnds = new int[64];
+        private int[] attributeStarts = new int[64];
+        private final BitSet rawTexts = new BitSet();
+        /**
+         * The last child of every element, to link the following ones.
+         */
+        private int[] lastChildren = new int[64];
+
+        private int attributes;
+        private int[] attributeNames = new int[64];
+        private int[] valueStarts = new int[64];
+        private int[] valueEnds = new int[64];
+
+        private final @NotNull StringBuilder chars = new StringBuilder();
+        private final @NotNull List<String> symbols = new ArrayList<>();
+        private final @NotNull Map<String, Integer> symbolIds = new HashMap<>();
+
+        private int[] open = new int[16];
+        private int depth;
+        private int lastRoot = -1;
+
+        /**
+         * Instantiates a new Builder, that keeps the values and texts given as they are.
+         */
+        Builder() {
+            this(false);
+        }
+
+        /**
+         * Instantiates a new Builder.
+         *
+         * @param lazy if true, the values and texts given are raw, and they will be decoded on request
+         */
+        Builder(boolean lazy) {
+            this.lazy = lazy;
+        }
+
+        /**
+         * Add the given node, with its attributes and text, and open it if it is a container.
+         *
+         * @param node the node
+         * @return the first child of the node, if any
+         */
+        @Nullable Node add(@NotNull Node node) {
+            if (node instanceof CommentNode) {
+                comment(((CommentNode) node).comment);
+                return null;
+            }
+            if (!(node instanceof ContainerNode)) {
+                startElement(node.getTagName(), false);
+                node.getAttributes().forEach(this::attribute);
+                return null;
+            }
+            final ContainerNode container = (ContainerNode) node;
+            final int element = startElement(node.getTagName(), true);
+            node.getAttributes().forEach(this::attribute);
+            if (container.getText() != null) text(element, container.getText());
+            return container.getChild();
+        }
+
+        /**
+         * Add a new element, that is opened if it is a container.
+         *
+         * @param tagName   the tag name
+         * @param container true if it is a container
+         * @return the index of the element
+         */
+        int startElement(@NotNull String tagName, boolean container) {
+            final int element = add(tagName, container ? CONTAINER : NODE);
+            if (container) {
+                if (this.depth == this.open.length) this.open = Arrays.copyOf(this.open, 2 * this.depth);
+                this.open[this.depth++] = element;
+            }
+            return element;
+        }
+
+        /**
+         * Add an attribute to the last element added.
+         * If an attribute with the same name is already present, its value is replaced.
+         *
+         * @param name  the name
+         * @param value the value
+         */
+        void attribute(@NotNull String name, @Nullable String value) {
+            final int symbol = symbol(name);
+            int attribute = this.attributeStarts[this.size - 1];
+            while (attribute < this.attributes && this.attributeNames[attribute] != symbol) attribute++;
+            if (attribute == this.attributes) {
+                if (attribute == this.attributeNames.length) {
+                    this.attributeNames = Arrays.copyOf(this.attributeNames, 2 * attribute);
+                    this.valueStarts = Arrays.copyOf(this.valueStarts, 2 * attribute);
+                    this.valueEnds = Arrays.copyOf(this.valueEnds, 2 * attribute);
+                }
+                this.attributeNames[attribute] = symbol;
+                this.attributes++;
+            }
+            if (value == null) this.valueStarts[attribute] = this.valueEnds[attribute] = -1;
+            else {
+                this.valueStarts[attribute] = this.chars.length();
+                this.chars.append(value);
+                this.valueEnds[attribute] = this.chars.length();
+            }
+        }
+
+        /**
+         * Sets the text of the given element.
+         *
+         * @param element the element
+         * @param text    the text
+         */
+        void text(int element, @NotNull String text) {
+            this.textStarts[element] = this.chars.length();
+            this.chars.append(text);
+            this.textEnds[element] = this.chars.length();
+        }
+
+        /**
+         * Set the text of the given container, that will never be decoded.
+         *
+         * @param element the container
+         * @param text    the text
+         */
+        void rawText(int element, @NotNull String text) {
+            text(element, text);
+            this.rawTexts.set(element);
+        }
+
+        /**
+         * Gets the tag name of the given element.
+         *
+         * @param element the element
+         * @return the tag name
+         */
+        @NotNull String tagName(int element) {
+            return this.symbols.get(this.tags[element]);
+        }
+
+        /**
+         * Add a comment to the last container opened.
+         *
+         * @param comment the comment
+         */
+        void comment(@NotNull String comment) {
+            text(add(CommentNode.TAG_NAME, COMMENT), comment);
+        }
+
+        /**
+         * End the last container opened.
+         */
+        void endElement() {
+            this.depth--;
+        }
+
+        /**
+         * Checks if the given element is a container.
+         *
+         * @param element the element
+         * @return true if it is
+         */
+        boolean isContainer(int element) {
+            return this.kinds[element] == CONTAINER;
+        }
+
+        /**
+         * Checks if no element has been added.
+         *
+         * @return true if empty
+         */
+        boolean isEmpty() {
+            return this.size == 0;
+        }
+
+        /**
+         * Create the document from the elements added.
+         *
+         * @return the document
+         */
+        @NotNull CompactDocument build() {
+            return new CompactDocument(this);
+        }
+
+        private int add(@NotNull String tagName, byte kind) {
+            final int element = this.size;
+            if (element + 1 >= this.parents.length) grow();
+            final int parent = this.depth == 0 ? -1 : this.open[this.depth - 1];
+            this.parents[element] = parent;
+            this.firstChildren[element] = -1;
+            this.nextSiblings[element] = -1;
+            this.lastChildren[element] = -1;
+            this.tags[element] = symbol(tagName);
+            this.kinds[element] = kind;
+            this.textStarts[element] = this.textEnds[element] = -1;
+            this.attributeStarts[element] = this.attributes;
+
+            final int previous = parent == -1 ? this.lastRoot : this.lastChildren[parent];
+            if (previous != -1) this.nextSiblings[previous] = element;
+            else if (parent != -1) this.firstChildren[parent] = element;
+            if (parent == -1) this.lastRoot = element;
+            else this.lastChildren[parent] = element;
+            this.size++;
+            return element;
+        }
+
+        private int symbol(@NotNull String name) {
+            final Integer id = this.symbolIds.get(name);
+            if (id != null) return id;
+            this.symbols.add(name);
+            this.symbolIds.put(name, this.symbols.size() - 1);
+            return this.symbols.size() - 1;
+        }
+
+        private void grow() {
+            final int length = 2 * this.parents.length;
+            this.parents = Arrays.copyOf(this.parents, length);
+            this.firstChildren = Arrays.copyOf(this.firstChildren, length);
+            this.nextSiblings = Arrays.copyOf(this.nextSiblings, length);
+            this.tags = Arrays.copyOf(this.tags, length);
+            this.kinds = Arrays.copyOf(this.kinds, length);
+            this.textStarts = Arrays.copyOf(this.textStarts, length);
+            this.textEnds = Arrays.copyOf(this.textEnds, length);
+            this.attributeStarts = Arrays.copyOf(this.attributeStarts, length);
+            this.lastChildren = Arrays.copyOf(this.lastChildren, length);
+        }
+    }
+}
@@ -1,11 +1,14 @@
 package it.fulminazzo.tagparser.nodes;
 
+import it.fulminazzo.tagparser.utils.Entities;
 import it.fulminazzo.tagparser.utils.StringUtils;
+import lombok.AccessLevel;
 import lombok.Getter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
@@ -27,6 +30,21 @@ public class ContainerNode extends Node {
     protected static final String INDENTATION = "    ";
     protected @Nullable Node child;
     protected @Nullable String text;
+    /**
+     * The children of this node, indexed in an array to support constant time appends and random access.
+     * The chain starting from {@link #child} is always the reference: the array is rebuilt from it
+     * every time a sibling is modified through {@link Node#setNext(Node)} or similar methods.
+     */
+    @Getter(AccessLevel.NONE)
+    private transient Node @Nullable [] childArray;
+    @Getter(AccessLevel.NONE)
+    private transient int childCount;
+    /**
+     * The task reading the children and the text of this node, if their parsing has been deferred
+     * with {@link NodeBuilder#deferChildren()}. It is run, and discarded, on the first access to either.
+     */
+    @Getter(AccessLevel.NONE)
+    private transient @Nullable Runnable deferredContents;
 
     /**
      * Instantiates a new Container node.
@@ -47,6 +65,47 @@ public class ContainerNode extends Node {
         super(tagName, tagRegex);
     }
 
+    /**
+     * Instantiates a new Container node with the tag name and a copy of the attributes of the given node.
+     * The tag name is not validated again.
+     *
+     * @param node the node
+     */
+    protected ContainerNode(@NotNull Node node) {
+        this(node.tagName, new AttributeMap());
+        this.attributes.putAll(node.attributes);
+    }
+
+    /**
+     * Instantiates a new Container node with the given attributes, without validating its tag name.
+     *
+     * @param tagName    the tag name
+     * @param attributes the attributes
+     */
+    ContainerNode(@NotNull String tagName, @NotNull AttributeMap attributes) {
+        super(tagName, attributes);
+    }
+
+    /**
+     * Gets the first child node.
+     *
+     * @return the child
+     */
+    public @Nullable Node getChild() {
+        readDeferred();
+        return this.child;
+    }
+
+    /**
+     * Gets the text.
+     *
+     * @return the text
+     */
+    public @Nullable String getText() {
+        readDeferred();
+        return this.text;
+    }
+
     /**
      * Get a child node from its tag name.
      *
@@ -64,29 +123,33 @@ public class ContainerNode extends Node {
      * @return the node
      */
     public @Nullable Node getChild(@NotNull Predicate<? super Node> validator) {
+        readDeferred();
         for (Node c = this.child; c != null; c = c.getNext())
             if (validator.test(c)) return c;
         return null;
     }
 
-    @Override
-    public @NotNull Set<Node> getNodes(@NotNull Predicate<? super Node> validator) {
-        final Set<Node> set = super.getNodes(validator);
-        if (this.child != null) {
-            if (validator.test(this.child)) set.add(this.child);
-            set.addAll(this.child.getNodes(validator));
-        }
-        return set;
+    /**
+     * Get the child node at the given index.
+     *
+     * @param index the index
+     * @return the node
+     */
+    public @NotNull Node getChild(int index) {
+        final Node[] children = indexChildren();
+        if (index < 0 || index >= this.childCount)
+            throw new IndexOutOfBoundsException(String.format("Index: %s, Size: %s", index, this.childCount));
+        return children[index];
     }
 
-    @Override
-    public @Nullable Node getNode(@NotNull Predicate<? super Node> validator) {
-        Node result = super.getNode(validator);
-        if (result != null) return result;
-        if (this.child != null)
-            if (validator.test(this.child)) return this.child;
-            else return child.getNode(validator);
-        return null;
+    /**
+     * Gets the current number of children.
+     *
+     * @return the number of children
+     */
+    public int childCount() {
+        indexChildren();
+        return this.childCount;
     }
 
     @Override
@@ -161,6 +224,7 @@ public class ContainerNode extends Node {
      * @return the text
      */
     public @NotNull ContainerNode setText(@Nullable String text) {
+        readDeferred();
         this.text = StringUtils.parseContent(text);
         return this;
     }
@@ -202,8 +266,40 @@ public class ContainerNode extends Node {
      * @return this node
      */
     public @NotNull ContainerNode addChild(@NotNull Node child) {
-        if (this.child != null) this.child.addNext(child);
-        else this.child = child;
+        Node[] children = indexChildren();
+        if (this.childCount == 0) this.child = child;
+        else children[this.childCount - 1].next = child;
+        for (Node c = child; c != null; c = c.next) {
+            if (this.childCount == children.length)
+                children = this.childArray = Arrays.copyOf(children, children.length * 2);
+            if (c.parent != null && c.parent != this) c.parent.invalidateChildren();
+            c.parent = this;
+            children[this.childCount++] = c;
+        }
+        final NodeIndex index = this.index;
+        if (index != null)
+            for (Node c = child; c != null; c = c.next) index.addSubtree(c);
+        return this;
+    }
+
+    /**
+     * Add every given node as a child.
+     *
+     * @param children the children
+     * @return this node
+     */
+    public @NotNull ContainerNode addChildren(@NotNull Node @NotNull ... children) {
+        return addChildren(Arrays.asList(children));
+    }
+
+    /**
+     * Add every given node as a child.
+     *
+     * @param children the children
+     * @return this node
+     */
+    public @NotNull ContainerNode addChildren(@NotNull Iterable<? extends Node> children) {
+        for (Node child : children) addChild(child);
         return this;
     }
 
@@ -224,11 +320,21 @@ public class ContainerNode extends Node {
      * @return this node
      */
     public @NotNull ContainerNode removeChild(@NotNull Predicate<Node> predicate) {
-        if (this.child == null) return this;
-        if (predicate.test(this.child)) {
-            this.child.removeNext(predicate);
-            this.child = this.child.next;
+        readDeferred();
+        Node end = this.child;
+        while (end != null && predicate.test(end)) end = end.next;
+        if (end == this.child) return this;
+        // Every removed node is left pointing to the first one kept.
+        final NodeIndex index = this.index;
+        for (Node n = this.child; n != end; ) {
+            final Node following = n.next;
+            n.next = end;
+            n.parent = null;
+            if (index != null) index.removeSubtree(n);
+            n = following;
         }
+        this.child = end;
+        invalidateChildren();
         return this;
     }
 
@@ -269,7 +375,18 @@ public class ContainerNode extends Node {
      * @return the child
      */
     public @NotNull ContainerNode setChild(@Nullable Node child) {
+        readDeferred();
+        final NodeIndex index = this.index;
+        for (Node c = this.child; c != null; c = c.next) {
+            c.parent = null;
+            if (index != null) index.removeSubtree(c);
+        }
         this.child = child;
+        invalidateChildren();
+        if (index != null) {
+            indexChildren();
+            for (Node c = child; c != null; c = c.next) index.addSubtree(c);
+        }
         return this;
     }
 
@@ -279,8 +396,7 @@ public class ContainerNode extends Node {
      * @return the children
      */
     public int countChildren() {
-        if (this.child != null) return 1 + this.child.countNextNodes();
-        else return 0;
+        return childCount();
     }
 
     /**
@@ -289,30 +405,81 @@ public class ContainerNode extends Node {
      * @return the children
      */
     public @NotNull List<Node> getChildren() {
-        final List<Node> children = new LinkedList<>();
-        Node c = child;
-        while (c != null) {
-            children.add(c);
-            c = c.getNext();
+        final Node[] children = indexChildren();
+        return new ArrayList<>(Arrays.asList(children).subList(0, this.childCount));
+    }
+
+    /**
+     * Index the chain of children in {@link #childArray}, if it is not up-to-date.
+     *
+     * @return the array of children
+     */
+    private Node @NotNull [] indexChildren() {
+        readDeferred();
+        Node[] children = this.childArray;
+        if (children != null && (this.childCount == 0 ? this.child == null :
+                children[0] == this.child && children[this.childCount - 1].next == null))
+            return children;
+
+        children = new Node[children == null ? 8 : Math.max(8, children.length)];
+        int count = 0;
+        for (Node c = this.child; c != null; c = c.next) {
+            if (count == children.length) children = Arrays.copyOf(children, count * 2);
+            c.parent = this;
+            children[count++] = c;
         }
+        this.childArray = children;
+        this.childCount = count;
         return children;
     }
 
+    /**
+     * Defer the reading of the children and the text of this node to their first access.
+     *
+     * @param contents the task reading them
+     */
+    void deferContents(@NotNull Runnable contents) {
+        this.deferredContents = contents;
+    }
+
+    /**
+     * Run the task reading the children and the text of this node, if they have not been read yet.
+     */
+    private void readDeferred() {
+        final Runnable contents = this.deferredContents;
+        if (contents == null) return;
+        this.deferredContents = null;
+        contents.run();
+    }
+
+    /**
+     * Discard the index of the children, that will be rebuilt from the chain when needed.
+     */
+    void invalidateChildren() {
+        this.childArray = null;
+        this.childCount = 0;
+    }
+
     @Override
-    public @NotNull String toHTML() {
-        final StringBuilder builder = new StringBuilder(super.toHTML());
-        builder.setLength(builder.length() - 2);
-        builder.append(">");
-        if (text != null) builder.append(StringUtils.unParseContent(text));
-        Node child = this.child;
-        while (child != null) {
-            builder.append("\n").append(INDENTATION);
-            builder.append(child.toHTML().replace("\n", "\n" + INDENTATION));
-            child = child.getNext();
-        }
-        if (this.child != null) builder.append("\n");
-        builder.append("</").append(tagName).append(">");
-        return builder.toString();
+    protected void writeStart(@NotNull NodeWriter writer) throws IOException {
+        writer.writeTag(this, ">");
+        writer.writeText(getText(), Entities.TEXT);
+    }
+
+    @Override
+    protected void writeEnd(@NotNull NodeWriter writer) throws IOException {
+        writer.append("</").append(this.tagName).append('>');
+    }
+
+    /**
+     * Write the start of the given child of this node.
+     *
+     * @param child  the child
+     * @param writer the writer
+     * @throws IOException the io exception
+     */
+    protected void writeChild(@NotNull Node child, @NotNull NodeWriter writer) throws IOException {
+        child.writeStart(writer);
     }
 
     /**
@@ -323,14 +490,26 @@ public class ContainerNode extends Node {
      */
     public boolean equals(@Nullable ContainerNode node) {
         if (node == null) return false;
-        if (!Objects.equals(this.child, node.getChild())) return false;
-        return Objects.equals(this.text, node.getText());
+        if (!Objects.equals(getChild(), node.getChild())) return false;
+        return Objects.equals(getText(), node.getText());
+    }
+
+    @Override
+    protected boolean equalsNode(@NotNull Node node) {
+        if (node instanceof ContainerNode && !Objects.equals(getText(), ((ContainerNode) node).getText())) return false;
+        return super.equalsNode(node);
+    }
+
+    @Override
+    public String toYAML() {
+        readDeferred();
+        return super.toYAML();
     }
 
     @Override
-    public boolean equals(@Nullable Node node) {
-        if (node instanceof ContainerNode && !equals((ContainerNode) node)) return false;
-        return super.equals(node);
+    public String toJSON() {
+        readDeferred();
+        return super.toJSON();
     }
 
     @Override
@@ -340,7 +519,7 @@ public class ContainerNode extends Node {
         Class<?> clazz = this.getClass();
         while (clazz != Object.class) {
             for (Field field : clazz.getDeclaredFields())
-                if (!Modifier.isStatic(field.getModifiers())) {
+                if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers())) {
                     builder.append("\n    ");
                     if (field.getName().equals("child"))
                         builder.append("children: ").append(countChildren());
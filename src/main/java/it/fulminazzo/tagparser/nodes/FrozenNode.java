@@ -0,0 +1,502 @@
+package it.fulminazzo.tagparser.nodes;
+
+import it.fulminazzo.tagparser.nodes.exceptions.NodeException;
+import it.fulminazzo.tagparser.nodes.exceptions.NotValidTagNameException;
+import it.fulminazzo.tagparser.nodes.validators.NameValidator;
+import it.fulminazzo.tagparser.utils.Entities;
+import it.fulminazzo.tagparser.utils.StringUtils;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.function.Predicate;
+
+/**
+ * An immutable snapshot of a {@link Node} and its descendants, created with {@link Node#freeze()}.
+ * <p>
+ * Every field is final and no array or map is modified after creation, so a snapshot can be read
+ * by any number of threads without locks.
+ * Differently from nodes, snapshots do not know their parent nor their siblings:
+ * this allows the same subtree to be shared by many snapshots.
+ * <p>
+ * Snapshots are never modified: methods like {@link #withAttribute(String, String)} and {@link #withChild(FrozenNode)}
+ * return a new snapshot, that shares every child with this one.
+ * To update a descendant, {@link #replace(FrozenNode, FrozenNode)} copies only the nodes on the path to it.
+ * A mutable tree of nodes can be obtained at any time with {@link #toNode()}.
+ */
+public final class FrozenNode {
+    private static final byte NODE = 0;
+    private static final byte CONTAINER = 1;
+    private static final byte COMMENT = 2;
+    private static final FrozenNode[] NO_CHILDREN = new FrozenNode[0];
+
+    private final @NotNull String tagName;
+    private final byte kind;
+    private final @NotNull Map<String, String> attributes;
+    private final @Nullable String text;
+    private final FrozenNode @NotNull [] children;
+    private final int hash;
+
+    private FrozenNode(@NotNull String tagName, byte kind, @NotNull Map<String, String> attributes,
+                       @Nullable String text, FrozenNode @NotNull [] children) {
+        this.tagName = tagName;
+        this.kind = kind;
+        this.attributes = attributes;
+        this.text = text;
+        this.children = children;
+        // Children are always created first, so the hash is computed without recursion.
+        int hash = 31 * tagName.hashCode() + kind;
+        hash = 31 * hash + attributes.hashCode();
+        hash = 31 * hash + Objects.hashCode(text);
+        for (FrozenNode child : children) hash = 31 * hash + child.hash;
+        this.hash = hash;
+    }
+
+    /**
+     * Create a snapshot of the given node and its descendants, but not its siblings.
+     * Children whose parsing has been deferred are read.
+     *
+     * @param node the node
+     * @return the snapshot
+     */
+    public static @NotNull FrozenNode of(@NotNull Node node) {
+        // Nodes are frozen after their children, keeping the open ones in an explicit stack.
+        final Deque<Frame> stack = new ArrayDeque<>();
+        stack.push(new Frame(node));
+        while (true) {
+            final Frame frame = stack.peek();
+            final Node child = frame.next;
+            if (child != null) {
+                frame.next = child.getNext();
+                if (child instanceof ContainerNode && ((ContainerNode) child).getChild() != null) stack.push(new Frame(child));
+                else frame.children.add(create(child, NO_CHILDREN));
+                continue;
+            }
+            stack.pop();
+            final FrozenNode frozen = create(frame.node, frame.children.toArray(NO_CHILDREN));
+            if (stack.isEmpty()) return frozen;
+            stack.peek().children.add(frozen);
+        }
+    }
+
+    private static @NotNull FrozenNode create(@NotNull Node node, FrozenNode @NotNull [] children) {
+        if (node instanceof CommentNode)
+            return new FrozenNode(CommentNode.TAG_NAME, COMMENT, Collections.emptyMap(), ((CommentNode) node).getComment(), NO_CHILDREN);
+        final Map<String, String> attributes = node.getAttributes();
+        if (!(node instanceof ContainerNode))
+            return new FrozenNode(node.getTagName(), NODE, copy(attributes), null, NO_CHILDREN);
+        return new FrozenNode(node.getTagName(), CONTAINER, copy(attributes), ((ContainerNode) node).getText(), children);
+    }
+
+    private static @NotNull Map<String, String> copy(@NotNull Map<String, String> attributes) {
+        if (attributes.isEmpty()) return Collections.emptyMap();
+        final AttributeMap copy = new AttributeMap();
+        copy.putAll(attributes);
+        return Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * Gets the tag name.
+     *
+     * @return the tag name
+     */
+    public @NotNull String getTagName() {
+        return this.tagName;
+    }
+
+    /**
+     * Checks if the node can have a text and children.
+     *
+     * @return true if it is a container
+     */
+    public boolean isContainer() {
+        return this.kind == CONTAINER;
+    }
+
+    /**
+     * Checks if the node is a comment, whose text is the comment.
+     *
+     * @return true if it is a comment
+     */
+    public boolean isComment() {
+        return this.kind == COMMENT;
+    }
+
+    /**
+     * Gets the value of the given attribute.
+     *
+     * @param name the name
+     * @return the value
+     */
+    public @Nullable String getAttribute(@NotNull String name) {
+        return this.attributes.get(name);
+    }
+
+    /**
+     * Gets the attributes, in a read-only map.
+     *
+     * @return the attributes
+     */
+    public @NotNull Map<String, String> getAttributes() {
+        return this.attributes;
+    }
+
+    /**
+     * Gets the text of a container or the contents of a comment.
+     *
+     * @return the text
+     */
+    public @Nullable String getText() {
+        return this.text;
+    }
+
+    /**
+     * Gets the child at the given index.
+     *
+     * @param index the index
+     * @return the child
+     */
+    public @NotNull FrozenNode getChild(int index) {
+        if (index < 0 || index >= this.children.length)
+            throw new IndexOutOfBoundsException(String.format("Index: %s, Size: %s", index, this.children.length));
+        return this.children[index];
+    }
+
+    /**
+     * Get a child from its tag name, ignoring the case.
+     *
+     * @param tagName the tag name
+     * @return the child
+     */
+    public @Nullable FrozenNode getChild(@NotNull String tagName) {
+        for (FrozenNode child : this.children)
+            if (child.tagName.equalsIgnoreCase(tagName)) return child;
+        return null;
+    }
+
+    /**
+     * Gets all the children, in a read-only list.
+     *
+     * @return the children
+     */
+    public @NotNull List<FrozenNode> getChildren() {
+        return Collections.unmodifiableList(Arrays.asList(this.children));
+    }
+
+    /**
+     * Gets the number of children.
+     *
+     * @return the number of children
+     */
+    public int countChildren() {
+        return this.children.length;
+    }
+
+    /**
+     * Get all the nodes with the given tag name, in this node and its descendants.
+     *
+     * @param tagName the tag name
+     * @return the nodes
+     */
+    public @NotNull List<FrozenNode> getNodes(@NotNull String tagName) {
+        return getNodes(n -> n.tagName.equals(tagName));
+    }
+
+    /**
+     * Get all the nodes that pass a test from the given {@link Predicate} function,
+     * searching this node and its descendants in document order.
+     *
+     * @param validator the validator
+     * @return the nodes
+     */
+    public @NotNull List<FrozenNode> getNodes(@NotNull Predicate<? super FrozenNode> validator) {
+        final List<FrozenNode> nodes = new ArrayList<>();
+        final Deque<FrozenNode> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            final FrozenNode node = pending.pop();
+            if (validator.test(node)) nodes.add(node);
+            for (int i = node.children.length - 1; i >= 0; i--) pending.push(node.children[i]);
+        }
+        return nodes;
+    }
+
+    /**
+     * Get the first node with the given tag name, in this node and its descendants.
+     *
+     * @param tagName the tag name
+     * @return the node
+     */
+    public @Nullable FrozenNode getNode(@NotNull String tagName) {
+        return getNode(n -> n.tagName.equals(tagName));
+    }
+
+    /**
+     * Get the first node that passes a test from the given {@link Predicate} function,
+     * searching this node and its descendants in document order.
+     *
+     * @param validator the validator
+     * @return the node
+     */
+    public @Nullable FrozenNode getNode(@NotNull Predicate<? super FrozenNode> validator) {
+        final Deque<FrozenNode> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            final FrozenNode node = pending.pop();
+            if (validator.test(node)) return node;
+            for (int i = node.children.length - 1; i >= 0; i--) pending.push(node.children[i]);
+        }
+        return null;
+    }
+
+    /**
+     * Get a copy of this node with the given attribute set, as {@link Node#setAttribute(String, String)} would.
+     *
+     * @param name  the name
+     * @param value the value
+     * @return the new node
+     */
+    public @NotNull FrozenNode withAttribute(@NotNull String name, @Nullable String value) {
+        if (isComment()) throw new UnsupportedOperationException("Comments do not have attributes");
+        if (!NameValidator.isValidName(name)) throw new NotValidTagNameException(name);
+        final AttributeMap attributes = new AttributeMap();
+        attributes.putAll(this.attributes);
+        attributes.put(name, Entities.decodeAttribute(StringUtils.removeQuotes(value)));
+        return new FrozenNode(this.tagName, this.kind, Collections.unmodifiableMap(attributes), this.text, this.children);
+    }
+
+    /**
+     * Get a copy of this node without the given attribute.
+     *
+     * @param name the name
+     * @return the new node, or this node if the attribute is not present
+     */
+    public @NotNull FrozenNode withoutAttribute(@NotNull String name) {
+        if (!this.attributes.containsKey(name)) return this;
+        final AttributeMap attributes = new AttributeMap();
+        attributes.putAll(this.attributes);
+        attributes.remove(name);
+        return new FrozenNode(this.tagName, this.kind, attributes.isEmpty() ? Collections.emptyMap() :
+                Collections.unmodifiableMap(attributes), this.text, this.children);
+    }
+
+    /**
+     * Get a copy of this container with the given text, as {@link ContainerNode#setText(String)} would.
+     *
+     * @param text the text
+     * @return the new node
+     */
+    public @NotNull FrozenNode withText(@Nullable String text) {
+        checkContainer();
+        return new FrozenNode(this.tagName, this.kind, this.attributes, StringUtils.parseContent(text), this.children);
+    }
+
+    /**
+     * Get a copy of this container with the given child added after the others.
+     *
+     * @param child the child
+     * @return the new node
+     */
+    public @NotNull FrozenNode withChild(@NotNull FrozenNode child) {
+        checkContainer();
+        final FrozenNode[] children = Arrays.copyOf(this.children, this.children.length + 1);
+        children[this.children.length] = child;
+        return new FrozenNode(this.tagName, this.kind, this.attributes, this.text, children);
+    }
+
+    /**
+     * Get a copy of this container with the child at the given index replaced.
+     *
+     * @param index the index
+     * @param child the child
+     * @return the new node, or this node if the child is already the same
+     */
+    public @NotNull FrozenNode withChild(int index, @NotNull FrozenNode child) {
+        if (getChild(index) == child) return this;
+        final FrozenNode[] children = this.children.clone();
+        children[index] = child;
+        return new FrozenNode(this.tagName, this.kind, this.attributes, this.text, children);
+    }
+
+    /**
+     * Get a copy of this container without the child at the given index.
+     *
+     * @param index the index
+     * @return the new node
+     */
+    public @NotNull FrozenNode withoutChild(int index) {
+        getChild(index);
+        final FrozenNode[] children = new FrozenNode[this.children.length - 1];
+        System.arraycopy(this.children, 0, children, 0, index);
+        System.arraycopy(this.children, index + 1, children, index, children.length - index);
+        return new FrozenNode(this.tagName, this.kind, this.attributes, this.text, children);
+    }
+
+    /**
+     * Get a copy of this node where the given descendant, found by identity, is replaced.
+     * Only the nodes on the path from this node to the descendant are copied: all the others are shared.
+     * If the same instance appears more than once, only the first one in document order is replaced.
+     *
+     * @param target      the descendant
+     * @param replacement the replacement
+     * @return the new node, or this node if the descendant is not found
+     */
+    public @NotNull FrozenNode replace(@NotNull FrozenNode target, @NotNull FrozenNode replacement) {
+        if (this == target) return replacement;
+        // The path from this node, with the index of the child being visited at every level.
+        final List<FrozenNode> path = new ArrayList<>();
+        int[] indexes = new int[16];
+        path.add(this);
+        while (!path.isEmpty()) {
+            final int depth = path.size() - 1;
+            final FrozenNode node = path.get(depth);
+            final int index = indexes[depth];
+            if (index == node.children.length) {
+                path.remove(depth);
+                if (depth > 0) indexes[depth - 1]++;
+                continue;
+            }
+            final FrozenNode child = node.children[index];
+            if (child == target) {
+                FrozenNode updated = replacement;
+                for (int d = depth; d >= 0; d--) updated = path.get(d).withChild(indexes[d], updated);
+                return updated;
+            }
+            if (depth + 1 == indexes.length) indexes = Arrays.copyOf(indexes, 2 * indexes.length);
+            indexes[depth + 1] = 0;
+            path.add(child);
+        }
+        return this;
+    }
+
+    private void checkContainer() {
+        if (!isContainer())
+            throw new UnsupportedOperationException(String.format("Node \"%s\" is not a container", this.tagName));
+    }
+
+    /**
+     * Create a new tree of nodes from this snapshot.
+     *
+     * @return the node
+     */
+    public @NotNull Node toNode() {
+        return toNode(CompactDocument.NodeFactory.DEFAULT);
+    }
+
+    /**
+     * Create a new tree of nodes from this snapshot.
+     * The nodes are created by the given factory, except for comments.
+     *
+     * @param factory the factory
+     * @return the node
+     */
+    public @NotNull Node toNode(@NotNull CompactDocument.NodeFactory factory) {
+        final Node root = createNode(factory);
+        final Deque<Object[]> pending = new ArrayDeque<>();
+        pending.push(new Object[]{this, root});
+        while (!pending.isEmpty()) {
+            final Object[] pair = pending.pop();
+            final FrozenNode frozen = (FrozenNode) pair[0];
+            if (frozen.children.length == 0) continue;
+            final ContainerNode container = (ContainerNode) pair[1];
+            Node last = null;
+            for (FrozenNode child : frozen.children) {
+                final Node node = child.createNode(factory);
+                if (last == null) container.child = node;
+                else last.next = node;
+                last = node;
+                pending.push(new Object[]{child, node});
+            }
+        }
+        return root;
+    }
+
+    /**
+     * Create the node of this snapshot, without its children.
+     *
+     * @param factory the factory
+     * @return the node
+     */
+    @NotNull Node createNode(@NotNull CompactDocument.NodeFactory factory) {
+        if (isComment()) return new CommentNode(Objects.requireNonNull(this.text));
+        final Node node = factory.create(this.tagName, isContainer());
+        // Values and texts have already been decoded, so they are set as they are.
+        node.attributes.putAll(this.attributes);
+        if (isContainer()) ((ContainerNode) node).text = this.text;
+        return node;
+    }
+
+    /**
+     * Converts this snapshot in a HTML format, like {@link Node#toHTML()}.
+     *
+     * @return the string
+     */
+    public @NotNull String toHTML() {
+        return toHTML(CompactDocument.NodeFactory.DEFAULT);
+    }
+
+    /**
+     * Converts this snapshot in a HTML format, as the nodes created by the given factory would be written.
+     * The tree of nodes is not rebuilt: only one node at a time is created, and discarded once written.
+     * For example, the factory of {@link it.fulminazzo.tagparser.markup.INodeObject#getNodeFactory()}
+     * writes the snapshot of an object like the object itself.
+     *
+     * @param factory the factory
+     * @return the string
+     * @see NodeWriter#write(FrozenNode, CompactDocument.NodeFactory)
+     */
+    public @NotNull String toHTML(@NotNull CompactDocument.NodeFactory factory) {
+        final StringBuilder builder = new StringBuilder();
+        try {
+            new NodeWriter(builder).write(this, factory);
+        } catch (IOException e) {
+            throw new NodeException(e);
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (!(o instanceof FrozenNode)) return false;
+        // Shared subtrees are skipped, and the others are compared in pairs, without recursion.
+        final Deque<FrozenNode[]> pending = new ArrayDeque<>();
+        pending.push(new FrozenNode[]{this, (FrozenNode) o});
+        while (!pending.isEmpty()) {
+            final FrozenNode[] pair = pending.pop();
+            final FrozenNode a = pair[0];
+            final FrozenNode b = pair[1];
+            if (a == b) continue;
+            if (a.hash != b.hash || a.kind != b.kind || a.children.length != b.children.length) return false;
+            if (!a.tagName.equals(b.tagName) || !Objects.equals(a.text, b.text) || !a.attributes.equals(b.attributes))
+                return false;
+            for (int i = 0; i < a.children.length; i++) pending.push(new FrozenNode[]{a.children[i], b.children[i]});
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        return this.hash;
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return String.format("FrozenNode(\"%s\")", this.tagName);
+    }
+
+    /**
+     * A node whose children are being frozen.
+     */
+    private static final class Frame {
+        private final @NotNull Node node;
+        private final @NotNull List<FrozenNode> children;
+        private @Nullable Node next;
+
+        private Frame(@NotNull Node node) {
+            this.node = node;
+            this.children = new ArrayList<>();
+            this.next = node instanceof ContainerNode ? ((ContainerNode) node).getChild() : null;
+        }
+    }
+}
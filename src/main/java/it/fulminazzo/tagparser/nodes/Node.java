@@ -1,18 +1,27 @@
 package it.fulminazzo.tagparser.nodes;
 
 import it.fulminazzo.tagparser.Attributable;
+import it.fulminazzo.tagparser.nodes.exceptions.NodeException;
 import it.fulminazzo.tagparser.nodes.exceptions.NotValidTagNameException;
+import it.fulminazzo.tagparser.nodes.validators.NameValidator;
 import it.fulminazzo.tagparser.serializables.Serializable;
+import lombok.AccessLevel;
 import lombok.Getter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.InputStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * The most basic type of node.
@@ -26,8 +35,22 @@ import java.util.function.Predicate;
 public class Node implements Attributable<Node>, Serializable {
     public static final String TAG_NAME_REGEX = "[A-Za-z]([A-Za-z0-9_\\-:.]*[A-Za-z0-9])?";
     protected final @NotNull String tagName;
+    /**
+     * The attributes, stored in a compact {@link AttributeMap}.
+     */
     protected final @NotNull Map<String, String> attributes;
     protected @Nullable Node next;
+    /**
+     * The container that last indexed this node as one of its children.
+     * Used to notify it when the chain of siblings changes.
+     */
+    @Getter(AccessLevel.NONE)
+    transient @Nullable ContainerNode parent;
+    /**
+     * The index of the tree containing this node, if any.
+     */
+    @Getter(AccessLevel.NONE)
+    transient @Nullable NodeIndex index;
 
     /**
      * Instantiates a new Node.
@@ -44,14 +67,36 @@ public class Node implements Attributable<Node>, Serializable {
      * @param tagName the tag name
      */
     public Node(@NotNull String tagName, @NotNull String tagRegex) {
-        if (!tagName.matches(tagRegex))
+        this(tagName, new AttributeMap());
+        if (!NameValidator.matches(tagName, tagRegex))
             throw new NotValidTagNameException(tagName);
+    }
+
+    /**
+     * Instantiates a new Node with the given attributes, without validating its tag name.
+     *
+     * @param tagName    the tag name
+     * @param attributes the attributes
+     */
+    Node(@NotNull String tagName, @NotNull AttributeMap attributes) {
         this.tagName = tagName;
-        this.attributes = new LinkedHashMap<>();
+        this.attributes = attributes;
+    }
+
+    /**
+     * Create a new {@link Node} or {@link ContainerNode}, without validating its tag name.
+     * Used by {@link NodeBuilder}, {@link CompactDocument} and {@link FrozenNode}, that already validated the names they read.
+     *
+     * @param tagName   the tag name
+     * @param container true to create a {@link ContainerNode}
+     * @return the node
+     */
+    static @NotNull Node trusted(@NotNull String tagName, boolean container) {
+        return container ? new ContainerNode(tagName, new AttributeMap()) : new Node(tagName, new AttributeMap());
     }
 
     /**
-     * Recursively get all the nodes with the specified tag name. Uses {@link #getNodes(Predicate)}.
+     * Get all the nodes with the specified tag name. Uses {@link #getNodes(Predicate)}.
      *
      * @param tagName the tag name
      * @return the nodes
@@ -61,23 +106,21 @@ public class Node implements Attributable<Node>, Serializable {
     }
 
     /**
-     * Recursively get all the nodes that pass a test from the given {@link Predicate} function.
+     * Get all the nodes that pass a test from the given {@link Predicate} function,
+     * searching this node, its following siblings and all their descendants in document order.
      *
      * @param validator the validator
      * @return the nodes
      */
     public @NotNull Set<Node> getNodes(@NotNull final Predicate<? super Node> validator) {
         final Set<Node> set = new LinkedHashSet<>();
-        if (validator.test(this)) set.add(this);
-        if (this.next != null) {
-            if (validator.test(this.next)) set.add(this.next);
-            set.addAll(this.next.getNodes(validator));
-        }
+        for (Node n = this; n != null; n = n.next)
+            n.stream().filter(validator).forEach(set::add);
         return set;
     }
 
     /**
-     * Recursively get a node from its tag name. Uses {@link #getNode(Predicate)}.
+     * Get a node from its tag name. Uses {@link #getNode(Predicate)}.
      *
      * @param tagName the tag name
      * @return the node
@@ -87,27 +130,156 @@ public class Node implements Attributable<Node>, Serializable {
     }
 
     /**
-     * Recursively get a node using a {@link Predicate} function to validate the node.
+     * Get a node using a {@link Predicate} function to validate the node,
+     * searching this node, its following siblings and all their descendants in document order.
      *
      * @param validator the validator
      * @return the node
      */
     public @Nullable Node getNode(@NotNull final Predicate<? super Node> validator) {
-        if (validator.test(this)) return this;
-        if (this.next != null)
-            if (validator.test(this.next)) return this.next;
-            else return this.next.getNode(validator);
+        for (Node n = this; n != null; n = n.next) {
+            final Iterator<Node> iterator = n.iterator();
+            while (iterator.hasNext()) {
+                final Node node = iterator.next();
+                if (validator.test(node)) return node;
+            }
+        }
         return null;
     }
 
+    /**
+     * Gets a lazy iterator over this node and its descendants, in document order.
+     * The siblings following this node are not included.
+     *
+     * @return the iterator
+     */
+    public @NotNull Iterator<Node> iterator() {
+        return new NodeIterator(this);
+    }
+
+    /**
+     * Gets a lazy iterator over this node and its descendants, in the given order.
+     * The siblings following this node are not included.
+     *
+     * @param order the order
+     * @return the iterator
+     */
+    public @NotNull Iterator<Node> iterator(@NotNull NodeIterator.Order order) {
+        return new NodeIterator(this, order);
+    }
+
+    /**
+     * Gets a sequential stream of this node and its descendants, in document order.
+     * The siblings following this node are not included.
+     *
+     * @return the stream
+     */
+    public @NotNull Stream<Node> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+
+    /**
+     * Gets a parallel stream of this node and its descendants.
+     * The tree is split at child boundaries, while the encounter order is still the document order.
+     * The siblings following this node are not included.
+     *
+     * @return the stream
+     */
+    public @NotNull Stream<Node> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+
+    /**
+     * Gets a spliterator over this node and its descendants, in document order.
+     * The siblings following this node are not included.
+     *
+     * @return the spliterator
+     */
+    public @NotNull Spliterator<Node> spliterator() {
+        return new NodeSpliterator(this);
+    }
+
+    /**
+     * Get all the nodes among this node and its descendants that pass a test from the given {@link Predicate} function.
+     * If the parallelism is greater than one, the search is split among the threads of {@link ForkJoinPool#commonPool()},
+     * but the nodes are returned in document order.
+     * To use a specific number of threads, use {@link #findAll(Predicate, ForkJoinPool)} with a pool of that size.
+     *
+     * @param validator   the validator
+     * @param parallelism the parallelism, the search is sequential if less than or equal to one
+     * @return the nodes
+     */
+    public @NotNull List<Node> findAll(@NotNull Predicate<? super Node> validator, int parallelism) {
+        if (parallelism <= 1) return stream().filter(validator).collect(Collectors.toList());
+        return findAll(validator, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Get all the nodes among this node and its descendants that pass a test from the given {@link Predicate} function.
+     * The search is split among the threads of the given pool, but the nodes are returned in document order.
+     *
+     * @param validator the validator
+     * @param pool      the pool
+     * @return the nodes
+     */
+    public @NotNull List<Node> findAll(@NotNull Predicate<? super Node> validator, @NotNull ForkJoinPool pool) {
+        try {
+            return pool.submit(() -> parallelStream().filter(validator).collect(Collectors.toList())).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NodeException(e);
+        } catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+            if (cause instanceof Error) throw (Error) cause;
+            throw new NodeException(e);
+        }
+    }
+
+    /**
+     * Visit this node and its descendants, in document order.
+     * The siblings following this node are not visited.
+     *
+     * @param visitor the visitor
+     * @return false if the visit was stopped by the visitor
+     */
+    public boolean accept(@NotNull NodeVisitor visitor) {
+        final Deque<ContainerNode> open = new ArrayDeque<>();
+        Node current = this;
+        while (true) {
+            final NodeVisitor.Result result = visitor.visit(current);
+            if (result == NodeVisitor.Result.STOP) return false;
+            if (current instanceof ContainerNode) {
+                final ContainerNode container = (ContainerNode) current;
+                if (result == NodeVisitor.Result.CONTINUE && container.getChild() != null) {
+                    open.push(container);
+                    current = container.getChild();
+                    continue;
+                }
+                visitor.leave(container);
+            }
+            // Move to the next sibling, leaving every parent that has been completed.
+            while (true) {
+                if (open.isEmpty()) return true;
+                if (current.next != null) {
+                    current = current.next;
+                    break;
+                }
+                current = open.pop();
+                visitor.leave((ContainerNode) current);
+            }
+        }
+    }
+
     /**
      * Gets the nodes that succeed the current one.
      *
      * @return the nodes
      */
     public int countNextNodes() {
-        if (this.next != null) return 1 + this.next.countNextNodes();
-        else return 0;
+        int count = 0;
+        for (Node n = this.next; n != null; n = n.next) count++;
+        return count;
     }
 
     /**
@@ -147,8 +319,10 @@ public class Node implements Attributable<Node>, Serializable {
      * @return the node
      */
     public @NotNull Node addNext(@Nullable Node next) {
-        if (this.next != null) this.next.addNext(next);
-        else this.next = next;
+        Node last = this;
+        while (last.next != null) last = last.next;
+        last.next = next;
+        siblingsChanged();
         return this;
     }
 
@@ -169,10 +343,17 @@ public class Node implements Attributable<Node>, Serializable {
      * @return the node
      */
     public @NotNull Node removeNext(@NotNull Predicate<Node> predicate) {
-        if (this.next == null) return this;
-        if (predicate.test(this.next)) {
-            this.next.removeNext(predicate);
-            this.next = this.next.next;
+        Node end = this.next;
+        while (end != null && predicate.test(end)) end = end.next;
+        // Every removed node is left pointing to the first one kept.
+        for (Node n = this.next; n != end; ) {
+            final Node following = n.next;
+            n.next = end;
+            n = following;
+        }
+        if (this.next != end) {
+            this.next = end;
+            siblingsChanged();
         }
         return this;
     }
@@ -215,27 +396,91 @@ public class Node implements Attributable<Node>, Serializable {
      */
     public @NotNull Node setNext(@Nullable Node next) {
         this.next = next;
+        siblingsChanged();
+        return this;
+    }
+
+    /**
+     * Notify the container of this node that the chain of siblings has been modified.
+     */
+    protected void siblingsChanged() {
+        if (this.parent != null) this.parent.invalidateChildren();
+        final NodeIndex index = this.index;
+        if (index != null) index.invalidate();
+    }
+
+    @Override
+    public @NotNull Node setAttribute(@NotNull String name, @Nullable String value) {
+        final NodeIndex index = this.index;
+        final boolean indexed = index != null && index.remove(this);
+        Attributable.super.setAttribute(name, value);
+        if (indexed) index.add(this);
+        return this;
+    }
+
+    @Override
+    public @NotNull Node unsetAttribute(@NotNull String name) {
+        final NodeIndex index = this.index;
+        final boolean indexed = index != null && index.remove(this);
+        Attributable.super.unsetAttribute(name);
+        if (indexed) index.add(this);
+        return this;
+    }
+
+    @Override
+    public @NotNull Node setAttributes(@Nullable Map<String, String> attributes) {
+        final NodeIndex index = this.index;
+        final boolean indexed = index != null && index.remove(this);
+        Attributable.super.setAttributes(attributes);
+        if (indexed) index.add(this);
         return this;
     }
 
+    /**
+     * Create an immutable snapshot of this node and its descendants, that can be shared between threads.
+     * The siblings following this node are not included.
+     *
+     * @return the snapshot
+     */
+    public @NotNull FrozenNode freeze() {
+        return FrozenNode.of(this);
+    }
+
     /**
      * Converts the current node in a HTML format.
+     * To write big nodes without keeping them in memory, use {@link NodeWriter}.
      *
      * @return the string
      */
-    @SuppressWarnings("DuplicatedCode")
     @Override
     public @NotNull String toHTML() {
-        final StringBuilder builder = new StringBuilder("<").append(tagName);
-        if (!this.attributes.isEmpty())
-            this.attributes.forEach((k, v) -> {
-                if (k == null) return;
-                builder.append(" ").append(k);
-                if (v != null) builder.append("=\"")
-                        .append(v.replace("\"", "\\\""))
-                        .append("\"");
-            });
-        return builder.append("/>").toString();
+        final StringBuilder builder = new StringBuilder();
+        try {
+            new NodeWriter(builder).write(this);
+        } catch (IOException e) {
+            throw new NodeException(e);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Write the start of this node: its opening tag and, if any, its contents before the children.
+     *
+     * @param writer the writer
+     * @throws IOException the io exception
+     */
+    protected void writeStart(@NotNull NodeWriter writer) throws IOException {
+        writer.writeTag(this, "/>");
+    }
+
+    /**
+     * Write the end of this node, after its children.
+     *
+     * @param writer the writer
+     * @throws IOException the io exception
+     */
+    protected void writeEnd(@NotNull NodeWriter writer) throws IOException {
+
     }
 
     /**
@@ -245,9 +490,34 @@ public class Node implements Attributable<Node>, Serializable {
      * @return the boolean
      */
     public boolean equals(@Nullable Node node) {
-        if (node == null) return false;
+        // Siblings and children are compared in pairs, without recursion.
+        final Deque<Node[]> pending = new ArrayDeque<>();
+        Node a = this;
+        Node b = node;
+        while (true) {
+            if (a != b) {
+                if (a == null || b == null || !a.equalsNode(b)) return false;
+                if (a instanceof ContainerNode && b instanceof ContainerNode)
+                    pending.push(new Node[]{((ContainerNode) a).getChild(), ((ContainerNode) b).getChild()});
+                a = a.next;
+                b = b.next;
+                continue;
+            }
+            final Node[] pair = pending.poll();
+            if (pair == null) return true;
+            a = pair[0];
+            b = pair[1];
+        }
+    }
+
+    /**
+     * Compares the current node with another one, ignoring next and children nodes.
+     *
+     * @param node the node
+     * @return the boolean
+     */
+    protected boolean equalsNode(@NotNull Node node) {
         if (!this.tagName.equals(node.getTagName())) return false;
-        if (!Objects.equals(this.next, node.getNext())) return false;
         return Objects.equals(this.attributes, node.getAttributes());
     }
 
@@ -290,7 +560,7 @@ public class Node implements Attributable<Node>, Serializable {
         Class<?> clazz = this.getClass();
         while (clazz != Object.class) {
             for (Field field : clazz.getDeclaredFields())
-                if (!Modifier.isStatic(field.getModifiers()))
+                if (!Modifier.isStatic(field.getModifiers()) && !Modifier.isTransient(field.getModifiers()))
                     builder.append("\n    ").append(printField(field));
             clazz = clazz.getSuperclass();
         }
@@ -3,7 +3,13 @@ package it.fulminazzo.tagparser.nodes;
 import it.fulminazzo.tagparser.nodes.exceptions.*;
 import it.fulminazzo.tagparser.nodes.exceptions.files.FileDoesNotExistException;
 import it.fulminazzo.tagparser.nodes.exceptions.files.FileIsDirectoryException;
+import it.fulminazzo.tagparser.nodes.lexer.CharInput;
+import it.fulminazzo.tagparser.nodes.lexer.NodeLexer;
+import it.fulminazzo.tagparser.nodes.lexer.SymbolTable;
 import it.fulminazzo.tagparser.nodes.validators.AttributeValidator;
+import it.fulminazzo.tagparser.nodes.validators.NameValidator;
+import it.fulminazzo.tagparser.utils.Entities;
+import it.fulminazzo.tagparser.utils.StringUtils;
 import lombok.Getter;
 import lombok.Setter;
 import org.jetbrains.annotations.NotNull;
@@ -12,12 +18,11 @@ import org.jetbrains.annotations.Nullable;
 import java.io.*;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
-import java.util.HashMap;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.function.BiConsumer;
-import java.util.function.Predicate;
-import java.util.regex.Pattern;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  * Create a new node from the given specifications.
@@ -47,12 +52,36 @@ public class NodeBuilder {
     protected boolean allowingNotClosedTags;
     /**
      * If enabled and the stream is not ended,
-     * a new NodeBuilder similar to this will be created to retrieve another node if possible.
+     * the following nodes will be read and linked as next of the previous one, if possible.
      * <p>
      * If disabled, will not check if another node is available.
      */
     @Getter
     protected boolean checkingNext;
+    /**
+     * If enabled, comments inside nodes will be kept as {@link CommentNode}s.
+     * <p>
+     * If disabled, comments will be discarded.
+     */
+    @Getter
+    protected boolean keepingComments;
+    /**
+     * If enabled, the documents built with {@link #buildCompact()} keep attribute values and texts as they are read,
+     * and decode them only the first time they are requested.
+     * <p>
+     * If disabled, they are decoded while reading.
+     */
+    @Getter
+    protected boolean decodingLazily;
+    /**
+     * If enabled, the body of every container node is only skimmed to find its closing tag,
+     * and its children and text are read the first time they are requested.
+     * Lookups that stop early, like the head of a page, do not pay for the rest of the document.
+     * <p>
+     * If disabled, every node is read while building.
+     */
+    @Getter
+    protected boolean deferringChildren;
     /**
      * Specify a list of all the valid tags and specify true for closed tags or false for closing tags.
      */
@@ -73,8 +102,29 @@ public class NodeBuilder {
     @Setter
     protected @NotNull String tagNameRegex = Node.TAG_NAME_REGEX;
 
+    /**
+     * The size of the window used to read from streams and files.
+     */
+    @Getter
+    protected int bufferSize = CharInput.DEFAULT_BUFFER_SIZE;
+    /**
+     * The charset used to decode streams and files.
+     */
+    @Getter
+    protected @NotNull Charset charset = StandardCharsets.UTF_8;
+    /**
+     * If not null, the attribute values read are interned in this table,
+     * so that repeated values share the same instance.
+     */
+    @Getter
+    protected @Nullable SymbolTable valueSymbols;
+
     protected @Nullable StringBuilder buffer;
-    protected InputStream stream;
+    protected @Nullable InputStream stream;
+    protected @Nullable CharInput input;
+    protected @Nullable NodeLexer lexer;
+    protected @Nullable NodeReader reader;
+    private boolean closingStream;
 
     /**
      * Instantiates a new Node builder.
@@ -161,6 +211,30 @@ public class NodeBuilder {
         return this;
     }
 
+    /**
+     * Sets the size of the window used to read from streams and files.
+     * Has no effect once the building has started.
+     *
+     * @param bufferSize the buffer size
+     * @return this builder
+     */
+    public @NotNull NodeBuilder setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+        return this;
+    }
+
+    /**
+     * Sets the charset used to decode streams and files.
+     * Has no effect once the building has started.
+     *
+     * @param charset the charset
+     * @return this builder
+     */
+    public @NotNull NodeBuilder setCharset(@NotNull Charset charset) {
+        this.charset = charset;
+        return this;
+    }
+
     /**
      * Allow general tags.
      *
@@ -241,6 +315,91 @@ public class NodeBuilder {
         return this;
     }
 
+    /**
+     * Intern the attribute values read in a new bounded {@link SymbolTable},
+     * so that repeated values, like classes or types, share the same instance.
+     * Has no effect once the building has started.
+     *
+     * @return this builder
+     */
+    public @NotNull NodeBuilder internAttributeValues() {
+        return internAttributeValues(new SymbolTable(1024, 64));
+    }
+
+    /**
+     * Intern the attribute values read in the given {@link SymbolTable}, which can be shared among builders.
+     * Use null to allocate a new string for every value.
+     * Has no effect once the building has started.
+     *
+     * @param symbols the symbol table
+     * @return this builder
+     */
+    public @NotNull NodeBuilder internAttributeValues(@Nullable SymbolTable symbols) {
+        this.valueSymbols = symbols;
+        return this;
+    }
+
+    /**
+     * Keep comments as {@link CommentNode}s.
+     *
+     * @return this builder
+     */
+    public @NotNull NodeBuilder keepComments() {
+        this.keepingComments = true;
+        return this;
+    }
+
+    /**
+     * Discard comments.
+     *
+     * @return this builder
+     */
+    public @NotNull NodeBuilder discardComments() {
+        this.keepingComments = false;
+        return this;
+    }
+
+    /**
+     * Decode attribute values and texts of the documents built with {@link #buildCompact()} only upon request.
+     *
+     * @return this builder
+     */
+    public @NotNull NodeBuilder decodeLazily() {
+        this.decodingLazily = true;
+        return this;
+    }
+
+    /**
+     * Decode attribute values and texts while reading.
+     *
+     * @return this builder
+     */
+    public @NotNull NodeBuilder decodeEagerly() {
+        this.decodingLazily = false;
+        return this;
+    }
+
+    /**
+     * Read the children and the text of container nodes only upon request.
+     * Errors in their contents are thrown on first access.
+     *
+     * @return this builder
+     */
+    public @NotNull NodeBuilder deferChildren() {
+        this.deferringChildren = true;
+        return this;
+    }
+
+    /**
+     * Read the children and the text of container nodes while building.
+     *
+     * @return this builder
+     */
+    public @NotNull NodeBuilder undeferChildren() {
+        this.deferringChildren = false;
+        return this;
+    }
+
     /**
      * Add the given tag name as a valid tag.
      *
@@ -312,7 +471,7 @@ public class NodeBuilder {
      * @param contents the contents
      */
     public void validateContents(@NotNull String contents) {
-        if (this.contentsRegex != null && !contents.matches(this.contentsRegex))
+        if (this.contentsRegex != null && !NameValidator.compile(this.contentsRegex).matcher(contents).matches())
             throw new NotValidContentException(contents, this.contentsRegex);
     }
 
@@ -323,7 +482,12 @@ public class NodeBuilder {
      * @return this builder
      */
     public @NotNull NodeBuilder from(@Nullable String string) {
-        if (string != null) from(new ByteArrayInputStream(string.getBytes()));
+        if (string != null) {
+            this.stream = null;
+            this.input = new CharInput(string);
+            this.lexer = null;
+            this.reader = null;
+        }
         return this;
     }
 
@@ -336,7 +500,9 @@ public class NodeBuilder {
     public @NotNull NodeBuilder from(@NotNull File file) {
         try {
             if (file.isDirectory()) throw new FileIsDirectoryException(file);
-            return from(new FileInputStream(file));
+            from(new FileInputStream(file));
+            this.closingStream = true;
+            return this;
         } catch (FileNotFoundException e) {
             throw new FileDoesNotExistException(file);
         }
@@ -350,9 +516,49 @@ public class NodeBuilder {
      */
     public @NotNull NodeBuilder from(@NotNull InputStream stream) {
         this.stream = stream;
+        this.input = null;
+        this.lexer = null;
+        this.reader = null;
+        this.closingStream = false;
         return this;
     }
 
+    /**
+     * Gets the input every node is read from.
+     * The input is created upon the first invocation from the stream specified with {@link #from(InputStream)}.
+     *
+     * @return the input
+     */
+    protected @NotNull CharInput getInput() {
+        if (this.input == null) {
+            if (this.stream == null) throw new FromNotSpecified();
+            this.input = new CharInput(this.stream, this.charset, this.bufferSize, this.closingStream);
+        }
+        return this.input;
+    }
+
+    /**
+     * Gets the lexer used to tokenize the input.
+     *
+     * @return the lexer
+     */
+    protected @NotNull NodeLexer getLexer() {
+        if (this.lexer == null) this.lexer = new NodeLexer(getInput(), SymbolTable.NAMES, this.valueSymbols);
+        return this.lexer;
+    }
+
+    /**
+     * Gets the reader of the events of the input, validated with the options of this builder.
+     * Every node built by this builder is read from it,
+     * so it can be used to read the input without creating the nodes, or to skip parts of it.
+     *
+     * @return the reader
+     */
+    public @NotNull NodeReader getReader() {
+        if (this.reader == null || this.reader.getBuilder() != this) this.reader = new NodeReader(this);
+        return this.reader;
+    }
+
     /**
      * Build node.
      *
@@ -360,174 +566,350 @@ public class NodeBuilder {
      */
     public @Nullable Node build() {
         try {
-            if (stream == null) throw new FromNotSpecified();
+            final NodeLexer lexer = getLexer();
             if (buffer == null) buffer = new StringBuilder();
-            final Node node = createNode();
-            if (node == null) return null;
-            final String tagName = node.getTagName();
-
-            if (node instanceof ContainerNode) {
-                ContainerNode containerNode = (ContainerNode) node;
-                // Read contents from given stream.
-                final String end = "</" + tagName + ">";
-                read(0, r -> !buffer.toString().endsWith(end), (b, r) -> {
-                    if (r != '/' && r != '!' &&
-                            buffer.length() > 0 && buffer.charAt(buffer.length() - 1) == '<' &&
-                            (buffer.length() < 2 || buffer.charAt(buffer.length() - 2) != '[')) {
-                        buffer.setLength(buffer.length() - 1);
-                        Node n = cloneBuilder()
-                                .setBuffer(new StringBuilder("<").append((char) r))
-                                .uncheckNext()
-                                .build();
-                        if (n != null) containerNode.addChild(n);
-                    } else buffer.append((char) r);
-                });
-
-                String text = buffer.toString();
-                if (text.endsWith(end))
-                    text = text.substring(0, text.length() - end.length());
-                else throw new NodeException(String.format("Node \"%s\" not closed. Raw text: \"%s\"", tagName, text));
-
-                if (!text.trim().isEmpty()) {
-                    validateContents(text);
-                    containerNode.setText(text);
-                }
-            }
-
-            buffer.setLength(0);
-
-            // Check for other content to be added.
-            if (isCheckingNext() && stream.available() > 0)
+            final Node first = createNode();
+            if (first == null) return null;
+
+            Node node = first;
+            while (true) {
+                readContents(node);
+                // Check for other content to be added.
+                if (!isCheckingNext() || !lexer.hasRemaining()) break;
+                final Node next;
                 try {
-                    node.setNext(cloneBuilder().build());
-                } catch (EmptyNodeException ignored) {
-
+                    next = createNode();
+                } catch (EmptyNodeException e) {
+                    break;
                 }
+                node.setNext(next);
+                if (next == null) break;
+                node = next;
+            }
 
-            return node;
+            return first;
         } catch (IOException e) {
             throw new NodeException(e);
         }
     }
 
     /**
-     * Create node from stream.
+     * Build a read-only {@link CompactDocument} of all the nodes, directly from the events of the reader,
+     * without creating any node.
+     * The options of this builder are applied as in {@link #build()}.
+     * If {@link #decodingLazily} is enabled, values and texts are decoded only when requested.
      *
-     * @return the node
-     */
-    protected @Nullable Node createNode() {
-        try {
-            if (stream == null) throw new FromNotSpecified();
-            if (buffer == null) buffer = new StringBuilder();
-            final Map<String, String> attributes = new LinkedHashMap<>();
-
-            // Read tag name from given stream.
-            int read = read(0, r -> buffer.indexOf("<") == -1 || (!isWhiteSpace(r) && r != '>'), (b, r) -> {
-                if (r.toString().matches("[\t\n\r]")) return;
-                if (r == '<' && buffer.toString().contains("<")) throw new NotValidTagNameException(buffer.toString());
-                buffer.append(r);
-            });
-            String tagName = buffer.toString();
-            if (tagName.endsWith(" ") || tagName.endsWith(">")) tagName = tagName.substring(0, tagName.length() - 1);
-            while (tagName.matches("[ \n\t\r]+.*")) tagName = tagName.substring(1);
-            if (tagName.isEmpty()) throw new EmptyNodeException();
-            tagName = tagName.substring(1);
-            final Node node;
-            boolean isContainer = true;
-            if (read == '>' && tagName.endsWith("/")) {
-                isContainer = false;
-                tagName = tagName.substring(0, tagName.length() - 1);
+     * @return the document
+     */
+    public @NotNull CompactDocument buildCompact() {
+        final NodeReader reader = getReader();
+        final StringBuilder buffer = this.buffer == null ? this.buffer = new StringBuilder() : this.buffer;
+        final boolean lazy = isDecodingLazily();
+        final CompactDocument.Builder document = new CompactDocument.Builder(lazy);
+        // The open elements and the offsets where their texts start in the buffer.
+        int[] open = new int[32];
+        int depth = 0;
+        buffer.setLength(0);
+
+        while (reader.hasNext()) {
+            switch (reader.next()) {
+                case NodeReader.START_ELEMENT: {
+                    final int element = document.startElement(reader.getTagName(), reader.isContainer());
+                    for (Map.Entry<String, String> attribute : reader.getAttributes().entrySet()) {
+                        final String name = attributeName(attribute.getKey());
+                        if (!NameValidator.isValidName(name)) throw new NotValidTagNameException(name);
+                        final String value = attribute.getValue();
+                        document.attribute(name, lazy ? value : Entities.decodeAttribute(StringUtils.removeQuotes(value)));
+                    }
+                    if (2 * depth + 2 > open.length) open = Arrays.copyOf(open, 2 * open.length);
+                    open[2 * depth] = element;
+                    open[2 * depth + 1] = buffer.length();
+                    depth++;
+                    break;
+                }
+                case NodeReader.TEXT:
+                    if (depth > 0) buffer.append(reader.getText());
+                    break;
+                case NodeReader.COMMENT:
+                    if (depth > 0 && isKeepingComments()) document.comment(reader.getText());
+                    break;
+                case NodeReader.END_ELEMENT: {
+                    depth--;
+                    final int element = open[2 * depth];
+                    final int start = open[2 * depth + 1];
+                    if (document.isContainer(element)) {
+                        if (!isBlank(buffer, start)) {
+                            final String text = buffer.substring(start);
+                            validateContents(text);
+                            if (isRawText(document.tagName(element))) document.rawText(element, text);
+                            else document.text(element, lazy ? text : StringUtils.parseContent(text));
+                        }
+                        buffer.setLength(start);
+                        document.endElement();
+                    }
+                    if (depth == 0 && !isCheckingNext()) return document.build();
+                    break;
+                }
+                default:
+                    break;
             }
-            buffer.setLength(0);
-
-            if (isWhiteSpace(read)) {
-                String name = "";
-                int openQuotes = -1;
-                // Read attributes from given stream.
-                while ((read = stream.read()) != -1)
-                    if (read == openQuotes && buffer.charAt(buffer.length() - 1) != '\\') openQuotes = -1;
-                    else if (buffer.length() == 0 && (read == '"' || read == '\'')) openQuotes = read;
+        }
+        if (document.isEmpty()) throw new EmptyNodeException();
+        return document.build();
+    }
+
+    /**
+     * Checks if the characters of the buffer from the given start are all white spaces, as in {@link String#trim()}.
+     *
+     * @param buffer the buffer
+     * @param start  the start
+     * @return true if they are
+     */
+    private static boolean isBlank(@NotNull StringBuilder buffer, int start) {
+        for (int i = start; i < buffer.length(); i++)
+            if (buffer.charAt(i) > ' ') return false;
+        return true;
+    }
+
+    /**
+     * Read the input one element with the given tag name at a time.
+     * Every matching element is built with all its contents, while the rest of the input is only read,
+     * so the memory used is bounded by the largest element rather than by the whole input.
+     * Elements nested in a matching one are returned as part of it.
+     * Tags like &lt;tag/&gt; cannot contain anything, so they are skipped.
+     *
+     * @param tagName the tag name
+     * @return the iterator
+     */
+    public @NotNull Iterator<ContainerNode> iterateElements(@NotNull String tagName) {
+        final NodeReader reader = getReader();
+        return new Iterator<ContainerNode>() {
+            private @Nullable ContainerNode next;
+
+            @Override
+            public boolean hasNext() {
+                while (this.next == null && reader.nextElement()) {
+                    if (!reader.getTagName().equals(tagName)) continue;
+                    final Node node = createNode();
+                    if (node == null) reader.skipElement();
                     else {
-                        if (openQuotes == -1) {
-                            if (name.isEmpty() && ("" + (char) read).matches("[\n\t\r]")) continue;
-                            if (read == '=') {
-                                name = buffer.toString();
-                                buffer.setLength(0);
-                                continue;
-                            } else if (isWhiteSpace(read) || read == '>') {
-                                String value = buffer.toString();
-                                if (value.endsWith("/") || value.endsWith("?")) value = value.substring(0, value.length() - 1);
-                                if (name.isEmpty()) name = value;
-                                if (value.equals(name)) value = null;
-                                if (!name.isEmpty()) attributes.put(name, value);
-                                name = "";
-                                if (read == '>') {
-                                    if (buffer.length() > 0)
-                                        isContainer = buffer.charAt(buffer.length() - 1) != '/';
-                                    break;
-                                }
-                                buffer.setLength(0);
-                                continue;
-                            }
+                        try {
+                            readContents(node);
+                        } catch (IOException e) {
+                            throw new NodeException(e);
                         }
-                        if (read != '\n') buffer.append((char) read);
+                        if (node instanceof ContainerNode) this.next = (ContainerNode) node;
                     }
-                buffer.setLength(0);
+                }
+                return this.next != null;
             }
 
-            Boolean validateTag = validateTag(tagName);
-            if (validateTag != null) isContainer = validateTag;
-
-            if (isContainer && !isAllowingNotClosedTags())
-                throw new NotClosedTagsNotAllowedException(tagName);
-            else if (!isContainer && !isAllowingClosingTags())
-                throw new ClosingTagsNotAllowedException(tagName);
+            @Override
+            public @NotNull ContainerNode next() {
+                if (!hasNext()) throw new NoSuchElementException();
+                final ContainerNode node = this.next;
+                this.next = null;
+                return node;
+            }
+        };
+    }
 
-            if (!isContainer) node = new Node(tagName, tagNameRegex);
-            else node = new ContainerNode(tagName, tagNameRegex);
+    /**
+     * Read the input one element with the given tag name at a time.
+     * Closing the stream closes the input.
+     *
+     * @param tagName the tag name
+     * @return the stream
+     * @see #iterateElements(String)
+     */
+    public @NotNull Stream<ContainerNode> streamElements(@NotNull String tagName) {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterateElements(tagName),
+                Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(() -> {
+            try {
+                if (this.input != null) this.input.close();
+            } catch (IOException e) {
+                throw new NodeException(e);
+            }
+        });
+    }
 
-            validateAttributes(attributes);
-            node.setAttributes(attributes);
+    /**
+     * Read the contents of the given node, up to its closing tag.
+     * The node should have just been created with {@link #createNode()}.
+     * Nested nodes are read in the same pass, keeping the open ones in an explicit stack,
+     * so that the depth of the document is not limited by the call stack.
+     * The text of every node is accumulated in {@link #buffer}, starting from the offset where the node was opened.
+     * <p>
+     * If {@link #deferringChildren} is enabled, the contents of the container children of the node
+     * are only skimmed and will be read, in the same way, by a copy of this builder on first access.
+     *
+     * @param node the node
+     * @throws IOException the io exception
+     */
+    protected void readContents(@NotNull Node node) throws IOException {
+        final NodeReader reader = getReader();
+        final StringBuilder buffer = this.buffer == null ? this.buffer = new StringBuilder() : this.buffer;
+        final Deque<OpenNode> stack = new ArrayDeque<>();
+        NodeBuilder deferred = null;
+        buffer.setLength(0);
+        stack.push(new OpenNode(node, 0));
+
+        while (!stack.isEmpty()) {
+            final OpenNode open = stack.peek();
+            switch (reader.next()) {
+                case NodeReader.START_ELEMENT: {
+                    final Node child = createNode();
+                    if (child == null) {
+                        reader.skipElement();
+                        break;
+                    }
+                    ((ContainerNode) open.node).addChild(child);
+                    if (open.node == node && child instanceof ContainerNode && isDeferringChildren()) {
+                        if (deferred == null) deferred = detachedBuilder();
+                        final NodeBuilder builder = deferred;
+                        final String contents = reader.skimElement();
+                        ((ContainerNode) child).deferContents(() -> builder.readDeferred((ContainerNode) child, contents));
+                        break;
+                    }
+                    stack.push(new OpenNode(child, buffer.length()));
+                    break;
+                }
+                case NodeReader.TEXT:
+                    buffer.append(reader.getText());
+                    break;
+                case NodeReader.COMMENT:
+                    onComment((ContainerNode) open.node, reader.getText());
+                    break;
+                case NodeReader.END_ELEMENT: {
+                    stack.pop();
+                    if (!(open.node instanceof ContainerNode)) break;
+                    final String text = buffer.substring(open.start);
+                    buffer.setLength(open.start);
+                    if (!text.trim().isEmpty()) {
+                        validateContents(text);
+                        final ContainerNode container = (ContainerNode) open.node;
+                        if (isRawText(container.getTagName())) container.text = text;
+                        else container.setText(text);
+                    }
+                    break;
+                }
+                default:
+                    break;
+            }
+        }
+    }
 
-            return node;
+    /**
+     * Read the contents of the given node, previously skimmed by {@link NodeReader#skimElement()}.
+     * A new copy of this builder is used every time, so that the copy can be shared.
+     *
+     * @param node     the node
+     * @param contents the contents, closing tag included
+     */
+    void readDeferred(@NotNull ContainerNode node, @NotNull String contents) {
+        final NodeBuilder builder = cloneBuilder().setBuffer(new StringBuilder()).from(contents);
+        builder.getReader().enter(node.getTagName());
+        try {
+            builder.readContents(node);
         } catch (IOException e) {
             throw new NodeException(e);
         }
     }
 
     /**
-     * Read from the stream until a certain condition is met or the end of the stream is reached.
+     * Create a copy of this builder without its input, so that it does not retain it.
      *
-     * @param start  the starting char
-     * @param tester the tester applied for every while loop
-     * @param read   the function to execute when reading
-     * @return the last read char
-     * @throws IOException the io exception
+     * @return the builder
+     */
+    private @NotNull NodeBuilder detachedBuilder() {
+        final NodeBuilder builder = cloneBuilder();
+        builder.buffer = null;
+        builder.stream = null;
+        builder.input = null;
+        builder.lexer = null;
+        builder.reader = null;
+        builder.closingStream = false;
+        return builder;
+    }
+
+    /**
+     * Create a node from the next tag of the reader.
+     * If the reader is already positioned on a tag, that one is used.
+     * White spaces, comments and declarations preceding the tag are skipped.
+     *
+     * @return the node
      */
-    protected char read(int start, @Nullable Predicate<Character> tester, @NotNull BiConsumer<StringBuilder, Character> read) throws IOException {
-        if (stream == null) throw new FromNotSpecified();
-        if (buffer == null) buffer = new StringBuilder();
-        final StringBuilder commentBuffer = new StringBuilder(buffer.toString());
-        if (start != 0) commentBuffer.append(start);
-        boolean commented = false;
-        int r = 0;
-        while ((tester == null || tester.test((char) r)) && (r = stream.read()) != -1) {
-            commentBuffer.append((char) r);
-            if (commented) {
-                if (commentBuffer.toString().endsWith("-->")) {
-                    commentBuffer.setLength(0);
-                    commented = false;
-                }
-            } else {
-                if (commentBuffer.toString().endsWith("<!--")) {
-                    commentBuffer.setLength(0);
-                    commented = true;
-                    buffer.setLength(0);
-                } else read.accept(commentBuffer, (char) r);
+    protected @Nullable Node createNode() {
+        final NodeReader reader = getReader();
+        while (reader.getEventType() != NodeReader.START_ELEMENT) {
+            if (!reader.hasNext()) throw new EmptyNodeException();
+            switch (reader.next()) {
+                case NodeReader.END_DOCUMENT:
+                    throw new EmptyNodeException();
+                case NodeReader.COMMENT:
+                    onComment(null, reader.getText());
+                    break;
+                default:
+                    break;
             }
-            if (commentBuffer.length() > 5) commentBuffer.delete(0, commentBuffer.length() - 5);
         }
-        return (char) r;
+
+        final String tagName = reader.getTagName();
+        // The tag name has already been validated by the reader.
+        final Node node = Node.trusted(tagName, reader.isContainer());
+        reader.getAttributes().forEach((k, v) -> node.setAttribute(attributeName(k), v));
+        return node;
+    }
+
+    /**
+     * Checks if the text of the elements with the given tag name is kept as it was read,
+     * without decoding its character references, like the contents of HTML scripts.
+     *
+     * @param tagName the tag name
+     * @return true if the text is raw
+     */
+    protected boolean isRawText(@NotNull String tagName) {
+        return false;
+    }
+
+    /**
+     * Get the name an attribute read is stored with.
+     *
+     * @param name the name read
+     * @return the name
+     */
+    protected @NotNull String attributeName(@NotNull String name) {
+        return name;
+    }
+
+    /**
+     * Called upon reading a comment.
+     * If {@link #keepingComments} is enabled, the comment is added as a {@link CommentNode} to the parent.
+     *
+     * @param parent  the node currently being read, null if outside any node
+     * @param comment the comment
+     */
+    protected void onComment(@Nullable ContainerNode parent, @NotNull String comment) {
+        if (isKeepingComments() && parent != null) parent.addChild(new CommentNode(comment));
+    }
+
+    /**
+     * Called upon reading a markup declaration (for example, &lt;!DOCTYPE html&gt;).
+     *
+     * @param declaration the declaration, without delimiters
+     */
+    protected void onDeclaration(@NotNull String declaration) {
+
+    }
+
+    /**
+     * Called upon reading a processing instruction (for example, &lt;?xml version="1.0"?&gt;).
+     *
+     * @param target     the target of the instruction
+     * @param attributes the attributes of the instruction
+     */
+    protected void onProcessingInstruction(@NotNull String target, @NotNull Map<String, String> attributes) {
+
     }
 
     /**
@@ -539,8 +921,16 @@ public class NodeBuilder {
         return new NodeBuilder(this);
     }
 
-    private boolean isWhiteSpace(final int read) {
-        final String WHITE_SPACES = "[\t\r\n ]";
-        return Pattern.compile(WHITE_SPACES).matcher((char) read + "").matches();
+    /**
+     * A node whose closing tag has not been read yet.
+     */
+    private static final class OpenNode {
+        private final @NotNull Node node;
+        private final int start;
+
+        private OpenNode(@NotNull Node node, int start) {
+            this.node = node;
+            this.start = start;
+        }
     }
 }
\ No newline at end of file
@@ -0,0 +1,285 @@
+package it.fulminazzo.tagparser.nodes;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * An index of a node and all its descendants, to look up nodes by tag name, id, class or attribute name
+ * without scanning the whole tree.
+ * <p>
+ * Nodes are always returned in document order, like a scan of the tree would, in a new set for every query.
+ * Once attached with {@link #of(Node)}, the index is kept up-to-date with the nodes added or removed through
+ * {@link ContainerNode#addChild(Node)}, {@link ContainerNode#removeChild(java.util.function.Predicate)},
+ * {@link ContainerNode#setChild(Node)} and with the attributes changed through {@link Node#setAttribute(String, String)}
+ * and similar methods.
+ * Since their position is not known, the nodes changed are appended to the entries of their keys,
+ * that are sorted again in document order only when queried.
+ * Any other change of the siblings (like {@link Node#setNext(Node)}) causes the index to be rebuilt on the next query.
+ * Changes made directly to the map returned by {@link Node#getAttributes()} are not seen by the index:
+ * {@link #detach(Node)} it to have it rebuilt.
+ * <p>
+ * Queries are synchronized, so that concurrent queries can build the index once.
+ * However, like the nodes, the index is not safe to be used while the tree is modified by another thread.
+ */
+public class NodeIndex {
+    private static final String ID = "id";
+    private static final String CLASS = "class";
+
+    private final @NotNull Node root;
+    private final @NotNull Map<String, Set<Node>> tags;
+    private final @NotNull Map<String, Set<Node>> ids;
+    private final @NotNull Map<String, Set<Node>> classes;
+    private final @NotNull Map<String, Set<Node>> attributes;
+    /**
+     * The entries changed since they were last in document order.
+     */
+    private final @NotNull Set<Set<Node>> unsorted;
+    private boolean valid;
+
+    private NodeIndex(@NotNull Node root) {
+        this.root = root;
+        this.tags = new HashMap<>();
+        this.ids = new HashMap<>();
+        this.classes = new HashMap<>();
+        this.attributes = new HashMap<>();
+        this.unsorted = Collections.newSetFromMap(new IdentityHashMap<>());
+    }
+
+    /**
+     * Get the index attached to the given node, creating it if not present.
+     * The index is built on the first query.
+     *
+     * @param root the root of the indexed tree
+     * @return the index
+     */
+    public static @NotNull NodeIndex of(@NotNull Node root) {
+        final NodeIndex index = root.index;
+        if (index != null && index.root == root) return index;
+        return root.index = new NodeIndex(root);
+    }
+
+    /**
+     * Detach the index from the given node, if present.
+     *
+     * @param root the root of the indexed tree
+     */
+    public static void detach(@NotNull Node root) {
+        final NodeIndex index = root.index;
+        if (index == null || index.root != root) return;
+        index.invalidate();
+        root.index = null;
+    }
+
+    /**
+     * Get all the nodes with the given tag name.
+     *
+     * @param tagName the tag name
+     * @return the nodes
+     */
+    public @NotNull Set<Node> getNodesByTagName(@NotNull String tagName) {
+        return get(this.tags, tagName);
+    }
+
+    /**
+     * Get the first node with the given id.
+     *
+     * @param id the id
+     * @return the node
+     */
+    public synchronized @Nullable Node getNodeById(@NotNull String id) {
+        final Set<Node> nodes = lookup(this.ids, id);
+        return nodes == null ? null : nodes.iterator().next();
+    }
+
+    /**
+     * Get all the nodes that have the given class among their classes.
+     *
+     * @param className the class name
+     * @return the nodes
+     */
+    public @NotNull Set<Node> getNodesByClass(@NotNull String className) {
+        return get(this.classes, className);
+    }
+
+    /**
+     * Get all the nodes that have the given attribute.
+     *
+     * @param attribute the attribute name
+     * @return the nodes
+     */
+    public @NotNull Set<Node> getNodesByAttribute(@NotNull String attribute) {
+        return get(this.attributes, attribute);
+    }
+
+    private synchronized @NotNull Set<Node> get(@NotNull Map<String, Set<Node>> map, @NotNull String key) {
+        final Set<Node> nodes = lookup(map, key);
+        // A copy is returned, so that the tree can be changed while iterating the results.
+        return nodes == null ? new LinkedHashSet<>() : new LinkedHashSet<>(nodes);
+    }
+
+    /**
+     * Get the entry of the given key, building the index or sorting the entry if needed.
+     *
+     * @param map the map
+     * @param key the key
+     * @return the entry, that is never empty, or null if not present
+     */
+    private @Nullable Set<Node> lookup(@NotNull Map<String, Set<Node>> map, @NotNull String key) {
+        if (!this.valid) build();
+        final Set<Node> nodes = map.get(key);
+        if (nodes != null && this.unsorted.remove(nodes)) sort(nodes);
+        return nodes;
+    }
+
+    private void build() {
+        this.tags.clear();
+        this.ids.clear();
+        this.classes.clear();
+        this.attributes.clear();
+        this.unsorted.clear();
+        this.valid = true;
+        this.root.accept(n -> {
+            if (n instanceof ContainerNode) ((ContainerNode) n).childCount();
+            add(n, true);
+            return NodeVisitor.Result.CONTINUE;
+        });
+    }
+
+    /**
+     * Sort the given nodes in document order, by comparing the positions of them and of their ancestors
+     * among their siblings.
+     * The positions of the children of a container are computed once, only for the containers needed.
+     *
+     * @param nodes the nodes
+     */
+    private void sort(@NotNull Set<Node> nodes) {
+        final Map<Node, Integer> positions = new IdentityHashMap<>();
+        final Map<Node, int[]> paths = new IdentityHashMap<>();
+        for (Node node : nodes) {
+            final Deque<Integer> path = new ArrayDeque<>();
+            for (Node n = node; n != this.root && n.parent != null; n = n.parent) {
+                if (!positions.containsKey(n)) {
+                    int i = 0;
+                    for (Node c = n.parent.getChild(); c != null; c = c.getNext()) positions.put(c, i++);
+                }
+                path.push(positions.getOrDefault(n, 0));
+            }
+            paths.put(node, path.stream().mapToInt(Integer::intValue).toArray());
+        }
+        final List<Node> sorted = new ArrayList<>(nodes);
+        sorted.sort((a, b) -> {
+            final int[] first = paths.get(a);
+            final int[] second = paths.get(b);
+            for (int i = 0; i < first.length && i < second.length; i++)
+                if (first[i] != second[i]) return Integer.compare(first[i], second[i]);
+            // An ancestor comes before its descendants.
+            return Integer.compare(first.length, second.length);
+        });
+        nodes.clear();
+        nodes.addAll(sorted);
+    }
+
+    /**
+     * Discard the contents of the index, that will be rebuilt on the next query.
+     */
+    void invalidate() {
+        this.valid = false;
+    }
+
+    /**
+     * Add the given node and all its descendants.
+     * The children of every container are indexed too, so that later changes of their siblings are noticed.
+     *
+     * @param node the node
+     */
+    void addSubtree(@NotNull Node node) {
+        if (!this.valid) return;
+        node.accept(n -> {
+            if (n instanceof ContainerNode) ((ContainerNode) n).childCount();
+            add(n, false);
+            return NodeVisitor.Result.CONTINUE;
+        });
+    }
+
+    /**
+     * Remove the given node and all its descendants.
+     *
+     * @param node the node
+     */
+    void removeSubtree(@NotNull Node node) {
+        if (!this.valid) return;
+        node.accept(n -> {
+            if (remove(n)) n.index = null;
+            return NodeVisitor.Result.CONTINUE;
+        });
+    }
+
+    /**
+     * Add only the given node.
+     *
+     * @param node the node
+     */
+    void add(@NotNull Node node) {
+        if (this.valid) add(node, false);
+    }
+
+    /**
+     * Add only the given node.
+     *
+     * @param node   the node
+     * @param sorted true if the node follows all the indexed ones in document order
+     */
+    private void add(@NotNull Node node, boolean sorted) {
+        node.index = this;
+        put(this.tags, node.getTagName(), node, sorted);
+        node.getAttributes().forEach((k, v) -> {
+            if (k == null) return;
+            put(this.attributes, k, node, sorted);
+            if (v == null) return;
+            if (k.equals(ID)) put(this.ids, v, node, sorted);
+            else if (k.equals(CLASS))
+                for (String c : v.trim().split("\\s+"))
+                    if (!c.isEmpty()) put(this.classes, c, node, sorted);
+        });
+    }
+
+    /**
+     * Remove only the given node.
+     *
+     * @param node the node
+     * @return true if the node was present
+     */
+    boolean remove(@NotNull Node node) {
+        if (!this.valid) return false;
+        if (!delete(this.tags, node.getTagName(), node)) return false;
+        node.getAttributes().forEach((k, v) -> {
+            if (k == null) return;
+            delete(this.attributes, k, node);
+            if (v == null) return;
+            if (k.equals(ID)) delete(this.ids, v, node);
+            else if (k.equals(CLASS))
+                for (String c : v.trim().split("\\s+"))
+                    if (!c.isEmpty()) delete(this.classes, c, node);
+        });
+        return true;
+    }
+
+    private void put(@NotNull Map<String, Set<Node>> map, @NotNull String key, @NotNull Node node, boolean sorted) {
+        final Set<Node> nodes = map.computeIfAbsent(key, k -> new LinkedHashSet<>());
+        nodes.add(node);
+        // Removing nodes keeps the others in order, while adding or moving one among them does not.
+        if (!sorted && nodes.size() > 1) this.unsorted.add(nodes);
+    }
+
+    private boolean delete(@NotNull Map<String, Set<Node>> map, @NotNull String key, @NotNull Node node) {
+        final Set<Node> nodes = map.get(key);
+        if (nodes == null || !nodes.remove(node)) return false;
+        if (nodes.isEmpty()) {
+            map.remove(key);
+            this.unsorted.remove(nodes);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,95 @@
+package it.fulminazzo.tagparser.nodes;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A lazy iterator over a node and all its descendants.
+ * The tree is walked with an explicit stack (or queue), so its depth and width are not limited by the call stack.
+ * The siblings following the starting node are not visited.
+ */
+public class NodeIterator implements Iterator<Node> {
+    private final @NotNull Node root;
+    private final @NotNull Order order;
+    private final @NotNull Deque<ContainerNode> pending;
+    private @Nullable Node current;
+
+    /**
+     * Instantiates a new Node iterator, visiting the nodes in depth-first order.
+     *
+     * @param root the node to start from
+     */
+    public NodeIterator(@NotNull Node root) {
+        this(root, Order.DEPTH_FIRST);
+    }
+
+    /**
+     * Instantiates a new Node iterator.
+     *
+     * @param root  the node to start from
+     * @param order the order of the visit
+     */
+    public NodeIterator(@NotNull Node root, @NotNull Order order) {
+        this.root = root;
+        this.order = order;
+        this.pending = new ArrayDeque<>();
+        this.current = root;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return this.current != null;
+    }
+
+    @Override
+    public @NotNull Node next() {
+        final Node node = this.current;
+        if (node == null) throw new NoSuchElementException();
+        this.current = this.order == Order.DEPTH_FIRST ? nextDepthFirst(node) : nextBreadthFirst(node);
+        return node;
+    }
+
+    private @Nullable Node nextDepthFirst(@NotNull Node node) {
+        if (node instanceof ContainerNode) {
+            final Node child = ((ContainerNode) node).getChild();
+            if (child != null) {
+                this.pending.push((ContainerNode) node);
+                return child;
+            }
+        }
+        // Parents of the current node are in the stack: the root is never left for its siblings.
+        while (!this.pending.isEmpty()) {
+            final Node next = node.getNext();
+            if (next != null) return next;
+            node = this.pending.pop();
+        }
+        return null;
+    }
+
+    private @Nullable Node nextBreadthFirst(@NotNull Node node) {
+        if (node instanceof ContainerNode && ((ContainerNode) node).getChild() != null)
+            this.pending.addLast((ContainerNode) node);
+        if (node != this.root && node.getNext() != null) return node.getNext();
+        final ContainerNode parent = this.pending.pollFirst();
+        return parent == null ? null : parent.getChild();
+    }
+
+    /**
+     * The order used to visit the tree.
+     */
+    public enum Order {
+        /**
+         * Every node is followed by its descendants, then by its siblings (document order).
+         */
+        DEPTH_FIRST,
+        /**
+         * Every node is followed by its siblings, then by the nodes of the next level.
+         */
+        BREADTH_FIRST
+    }
+}
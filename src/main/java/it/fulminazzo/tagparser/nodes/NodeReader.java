@@ -0,0 +1,595 @@
+package it.fulminazzo.tagparser.nodes;
+
+import it.fulminazzo.tagparser.nodes.exceptions.ClosingTagsNotAllowedException;
+import it.fulminazzo.tagparser.nodes.exceptions.NodeException;
+import it.fulminazzo.tagparser.nodes.exceptions.NotClosedTagsNotAllowedException;
+import it.fulminazzo.tagparser.nodes.exceptions.NotValidTagNameException;
+import it.fulminazzo.tagparser.nodes.validators.NameValidator;
+import it.fulminazzo.tagparser.nodes.lexer.CharClasses;
+import it.fulminazzo.tagparser.nodes.lexer.CharInput;
+import it.fulminazzo.tagparser.nodes.lexer.ClosingTagMatcher;
+import it.fulminazzo.tagparser.nodes.lexer.NodeLexer;
+import lombok.Getter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * A pull parser that reads the input of a {@link NodeBuilder} as a sequence of events,
+ * without creating any node.
+ * Tags are read and validated with the same options of the builder
+ * (valid tags, tag name regex, closing and not closed tags, required attributes),
+ * while declarations and processing instructions are passed to its
+ * {@link NodeBuilder#onDeclaration(String)} and {@link NodeBuilder#onProcessingInstruction(String, Map)}.
+ * <p>
+ * Only the currently open tags and the current text are kept in memory,
+ * so documents of any size can be read.
+ * <p>
+ * Example:
+ * <pre>{@code
+ * NodeReader reader = new NodeBuilder(file).getReader();
+ * while (reader.nextElement())
+ *     if (reader.getTagName().equals("item")) System.out.println(reader.getAttribute("id"));
+ * }</pre>
+ */
+public class NodeReader {
+    /**
+     * The state of the reader before the first event.
+     */
+    public static final int START_DOCUMENT = 0;
+    /**
+     * An opening tag: &lt;tag&gt;.
+     * Tags like &lt;tag/&gt; are reported with a START_ELEMENT immediately followed by an END_ELEMENT.
+     */
+    public static final int START_ELEMENT = 1;
+    /**
+     * An attribute of the last opened tag.
+     * One event is reported for every attribute, right after the START_ELEMENT.
+     */
+    public static final int ATTRIBUTE = 2;
+    /**
+     * A run of text of the current tag, including CDATA sections.
+     * The text of a tag is split in many runs if it contains other tags or comments.
+     */
+    public static final int TEXT = 3;
+    /**
+     * A closing tag: &lt;/tag&gt;.
+     */
+    public static final int END_ELEMENT = 4;
+    /**
+     * A comment: &lt;!-- comment --&gt;.
+     */
+    public static final int COMMENT = 5;
+    /**
+     * The end of the input.
+     */
+    public static final int END_DOCUMENT = 6;
+
+    private final @NotNull NodeBuilder builder;
+    private final @NotNull NodeLexer lexer;
+    private final @NotNull Deque<OpenTag> open;
+    private final @NotNull StringBuilder buffer;
+    private final @NotNull StringBuilder nameBuffer;
+
+    /**
+     * The type of the current event.
+     */
+    @Getter
+    private int eventType;
+    /**
+     * The tag name of the current START_ELEMENT, ATTRIBUTE or END_ELEMENT event.
+     */
+    private @Nullable String tagName;
+    /**
+     * If true, the tag of the current START_ELEMENT event requires a closing tag.
+     */
+    @Getter
+    private boolean container;
+    private @NotNull Map<String, String> attributes;
+    private @Nullable Iterator<Map.Entry<String, String>> pendingAttributes;
+    private @Nullable Map.Entry<String, String> attribute;
+    private @Nullable String text;
+    private @Nullable String pendingEnd;
+    private @Nullable String pendingComment;
+    /**
+     * If true, no tag has been read yet.
+     */
+    private boolean prolog = true;
+
+    /**
+     * Instantiates a new Node reader.
+     *
+     * @param builder the builder providing the input and the options
+     */
+    NodeReader(@NotNull NodeBuilder builder) {
+        this.builder = builder;
+        this.lexer = builder.getLexer();
+        this.open = new ArrayDeque<>();
+        this.buffer = new StringBuilder();
+        this.nameBuffer = new StringBuilder();
+        this.attributes = Collections.emptyMap();
+        this.eventType = START_DOCUMENT;
+    }
+
+    /**
+     * Read the next event.
+     *
+     * @return the type of the event
+     */
+    public int next() {
+        if (this.eventType == END_DOCUMENT) throw new NoSuchElementException();
+        try {
+            return this.eventType = readEvent();
+        } catch (IOException e) {
+            throw new NodeException(e);
+        }
+    }
+
+    /**
+     * Check if other events are available.
+     *
+     * @return true if {@link #next()} can be called
+     */
+    public boolean hasNext() {
+        return this.eventType != END_DOCUMENT;
+    }
+
+    /**
+     * Read events until the next START_ELEMENT.
+     *
+     * @return false if the end of the input has been reached
+     */
+    public boolean nextElement() {
+        while (hasNext())
+            if (next() == START_ELEMENT) return true;
+        return false;
+    }
+
+    /**
+     * Skip the rest of the tag opened by the current START_ELEMENT event,
+     * reading events up to and including its END_ELEMENT.
+     */
+    public void skipElement() {
+        if (this.eventType != START_ELEMENT && this.eventType != ATTRIBUTE)
+            throw new IllegalStateException("Not positioned on a START_ELEMENT");
+        int depth = 1;
+        while (depth > 0) {
+            final int event = next();
+            if (event == START_ELEMENT) depth++;
+            else if (event == END_ELEMENT) depth--;
+        }
+    }
+
+    /**
+     * Skip the rest of the tag opened by the current START_ELEMENT event, up to its closing tag,
+     * and return its contents as they were read, closing tag included.
+     * Differently from {@link #skipElement()}, the contents are not validated and no event is produced:
+     * only the nested tags are recognized, to find the matching closing tag.
+     * The reader is left on the END_ELEMENT of the tag.
+     *
+     * @return the raw contents
+     */
+    public @NotNull String skimElement() {
+        if (this.eventType != START_ELEMENT && this.eventType != ATTRIBUTE)
+            throw new IllegalStateException("Not positioned on a START_ELEMENT");
+        this.pendingAttributes = null;
+        this.attribute = null;
+        this.attributes = Collections.emptyMap();
+        this.eventType = END_ELEMENT;
+        if (!this.container) {
+            this.pendingEnd = null;
+            return "";
+        }
+        final OpenTag tag = this.open.pop();
+        this.lexer.mark();
+        try {
+            skim(tag);
+        } catch (IOException e) {
+            throw new NodeException(e);
+        }
+        return this.lexer.release();
+    }
+
+    /**
+     * Continue reading as if the tag with the given name had just been opened.
+     * Used to read the contents returned by {@link #skimElement()}.
+     *
+     * @param tagName the tag name
+     */
+    void enter(@NotNull String tagName) {
+        this.prolog = false;
+        this.open.push(new OpenTag(tagName));
+    }
+
+    /**
+     * Gets the number of tags currently open.
+     *
+     * @return the depth
+     */
+    public int getDepth() {
+        return this.open.size();
+    }
+
+    /**
+     * Check if the reader is still in the prolog, before the first tag of the input.
+     *
+     * @return true if no tag has been read yet
+     */
+    public boolean isInProlog() {
+        return this.prolog;
+    }
+
+    /**
+     * Gets the tag name of the current START_ELEMENT, ATTRIBUTE or END_ELEMENT event.
+     *
+     * @return the tag name
+     */
+    public @NotNull String getTagName() {
+        if (this.tagName == null || (this.eventType != START_ELEMENT && this.eventType != ATTRIBUTE &&
+                this.eventType != END_ELEMENT))
+            throw new IllegalStateException("Not positioned on a tag");
+        return this.tagName;
+    }
+
+    /**
+     * Gets the value of an attribute of the tag of the current START_ELEMENT or ATTRIBUTE event.
+     *
+     * @param name the name of the attribute
+     * @return the value
+     */
+    public @Nullable String getAttribute(@NotNull String name) {
+        return getAttributes().get(name);
+    }
+
+    /**
+     * Gets the attributes of the tag of the current START_ELEMENT or ATTRIBUTE event.
+     *
+     * @return the attributes
+     */
+    public @NotNull Map<String, String> getAttributes() {
+        if (this.eventType != START_ELEMENT && this.eventType != ATTRIBUTE)
+            throw new IllegalStateException("Not positioned on a START_ELEMENT");
+        return this.attributes;
+    }
+
+    /**
+     * Gets the name of the attribute of the current ATTRIBUTE event.
+     *
+     * @return the name
+     */
+    public @NotNull String getAttributeName() {
+        return currentAttribute().getKey();
+    }
+
+    /**
+     * Gets the value of the attribute of the current ATTRIBUTE event.
+     *
+     * @return the value
+     */
+    public @Nullable String getAttributeValue() {
+        return currentAttribute().getValue();
+    }
+
+    private @NotNull Map.Entry<String, String> currentAttribute() {
+        if (this.eventType != ATTRIBUTE || this.attribute == null)
+            throw new IllegalStateException("Not positioned on an ATTRIBUTE");
+        return this.attribute;
+    }
+
+    /**
+     * Gets the text of the current TEXT or COMMENT event.
+     *
+     * @return the text
+     */
+    public @NotNull String getText() {
+        if (this.text == null || (this.eventType != TEXT && this.eventType != COMMENT))
+            throw new IllegalStateException("Not positioned on a TEXT or COMMENT");
+        return this.text;
+    }
+
+    private int readEvent() throws IOException {
+        final Iterator<Map.Entry<String, String>> attributes = this.pendingAttributes;
+        if (attributes != null) {
+            if (attributes.hasNext()) {
+                this.attribute = attributes.next();
+                return ATTRIBUTE;
+            }
+            this.pendingAttributes = null;
+            this.attribute = null;
+            this.attributes = Collections.emptyMap();
+        }
+        if (this.pendingEnd != null) {
+            this.tagName = this.pendingEnd;
+            this.pendingEnd = null;
+            return END_ELEMENT;
+        }
+        if (this.pendingComment != null) {
+            this.text = this.pendingComment;
+            this.pendingComment = null;
+            return COMMENT;
+        }
+        return this.open.isEmpty() ? readOutside() : readInside(this.open.peek());
+    }
+
+    /**
+     * Read the next event outside any tag.
+     * White spaces, declarations and processing instructions are skipped.
+     *
+     * @return the type of the event
+     * @throws IOException the io exception
+     */
+    private int readOutside() throws IOException {
+        int read = this.lexer.skipWhitespace();
+        while (read == '<') {
+            this.lexer.read();
+            final int next = this.lexer.peek();
+            if (next != '!' && next != '?') break;
+            final String comment = readMarkup(false);
+            if (comment != null) {
+                this.text = comment;
+                return COMMENT;
+            }
+            read = this.lexer.skipWhitespace();
+        }
+        if (read == -1) return END_DOCUMENT;
+        return readTag(read == '<');
+    }
+
+    /**
+     * Read the next event inside the given open tag.
+     *
+     * @param tag the tag
+     * @return the type of the event
+     * @throws IOException the io exception
+     */
+    private int readInside(@NotNull OpenTag tag) throws IOException {
+        final NodeLexer lexer = this.lexer;
+        final StringBuilder buffer = this.buffer;
+        buffer.setLength(0);
+
+        while (true) {
+            final int read = lexer.peek();
+            if (read == -1)
+                throw new NodeException(String.format("Node \"%s\" not closed. Raw text: \"%s\"",
+                        tag.name, buffer));
+
+            if (read == '<') {
+                final int next = lexer.peek(1);
+                if (next == '!' || next == '?') {
+                    lexer.read();
+                    final String comment = readMarkup(true);
+                    tag.end.reset();
+                    if (comment == null) continue;
+                    if (buffer.length() == 0) {
+                        this.text = comment;
+                        return COMMENT;
+                    }
+                    this.pendingComment = comment;
+                    return text();
+                } else if (next != '/' && next != -1 && !CharClasses.isWhitespace(next)) {
+                    tag.end.reset();
+                    // The tag will be read with the next event.
+                    if (buffer.length() > 0) return text();
+                    lexer.read();
+                    return readTag(true);
+                }
+            } else if (!tag.end.isMatching()) {
+                // Plain text cannot start the closing tag: copy it in bulk.
+                lexer.readWhile(c -> c != '<', buffer);
+                continue;
+            }
+
+            lexer.read();
+            buffer.append((char) read);
+            if (tag.end.accept(read)) {
+                this.open.pop();
+                buffer.setLength(buffer.length() - tag.end.length());
+                if (buffer.length() > 0) {
+                    this.pendingEnd = tag.name;
+                    return text();
+                }
+                this.tagName = tag.name;
+                return END_ELEMENT;
+            }
+        }
+    }
+
+    /**
+     * Read the input up to the closing tag of the given open tag, counting the nested tags.
+     *
+     * @param tag the tag
+     * @throws IOException the io exception
+     */
+    private void skim(@NotNull OpenTag tag) throws IOException {
+        final NodeLexer lexer = this.lexer;
+        final Deque<ClosingTagMatcher> outer = new ArrayDeque<>();
+        ClosingTagMatcher end = tag.end;
+        end.reset();
+
+        while (true) {
+            final int read = lexer.peek();
+            if (read == -1) throw new NodeException(String.format("Node \"%s\" not closed", tag.name));
+
+            if (read == '<') {
+                final int next = lexer.peek(1);
+                if (next == '!' || next == '?') {
+                    lexer.read();
+                    this.buffer.setLength(0);
+                    lexer.readMarkup(this.buffer);
+                    end.reset();
+                    continue;
+                } else if (next != '/' && next != -1 && !CharClasses.isWhitespace(next)) {
+                    end.reset();
+                    lexer.read();
+                    final String tagName = skimTag();
+                    if (tagName != null) {
+                        outer.push(end);
+                        end = new ClosingTagMatcher(tagName);
+                    }
+                    continue;
+                }
+            } else if (!end.isMatching()) {
+                lexer.skipWhile(c -> c != '<');
+                continue;
+            }
+
+            lexer.read();
+            if (end.accept(read)) {
+                if (outer.isEmpty()) return;
+                end = outer.pop();
+            }
+        }
+    }
+
+    /**
+     * Read an opening tag like {@link #readTag(boolean)}, without validating it.
+     * The opening &lt; should have already been consumed.
+     *
+     * @return the tag name if it requires a closing tag, null otherwise
+     * @throws IOException the io exception
+     */
+    private @Nullable String skimTag() throws IOException {
+        final NodeLexer lexer = this.lexer;
+        final StringBuilder name = this.nameBuffer;
+        name.setLength(0);
+        name.append('<');
+        final int read = lexer.readWhile(c -> !CharClasses.is(c, CharClasses.TAG_NAME_END), name);
+        if (name.length() == 1 || read == '<') throw new NotValidTagNameException(name.toString());
+        if (read != -1) lexer.read();
+
+        boolean isContainer = true;
+        int end = name.length();
+        if (read == '>' && name.charAt(end - 1) == '/') {
+            isContainer = false;
+            end--;
+        }
+        final String tagName = lexer.name(name, 1, end);
+        // Attributes are read only to find the end of the tag, since quoted values may contain '>'.
+        if (CharClasses.isWhitespace(read) && lexer.readAttributes(new LinkedHashMap<>()) == '/')
+            isContainer = false;
+
+        final Boolean validateTag = this.builder.validateTag(tagName);
+        if (validateTag != null) isContainer = validateTag;
+        return isContainer ? tagName : null;
+    }
+
+    private int text() {
+        this.text = this.buffer.toString();
+        return TEXT;
+    }
+
+    /**
+     * Read an opening tag, with its attributes.
+     *
+     * @param opened true if the opening &lt; has already been consumed
+     * @return {@link #START_ELEMENT}
+     * @throws IOException the io exception
+     */
+    private int readTag(boolean opened) throws IOException {
+        final NodeLexer lexer = this.lexer;
+        final Map<String, String> attributes = new LinkedHashMap<>();
+
+        // Read tag name from given stream.
+        final StringBuilder name = this.nameBuffer;
+        name.setLength(0);
+        if (opened) name.append('<');
+        int read = lexer.readWhile(c -> !CharClasses.is(c, CharClasses.TAG_NAME_END), name);
+        if (name.length() == 0 || name.charAt(0) != '<' || read == '<')
+            throw new NotValidTagNameException(name.toString());
+        if (read != -1) lexer.read();
+
+        boolean isContainer = true;
+        int end = name.length();
+        if (read == '>' && name.charAt(end - 1) == '/') {
+            isContainer = false;
+            end--;
+        }
+        final String tagName = lexer.name(name, 1, end);
+
+        // Read attributes from given stream.
+        if (CharClasses.isWhitespace(read) && lexer.readAttributes(attributes) == '/') isContainer = false;
+
+        final NodeBuilder builder = this.builder;
+        Boolean validateTag = builder.validateTag(tagName);
+        if (validateTag != null) isContainer = validateTag;
+
+        if (isContainer && !builder.isAllowingNotClosedTags())
+            throw new NotClosedTagsNotAllowedException(tagName);
+        else if (!isContainer && !builder.isAllowingClosingTags())
+            throw new ClosingTagsNotAllowedException(tagName);
+        if (!NameValidator.matches(tagName, builder.tagNameRegex)) throw new NotValidTagNameException(tagName);
+
+        builder.validateAttributes(attributes);
+
+        this.prolog = false;
+        this.tagName = tagName;
+        this.container = isContainer;
+        this.attributes = attributes;
+        this.pendingAttributes = attributes.isEmpty() ? null : attributes.entrySet().iterator();
+        if (isContainer) this.open.push(new OpenTag(tagName));
+        else this.pendingEnd = tagName;
+        return START_ELEMENT;
+    }
+
+    /**
+     * Read a comment, a CDATA section, a markup declaration or a processing instruction.
+     * The opening &lt; should have already been consumed.
+     * <p>
+     * The contents of CDATA sections are appended to the current text,
+     * while declarations and processing instructions are passed to the builder.
+     *
+     * @param inside true if inside a tag
+     * @return the comment or null if the markup was not a comment
+     * @throws IOException the io exception
+     */
+    private @Nullable String readMarkup(boolean inside) throws IOException {
+        final StringBuilder buffer = this.buffer;
+        final int start = buffer.length();
+        final int type = this.lexer.readMarkup(buffer);
+        if (type == NodeLexer.CDATA && inside) return null;
+        final String markup = buffer.substring(start);
+        buffer.setLength(start);
+        switch (type) {
+            case NodeLexer.COMMENT:
+                return markup;
+            case NodeLexer.CDATA:
+                break;
+            case NodeLexer.PROCESSING_INSTRUCTION: {
+                final NodeLexer lexer = new NodeLexer(new CharInput(markup));
+                final StringBuilder target = new StringBuilder();
+                lexer.readWhile(c -> !CharClasses.isWhitespace(c), target);
+                final Map<String, String> attributes = new LinkedHashMap<>();
+                lexer.readAttributes(attributes);
+                this.builder.onProcessingInstruction(target.toString(), attributes);
+                break;
+            }
+            default:
+                this.builder.onDeclaration(markup);
+        }
+        return null;
+    }
+
+    /**
+     * Gets the builder this reader has been created from.
+     *
+     * @return the builder
+     */
+    @NotNull NodeBuilder getBuilder() {
+        return this.builder;
+    }
+
+    /**
+     * A tag whose closing tag has not been read yet.
+     */
+    private static final class OpenTag {
+        private final @NotNull String name;
+        private final @NotNull ClosingTagMatcher end;
+
+        private OpenTag(@NotNull String name) {
+            this.name = name;
+            this.end = new ClosingTagMatcher(name);
+        }
+    }
+}
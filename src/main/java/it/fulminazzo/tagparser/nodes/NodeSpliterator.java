@@ -0,0 +1,103 @@
+package it.fulminazzo.tagparser.nodes;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A {@link Spliterator} over a node and all its descendants, in document order.
+ * It splits at child boundaries: the subtrees still to be visited are divided in two halves
+ * and, when only one is left, it is replaced by its root followed by the subtrees of its children.
+ * Chains of only children are descended, so that a single wrapper does not prevent the split.
+ * The siblings following the starting node are not visited.
+ */
+public class NodeSpliterator implements Spliterator<Node> {
+    private @Nullable Deque<Node> heads;
+    private @Nullable Iterator<Node> current;
+    private Node @NotNull [] subtrees;
+    private int from;
+    private int to;
+    private long estimatedSize;
+
+    /**
+     * Instantiates a new Node spliterator.
+     *
+     * @param root the node to start from
+     */
+    public NodeSpliterator(@NotNull Node root) {
+        this(null, null, new Node[]{root}, 0, 1, Long.MAX_VALUE);
+    }
+
+    private NodeSpliterator(@Nullable Deque<Node> heads, @Nullable Iterator<Node> current,
+                            Node @NotNull [] subtrees, int from, int to, long estimatedSize) {
+        this.heads = heads;
+        this.current = current;
+        this.subtrees = subtrees;
+        this.from = from;
+        this.to = to;
+        this.estimatedSize = estimatedSize;
+    }
+
+    @Override
+    public boolean tryAdvance(@NotNull Consumer<? super Node> action) {
+        if (this.heads != null && !this.heads.isEmpty()) {
+            action.accept(this.heads.poll());
+            return true;
+        }
+        while (this.current == null || !this.current.hasNext()) {
+            if (this.from == this.to) {
+                this.current = null;
+                return false;
+            }
+            this.current = new NodeIterator(this.subtrees[this.from++]);
+        }
+        action.accept(this.current.next());
+        return true;
+    }
+
+    @Override
+    public @Nullable Spliterator<Node> trySplit() {
+        if (this.to - this.from == 1 && (this.heads == null || this.heads.isEmpty()) && this.current == null) {
+            // A single subtree left: visit its root (and every only child), then split among its children.
+            final Deque<Node> heads = new ArrayDeque<>();
+            Node root = this.subtrees[this.from];
+            while (root instanceof ContainerNode && ((ContainerNode) root).childCount() == 1) {
+                heads.add(root);
+                root = ((ContainerNode) root).getChild(0);
+            }
+            if (!(root instanceof ContainerNode)) return null;
+            final ContainerNode container = (ContainerNode) root;
+            final int count = container.childCount();
+            if (count < 2) return null;
+            heads.add(root);
+            this.heads = heads;
+            this.subtrees = container.getChildren().toArray(new Node[0]);
+            this.from = 0;
+            this.to = count;
+        }
+        final int mid = (this.from + this.to) >>> 1;
+        if (mid == this.from) return null;
+        this.estimatedSize >>>= 1;
+        final NodeSpliterator prefix = new NodeSpliterator(this.heads, this.current,
+                this.subtrees, this.from, mid, this.estimatedSize);
+        this.heads = null;
+        this.current = null;
+        this.from = mid;
+        return prefix;
+    }
+
+    @Override
+    public long estimateSize() {
+        return this.estimatedSize;
+    }
+
+    @Override
+    public int characteristics() {
+        return ORDERED | NONNULL;
+    }
+}
@@ -0,0 +1,47 @@
+package it.fulminazzo.tagparser.nodes;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A visitor of the nodes of a tree, used by {@link Node#accept(NodeVisitor)}.
+ * Nodes are visited in document order, without recursion.
+ */
+@FunctionalInterface
+public interface NodeVisitor {
+
+    /**
+     * Called upon reaching a node, before its children.
+     *
+     * @param node the node
+     * @return {@link Result#CONTINUE} to visit the children of the node, {@link Result#SKIP_CHILDREN} to ignore them
+     * or {@link Result#STOP} to end the visit
+     */
+    @NotNull Result visit(@NotNull Node node);
+
+    /**
+     * Called after the children of a container node have been visited (or skipped).
+     *
+     * @param node the node
+     */
+    default void leave(@NotNull ContainerNode node) {
+
+    }
+
+    /**
+     * Tells the visit how to proceed after a node.
+     */
+    enum Result {
+        /**
+         * Continue with the children of the node.
+         */
+        CONTINUE,
+        /**
+         * Ignore the children of the node and continue with its next sibling.
+         */
+        SKIP_CHILDREN,
+        /**
+         * End the visit.
+         */
+        STOP
+    }
+}
@@ -0,0 +1,432 @@
+package it.fulminazzo.tagparser.nodes;
+
+import it.fulminazzo.tagparser.utils.Entities;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * A serializer that writes nodes directly to an {@link Appendable}, a {@link Writer},
+ * an {@link OutputStream} or a {@link WritableByteChannel}, without rendering the whole document in memory.
+ * The tree is walked with an explicit stack, so its depth is not limited by the call stack.
+ * <p>
+ * By default, the output is the same as {@link Node#toHTML()}: every child is written on a new line,
+ * indented by {@link ContainerNode#INDENTATION} more than its parent.
+ * Since every new line written inside a node is indented, texts and attributes spanning multiple lines are indented too.
+ * The indentation and the new line can be changed with {@link #indentation(String)} and {@link #newLine(String)},
+ * while {@link #minify()} writes the most compact output.
+ * <p>
+ * The appearance of every node is defined by {@link Node#writeStart(NodeWriter)}, {@link Node#writeEnd(NodeWriter)}
+ * and {@link ContainerNode#writeChild(Node, NodeWriter)}.
+ */
+public class NodeWriter implements Flushable, Closeable {
+    private final @NotNull Appendable output;
+    /**
+     * The encoder used to check if the characters of texts and attributes can be encoded, if not every character can.
+     */
+    private final @Nullable CharsetEncoder encoder;
+    private @NotNull String indentation = ContainerNode.INDENTATION;
+    private @NotNull String newLine = "\n";
+    private boolean minify;
+    private int level;
+    private int preformatted = -1;
+
+    /**
+     * Instantiates a new Node writer.
+     *
+     * @param output the output
+     */
+    public NodeWriter(@NotNull Appendable output) {
+        this(output, null);
+    }
+
+    /**
+     * Instantiates a new Node writer, encoding the characters with the given charset.
+     * Characters and bytes are buffered: call {@link #flush()} or {@link #close()} once done.
+     * The characters of texts and attributes that cannot be encoded are written as numeric character references,
+     * while the other ones are replaced.
+     *
+     * @param stream  the stream
+     * @param charset the charset
+     */
+    public NodeWriter(@NotNull OutputStream stream, @NotNull Charset charset) {
+        this(new BufferedWriter(new OutputStreamWriter(stream, newEncoder(charset))), unmappable(charset));
+    }
+
+    /**
+     * Instantiates a new Node writer, encoding the characters with the given charset.
+     * Characters and bytes are buffered: call {@link #flush()} or {@link #close()} once done.
+     * The characters of texts and attributes that cannot be encoded are written as numeric character references,
+     * while the other ones are replaced.
+     *
+     * @param channel the channel
+     * @param charset the charset
+     */
+    public NodeWriter(@NotNull WritableByteChannel channel, @NotNull Charset charset) {
+        this(new BufferedWriter(Channels.newWriter(channel, newEncoder(charset), -1)), unmappable(charset));
+    }
+
+    private NodeWriter(@NotNull Appendable output, @Nullable CharsetEncoder encoder) {
+        this.output = output;
+        this.encoder = encoder;
+    }
+
+    private static @NotNull CharsetEncoder newEncoder(@NotNull Charset charset) {
+        return charset.newEncoder()
+                .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                .onMalformedInput(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Get a new encoder to check the characters that cannot be encoded with the given charset.
+     *
+     * @param charset the charset
+     * @return the encoder or null if the charset can encode every character
+     */
+    private static @Nullable CharsetEncoder unmappable(@NotNull Charset charset) {
+        return charset.name().startsWith("UTF-") ? null : charset.newEncoder();
+    }
+
+    /**
+     * Set the string written once per level of nesting at the start of every line.
+     *
+     * @param indentation the indentation
+     * @return this writer
+     */
+    public @NotNull NodeWriter indentation(@NotNull String indentation) {
+        this.indentation = indentation;
+        return this;
+    }
+
+    /**
+     * Set the string written at the end of every line, for example "\r\n".
+     * New lines in texts, attributes and comments are written with it too.
+     *
+     * @param newLine the new line
+     * @return this writer
+     */
+    public @NotNull NodeWriter newLine(@NotNull String newLine) {
+        this.newLine = newLine;
+        return this;
+    }
+
+    /**
+     * Write the most compact output: children are not separated by new lines nor indented,
+     * every sequence of white spaces in texts is collapsed into one space and comments are dropped.
+     * White spaces in attributes, raw texts and preformatted texts are kept as they are.
+     *
+     * @return this writer
+     */
+    public @NotNull NodeWriter minify() {
+        this.minify = true;
+        return this;
+    }
+
+    /**
+     * Write the given node with all its children, but not its siblings.
+     *
+     * @param node the node
+     * @return this writer
+     * @throws IOException the io exception
+     */
+    public @NotNull NodeWriter write(@NotNull Node node) throws IOException {
+        return write(node, n -> n, n -> n instanceof ContainerNode ? ((ContainerNode) n).getChild() : null, Node::getNext);
+    }
+
+    /**
+     * Write the given element with all its children, but not its siblings, without rebuilding the tree of nodes.
+     * The output is the same of the node created with {@link CompactDocument.Element#toNode(CompactDocument.NodeFactory)}:
+     * only one node at a time is created with the given factory, and discarded once written.
+     *
+     * @param element the element
+     * @param factory the factory
+     * @return this writer
+     * @throws IOException the io exception
+     */
+    public @NotNull NodeWriter write(@NotNull CompactDocument.Element element,
+                                     @NotNull CompactDocument.NodeFactory factory) throws IOException {
+        return write(element, e -> e.createNode(factory), CompactDocument.Element::getChild, CompactDocument.Element::getNext);
+    }
+
+    /**
+     * Write the given snapshot with all its children, without rebuilding the tree of nodes.
+     * The output is the same of the node created with {@link FrozenNode#toNode(CompactDocument.NodeFactory)}:
+     * only one node at a time is created with the given factory, and discarded once written.
+     *
+     * @param node    the node
+     * @param factory the factory
+     * @return this writer
+     * @throws IOException the io exception
+     */
+    public @NotNull NodeWriter write(@NotNull FrozenNode node, @NotNull CompactDocument.NodeFactory factory) throws IOException {
+        return write(new FrozenChild(Collections.singletonList(node), 0), c -> c.get().createNode(factory),
+                FrozenChild::getChild, FrozenChild::getNext);
+    }
+
+    /**
+     * Write the given item with all its children, but not its siblings.
+     * The items are converted to the nodes that write them only when reached.
+     *
+     * @param <T>      the type of the items
+     * @param item     the item
+     * @param toNode   the function that gets the node of an item, without following its children and next
+     * @param getChild the function that gets the first child of an item
+     * @param getNext  the function that gets the next of an item
+     * @return this writer
+     * @throws IOException the io exception
+     */
+    private <T> @NotNull NodeWriter write(@NotNull T item, @NotNull Function<T, Node> toNode,
+                                          @NotNull Function<T, T> getChild, @NotNull Function<T, T> getNext) throws IOException {
+        final Node node = toNode.apply(item);
+        node.writeStart(this);
+        T current = getChild.apply(item);
+        if (current == null) {
+            writeEnd(node);
+            return this;
+        }
+
+        final Deque<T> parents = new ArrayDeque<>();
+        final Deque<ContainerNode> parentNodes = new ArrayDeque<>();
+        T parent = item;
+        ContainerNode parentNode = (ContainerNode) node;
+        while (true) {
+            if (current != null) {
+                final Node currentNode = toNode.apply(current);
+                if (this.minify && currentNode instanceof CommentNode) {
+                    current = getNext.apply(current);
+                    continue;
+                }
+                this.level++;
+                newLine();
+                parentNode.writeChild(currentNode, this);
+                final T child = getChild.apply(current);
+                if (child != null) {
+                    parents.push(parent);
+                    parentNodes.push(parentNode);
+                    parent = current;
+                    parentNode = (ContainerNode) currentNode;
+                    current = child;
+                    continue;
+                }
+                writeEnd(currentNode);
+                this.level--;
+                current = getNext.apply(current);
+            } else {
+                newLine();
+                writeEnd(parentNode);
+                if (parents.isEmpty()) return this;
+                this.level--;
+                current = getNext.apply(parent);
+                parent = parents.pop();
+                parentNode = parentNodes.pop();
+            }
+        }
+    }
+
+    private void writeEnd(@NotNull Node node) throws IOException {
+        node.writeEnd(this);
+        if (this.level == this.preformatted) this.preformatted = -1;
+    }
+
+    /**
+     * Write the opening tag of the given node with its attributes, followed by the given end.
+     *
+     * @param node the node
+     * @param end  the end, like "&gt;" or "/&gt;"
+     * @return this writer
+     * @throws IOException the io exception
+     */
+    public @NotNull NodeWriter writeTag(@NotNull Node node, @NotNull String end) throws IOException {
+        append('<').append(node.getTagName());
+        for (Map.Entry<String, String> entry : node.getAttributes().entrySet()) {
+            final String key = entry.getKey();
+            if (key == null) continue;
+            append(' ').append(key);
+            final String value = entry.getValue();
+            if (value != null) append("=\"").writeText(value, Entities.ATTRIBUTE).append('"');
+        }
+        return append(end);
+    }
+
+    /**
+     * Write the given text, escaping its special characters in the given context
+     * as specified by {@link Entities#escape(CharSequence, int, int)}.
+     * If minifying, every sequence of white spaces is collapsed into one space, if the context is {@link Entities#TEXT}
+     * and the text is not inside a preformatted node.
+     *
+     * @param text    the text
+     * @param context the context: {@link Entities#TEXT}, {@link Entities#ATTRIBUTE} or {@link Entities#RAW_TEXT}
+     * @return this writer
+     * @throws IOException the io exception
+     */
+    public @NotNull NodeWriter writeText(@Nullable CharSequence text, int context) throws IOException {
+        return writeText(text, context, false);
+    }
+
+    /**
+     * Write the given text, like {@link #writeText(CharSequence, int)}.
+     * If preformatted, like the text of a &lt;pre&gt;, the white spaces of the text
+     * and of the texts of all the descendants of the node currently being written are kept as they are.
+     *
+     * @param text         the text
+     * @param context      the context: {@link Entities#TEXT}, {@link Entities#ATTRIBUTE} or {@link Entities#RAW_TEXT}
+     * @param preformatted true if the node currently being written is preformatted
+     * @return this writer
+     * @throws IOException the io exception
+     */
+    public @NotNull NodeWriter writeText(@Nullable CharSequence text, int context, boolean preformatted) throws IOException {
+        if (preformatted && this.preformatted < 0) this.preformatted = this.level;
+        if (text == null) return this;
+        final boolean collapse = this.minify && context == Entities.TEXT && this.preformatted < 0;
+        final int length = text.length();
+        int start = 0;
+        boolean space = false;
+        for (int i = 0; i < length; i++) {
+            final char c = text.charAt(i);
+            if (collapse && Character.isWhitespace(c)) {
+                this.output.append(text, start, i);
+                if (!space) this.output.append(' ');
+                space = true;
+                start = i + 1;
+                continue;
+            }
+            space = false;
+            if (c == '\n' && !this.minify) {
+                this.output.append(text, start, i);
+                newLine();
+                start = i + 1;
+                continue;
+            }
+            if (c >= 0x80 && this.encoder != null && context != Entities.RAW_TEXT) {
+                // Raw texts cannot contain character references, so there the character is replaced by the encoder.
+                final int codePoint = Character.codePointAt(text, i);
+                final int end = i + Character.charCount(codePoint);
+                if (!this.encoder.canEncode(text.subSequence(i, end))) {
+                    this.output.append(text, start, i).append("&#").append(Integer.toString(codePoint)).append(';');
+                    i = end - 1;
+                    start = end;
+                    continue;
+                }
+            }
+            final String replacement = Entities.escape(text, i, context);
+            if (replacement != null) {
+                this.output.append(text, start, i).append(replacement);
+                start = i + 1;
+            }
+        }
+        if (start < length) this.output.append(text, start, length);
+        return this;
+    }
+
+    /**
+     * Write a new line, followed by the indentation of the node currently being written.
+     * If minifying, nothing is written.
+     *
+     * @return this writer
+     * @throws IOException the io exception
+     */
+    public @NotNull NodeWriter newLine() throws IOException {
+        if (this.minify) return this;
+        this.output.append(this.newLine);
+        indent();
+        return this;
+    }
+
+    /**
+     * Write the given characters.
+     * Every new line is followed by the indentation of the node currently being written.
+     *
+     * @param chars the characters
+     * @return this writer
+     * @throws IOException the io exception
+     */
+    public @NotNull NodeWriter append(@Nullable CharSequence chars) throws IOException {
+        if (chars == null) return this;
+        final int length = chars.length();
+        int start = 0;
+        if (this.minify) {
+            this.output.append(chars);
+            return this;
+        }
+        for (int i = 0; i < length; i++)
+            if (chars.charAt(i) == '\n') {
+                this.output.append(chars, start, i);
+                newLine();
+                start = i + 1;
+            }
+        if (start < length) this.output.append(chars, start, length);
+        return this;
+    }
+
+    /**
+     * Write the given character.
+     * A new line is followed by the indentation of the node currently being written.
+     *
+     * @param c the character
+     * @return this writer
+     * @throws IOException the io exception
+     */
+    public @NotNull NodeWriter append(char c) throws IOException {
+        if (c == '\n' && !this.minify) return newLine();
+        this.output.append(c);
+        return this;
+    }
+
+    private void indent() throws IOException {
+        for (int i = 0; i < this.level; i++) this.output.append(this.indentation);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (this.output instanceof Flushable) ((Flushable) this.output).flush();
+    }
+
+    /**
+     * Flush and close the output, if closeable.
+     *
+     * @throws IOException the io exception
+     */
+    @Override
+    public void close() throws IOException {
+        flush();
+        if (this.output instanceof Closeable) ((Closeable) this.output).close();
+    }
+
+    /**
+     * A child of a {@link FrozenNode}, reached with its position among the children of its parent.
+     */
+    private static final class FrozenChild {
+        private final @NotNull List<FrozenNode> siblings;
+        private final int index;
+
+        private FrozenChild(@NotNull List<FrozenNode> siblings, int index) {
+            this.siblings = siblings;
+            this.index = index;
+        }
+
+        private @NotNull FrozenNode get() {
+            return this.siblings.get(this.index);
+        }
+
+        private @Nullable FrozenChild getChild() {
+            final List<FrozenNode> children = get().getChildren();
+            return children.isEmpty() ? null : new FrozenChild(children, 0);
+        }
+
+        private @Nullable FrozenChild getNext() {
+            return this.index + 1 < this.siblings.size() ? new FrozenChild(this.siblings, this.index + 1) : null;
+        }
+    }
+}
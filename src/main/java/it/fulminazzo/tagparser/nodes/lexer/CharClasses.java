@@ -0,0 +1,119 @@
+package it.fulminazzo.tagparser.nodes.lexer;
+
+/**
+ * A collection of precomputed lookup tables used to classify characters without allocating.
+ * Every character outside the ASCII range belongs to no class.
+ */
+public final class CharClasses {
+    /**
+     * Spaces, tabs, line feeds and carriage returns.
+     */
+    public static final int WHITESPACE = 1;
+    /**
+     * Tabs, line feeds and carriage returns.
+     */
+    public static final int LINE_BREAK = 1 << 1;
+    /**
+     * Characters allowed at the start of a name: [A-Za-z].
+     */
+    public static final int NAME_START = 1 << 2;
+    /**
+     * Characters allowed in a name: [A-Za-z0-9_\-:.].
+     */
+    public static final int NAME = 1 << 3;
+    /**
+     * Single and double quotes.
+     */
+    public static final int QUOTE = 1 << 4;
+    /**
+     * Characters that terminate the name of an attribute.
+     */
+    public static final int ATTRIBUTE_NAME_END = 1 << 5;
+    /**
+     * Characters that terminate an unquoted attribute value.
+     */
+    public static final int ATTRIBUTE_VALUE_END = 1 << 6;
+    /**
+     * Characters that terminate the name of a tag.
+     */
+    public static final int TAG_NAME_END = 1 << 7;
+
+    private static final int[] TABLE = new int[128];
+
+    static {
+        for (char c : " \t\n\r".toCharArray()) TABLE[c] |= WHITESPACE | ATTRIBUTE_NAME_END | ATTRIBUTE_VALUE_END | TAG_NAME_END;
+        for (char c : "\t\n\r".toCharArray()) TABLE[c] |= LINE_BREAK;
+        for (char c = 'A'; c <= 'Z'; c++) TABLE[c] |= NAME_START | NAME;
+        for (char c = 'a'; c <= 'z'; c++) TABLE[c] |= NAME_START | NAME;
+        for (char c = '0'; c <= '9'; c++) TABLE[c] |= NAME;
+        for (char c : "_-:.".toCharArray()) TABLE[c] |= NAME;
+        for (char c : "\"'".toCharArray()) TABLE[c] |= QUOTE;
+        for (char c : "=>/".toCharArray()) TABLE[c] |= ATTRIBUTE_NAME_END;
+        TABLE['>'] |= ATTRIBUTE_VALUE_END | TAG_NAME_END;
+        TABLE['<'] |= TAG_NAME_END;
+    }
+
+    private CharClasses() {
+    }
+
+    /**
+     * Checks if the given character belongs to at least one of the given classes.
+     *
+     * @param c       the character
+     * @param classes the classes
+     * @return true if it does
+     */
+    public static boolean is(int c, int classes) {
+        return c >= 0 && c < TABLE.length && (TABLE[c] & classes) != 0;
+    }
+
+    /**
+     * Checks if the given character is a white space.
+     *
+     * @param c the character
+     * @return true if it is
+     */
+    public static boolean isWhitespace(int c) {
+        return is(c, WHITESPACE);
+    }
+
+    /**
+     * Checks if the given character is a tab, a line feed or a carriage return.
+     *
+     * @param c the character
+     * @return true if it is
+     */
+    public static boolean isLineBreak(int c) {
+        return is(c, LINE_BREAK);
+    }
+
+    /**
+     * Checks if the given character can start a name.
+     *
+     * @param c the character
+     * @return true if it can
+     */
+    public static boolean isNameStart(int c) {
+        return is(c, NAME_START);
+    }
+
+    /**
+     * Checks if the given character can be part of a name.
+     *
+     * @param c the character
+     * @return true if it can
+     */
+    public static boolean isNameChar(int c) {
+        return is(c, NAME);
+    }
+
+    /**
+     * Checks if the given character is a single or double quote.
+     *
+     * @param c the character
+     * @return true if it is
+     */
+    public static boolean isQuote(int c) {
+        return is(c, QUOTE);
+    }
+}
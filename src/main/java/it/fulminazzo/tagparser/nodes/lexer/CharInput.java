@@ -0,0 +1,209 @@
+package it.fulminazzo.tagparser.nodes.lexer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+
+/**
+ * A buffered source of characters used by {@link it.fulminazzo.tagparser.nodes.NodeBuilder}.
+ * Instead of pulling one byte at a time from the underlying {@link InputStream},
+ * it decodes the input in chunks into a reusable window,
+ * that can be scanned with simple index arithmetic.
+ * <p>
+ * When created from a {@link String}, the string itself is used as the window and no decoding is performed.
+ * <p>
+ * The characters read after a {@link #mark()} are kept in the window, enlarging it if needed,
+ * so that they can be retrieved with {@link #release()}.
+ */
+public class CharInput implements Closeable {
+    /**
+     * The default size of the window.
+     */
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+    private static final int MIN_BUFFER_SIZE = 16;
+
+    protected char @NotNull [] window;
+    protected int position;
+    protected int limit;
+    /**
+     * The position from which the characters are kept in the window, or -1 if not marked.
+     */
+    protected int mark = -1;
+
+    private @Nullable InputStream stream;
+    private final boolean closeStream;
+    private final @Nullable CharsetDecoder decoder;
+    private final @Nullable ByteBuffer bytes;
+    private boolean endOfStream;
+
+    /**
+     * Instantiates a new Char input from the given string.
+     *
+     * @param string the string
+     */
+    public CharInput(@NotNull String string) {
+        this.window = string.toCharArray();
+        this.limit = this.window.length;
+        this.closeStream = false;
+        this.decoder = null;
+        this.bytes = null;
+    }
+
+    /**
+     * Instantiates a new Char input from the given stream.
+     *
+     * @param stream      the stream
+     * @param charset     the charset used to decode the stream
+     * @param bufferSize  the size of the window
+     * @param closeStream if true, the stream will be closed once its end is reached
+     */
+    public CharInput(@NotNull InputStream stream, @NotNull Charset charset, int bufferSize, boolean closeStream) {
+        bufferSize = Math.max(bufferSize, MIN_BUFFER_SIZE);
+        this.stream = stream;
+        this.closeStream = closeStream;
+        this.window = new char[bufferSize];
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.bytes = ByteBuffer.allocate(bufferSize);
+        this.bytes.flip();
+    }
+
+    /**
+     * Read the next character.
+     *
+     * @return the character or -1 if the end of the input has been reached
+     * @throws IOException the io exception
+     */
+    public int read() throws IOException {
+        if (this.position == this.limit && !fill()) return -1;
+        return this.window[this.position++];
+    }
+
+    /**
+     * Read the next character without consuming it.
+     *
+     * @return the character or -1 if the end of the input has been reached
+     * @throws IOException the io exception
+     */
+    public int peek() throws IOException {
+        if (this.position == this.limit && !fill()) return -1;
+        return this.window[this.position];
+    }
+
+    /**
+     * Read the character at the given distance from the current one, without consuming anything.
+     * The offset should be smaller than the size of the window.
+     *
+     * @param offset the offset
+     * @return the character or -1 if the end of the input has been reached
+     * @throws IOException the io exception
+     */
+    public int peek(int offset) throws IOException {
+        while (this.position + offset >= this.limit)
+            if (!fill()) return -1;
+        return this.window[this.position + offset];
+    }
+
+    /**
+     * Checks if there are still characters to be read.
+     *
+     * @return true if the end of the input has not been reached yet
+     * @throws IOException the io exception
+     */
+    public boolean hasRemaining() throws IOException {
+        return this.position < this.limit || fill();
+    }
+
+    /**
+     * Keep every character read from now on, until {@link #release()} is called.
+     */
+    public void mark() {
+        this.mark = this.position;
+    }
+
+    /**
+     * Get the characters read since the last {@link #mark()}, and stop keeping them.
+     *
+     * @return the characters
+     */
+    public @NotNull String release() {
+        if (this.mark == -1) throw new IllegalStateException("Not marked");
+        final String marked = new String(this.window, this.mark, this.position - this.mark);
+        this.mark = -1;
+        return marked;
+    }
+
+    /**
+     * Refill the window with the next chunk of the input.
+     * Characters not consumed yet, or marked, are moved to the beginning of the window.
+     *
+     * @return false if no character could be added, because the end of the input has been reached
+     * @throws IOException the io exception
+     */
+    protected boolean fill() throws IOException {
+        if (this.stream == null || this.decoder == null || this.bytes == null) return false;
+        final int kept = this.mark == -1 ? this.position : this.mark;
+        final int remaining = this.limit - kept;
+        if (remaining > 0) System.arraycopy(this.window, kept, this.window, 0, remaining);
+        this.position -= kept;
+        if (this.mark != -1) this.mark = 0;
+        this.limit = remaining;
+        if (remaining == this.window.length) {
+            if (this.mark == -1) return false;
+            this.window = Arrays.copyOf(this.window, 2 * this.window.length);
+        }
+
+        final CharBuffer chars = CharBuffer.wrap(this.window, remaining, this.window.length - remaining);
+        while (chars.position() == remaining) {
+            if (!this.endOfStream) {
+                this.bytes.compact();
+                final int read = readBytes(this.bytes);
+                this.bytes.flip();
+                if (read == -1) this.endOfStream = true;
+            }
+            final CoderResult result = this.decoder.decode(this.bytes, chars, this.endOfStream);
+            if (result.isOverflow()) break;
+            if (this.endOfStream) {
+                if (this.decoder.flush(chars).isOverflow()) break;
+                close();
+                break;
+            }
+        }
+        this.limit = chars.position();
+        return this.limit > remaining;
+    }
+
+    private int readBytes(final @NotNull ByteBuffer buffer) throws IOException {
+        if (this.stream == null || !buffer.hasRemaining()) return 0;
+        final byte[] array = buffer.array();
+        final int offset = buffer.arrayOffset() + buffer.position();
+        int read = this.stream.read(array, offset, buffer.remaining());
+        // Some streams do not honor the bulk read contract: fall back to a single byte.
+        if (read == 0) {
+            final int b = this.stream.read();
+            if (b == -1) return -1;
+            array[offset] = (byte) b;
+            read = 1;
+        }
+        if (read > 0) buffer.position(buffer.position() + read);
+        return read;
+    }
+
+    @Override
+    public void close() throws IOException {
+        final InputStream stream = this.stream;
+        this.stream = null;
+        if (stream != null && this.closeStream) stream.close();
+    }
+}
@@ -0,0 +1,77 @@
+package it.fulminazzo.tagparser.nodes.lexer;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An incremental recognizer of the closing tag of a node (&lt;/tag&gt;).
+ * Characters are fed one at a time and the end of the match is detected in constant amortized time,
+ * using the Knuth-Morris-Pratt failure function of the closing tag.
+ */
+public class ClosingTagMatcher {
+    private final char @NotNull [] pattern;
+    private final int @NotNull [] failure;
+    private int state;
+
+    /**
+     * Instantiates a new Closing tag matcher.
+     *
+     * @param tagName the tag name
+     */
+    public ClosingTagMatcher(@NotNull String tagName) {
+        this.pattern = ("</" + tagName + ">").toCharArray();
+        this.failure = new int[this.pattern.length];
+        for (int i = 1, k = 0; i < this.pattern.length; i++) {
+            while (k > 0 && this.pattern[i] != this.pattern[k]) k = this.failure[k - 1];
+            if (this.pattern[i] == this.pattern[k]) k++;
+            this.failure[i] = k;
+        }
+    }
+
+    /**
+     * Feed the next character to the matcher.
+     *
+     * @param c the character
+     * @return true if the closing tag has been matched
+     */
+    public boolean accept(int c) {
+        if (isMatched()) return true;
+        while (this.state > 0 && this.pattern[this.state] != c) this.state = this.failure[this.state - 1];
+        if (this.pattern[this.state] == c) this.state++;
+        return isMatched();
+    }
+
+    /**
+     * Checks if the closing tag has been matched.
+     *
+     * @return true if the last characters fed compose the closing tag
+     */
+    public boolean isMatched() {
+        return this.state == this.pattern.length;
+    }
+
+    /**
+     * Checks if the matcher is in the middle of a possible closing tag.
+     * While this is false, characters other than &lt; can be skipped without feeding them to the matcher.
+     *
+     * @return true if at least one character of the closing tag has been matched
+     */
+    public boolean isMatching() {
+        return this.state > 0;
+    }
+
+    /**
+     * Reset the matcher to its initial state.
+     */
+    public void reset() {
+        this.state = 0;
+    }
+
+    /**
+     * Gets the length of the closing tag.
+     *
+     * @return the length
+     */
+    public int length() {
+        return this.pattern.length;
+    }
+}
@@ -0,0 +1,338 @@
+package it.fulminazzo.tagparser.nodes.lexer;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.function.IntPredicate;
+
+/**
+ * The tokenizer core used by {@link it.fulminazzo.tagparser.nodes.NodeBuilder} and its subclasses.
+ * It scans the window of a {@link CharInput} directly,
+ * classifying characters with {@link CharClasses} and primitive predicates,
+ * so that no object is allocated per character read.
+ */
+public class NodeLexer {
+    /**
+     * A comment: &lt;!-- comment --&gt;.
+     */
+    public static final int COMMENT = 1;
+    /**
+     * A CDATA section: &lt;![CDATA[ text ]]&gt;.
+     */
+    public static final int CDATA = 2;
+    /**
+     * A markup declaration, like &lt;!DOCTYPE html&gt;.
+     */
+    public static final int DECLARATION = 3;
+    /**
+     * A processing instruction, like &lt;?xml version="1.0"?&gt;.
+     */
+    public static final int PROCESSING_INSTRUCTION = 4;
+    private static final char[] CDATA_START = "[CDATA[".toCharArray();
+
+    protected final @NotNull CharInput input;
+    private final @NotNull StringBuilder scratch;
+    private final @NotNull SymbolTable names;
+    private final @Nullable SymbolTable values;
+
+    /**
+     * Instantiates a new Node lexer, that uses {@link SymbolTable#NAMES} for names and does not intern values.
+     *
+     * @param input the input
+     */
+    public NodeLexer(@NotNull CharInput input) {
+        this(input, SymbolTable.NAMES, null);
+    }
+
+    /**
+     * Instantiates a new Node lexer.
+     *
+     * @param input  the input
+     * @param names  the symbol table of tag and attribute names
+     * @param values the symbol table of attribute values, null to allocate a new string for every value
+     */
+    public NodeLexer(@NotNull CharInput input, @NotNull SymbolTable names, @Nullable SymbolTable values) {
+        this.input = input;
+        this.scratch = new StringBuilder();
+        this.names = names;
+        this.values = values;
+    }
+
+    /**
+     * Get the canonical instance of the given characters from the symbol table of names.
+     *
+     * @param chars the characters
+     * @param start the start
+     * @param end   the end
+     * @return the name
+     */
+    public @NotNull String name(@NotNull CharSequence chars, int start, int end) {
+        return this.names.get(chars, start, end);
+    }
+
+    /**
+     * Read the next character.
+     *
+     * @return the character or -1 if the end of the input has been reached
+     * @throws IOException the io exception
+     */
+    public int read() throws IOException {
+        return this.input.read();
+    }
+
+    /**
+     * Read the next character without consuming it.
+     *
+     * @return the character or -1 if the end of the input has been reached
+     * @throws IOException the io exception
+     */
+    public int peek() throws IOException {
+        return this.input.peek();
+    }
+
+    /**
+     * Read the character at the given distance from the current one, without consuming anything.
+     *
+     * @param offset the offset
+     * @return the character or -1 if the end of the input has been reached
+     * @throws IOException the io exception
+     */
+    public int peek(int offset) throws IOException {
+        return this.input.peek(offset);
+    }
+
+    /**
+     * Checks if there are still characters to be read.
+     *
+     * @return true if the end of the input has not been reached yet
+     * @throws IOException the io exception
+     */
+    public boolean hasRemaining() throws IOException {
+        return this.input.hasRemaining();
+    }
+
+    /**
+     * Skip every white space.
+     *
+     * @return the first character that is not a white space (not consumed) or -1 if the end has been reached
+     * @throws IOException the io exception
+     */
+    public int skipWhitespace() throws IOException {
+        final CharInput input = this.input;
+        while (input.position < input.limit || input.fill()) {
+            final char[] window = input.window;
+            final int limit = input.limit;
+            int i = input.position;
+            while (i < limit && CharClasses.isWhitespace(window[i])) i++;
+            input.position = i;
+            if (i < limit) return window[i];
+        }
+        return -1;
+    }
+
+    /**
+     * Append every character accepted by the given predicate to the output.
+     * Characters are copied in bulk from the window of the input.
+     *
+     * @param predicate the predicate
+     * @param output    the output
+     * @return the first character not accepted (not consumed) or -1 if the end has been reached
+     * @throws IOException the io exception
+     */
+    public int readWhile(@NotNull IntPredicate predicate, @NotNull StringBuilder output) throws IOException {
+        final CharInput input = this.input;
+        while (input.position < input.limit || input.fill()) {
+            final char[] window = input.window;
+            final int limit = input.limit;
+            final int start = input.position;
+            int i = start;
+            while (i < limit && predicate.test(window[i])) i++;
+            output.append(window, start, i - start);
+            input.position = i;
+            if (i < limit) return window[i];
+        }
+        return -1;
+    }
+
+    /**
+     * Skip every character accepted by the given predicate.
+     *
+     * @param predicate the predicate
+     * @return the first character not accepted (not consumed) or -1 if the end has been reached
+     * @throws IOException the io exception
+     */
+    public int skipWhile(@NotNull IntPredicate predicate) throws IOException {
+        final CharInput input = this.input;
+        while (input.position < input.limit || input.fill()) {
+            final char[] window = input.window;
+            final int limit = input.limit;
+            int i = input.position;
+            while (i < limit && predicate.test(window[i])) i++;
+            input.position = i;
+            if (i < limit) return window[i];
+        }
+        return -1;
+    }
+
+    /**
+     * Keep every character read from now on, until {@link #release()} is called.
+     *
+     * @see CharInput#mark()
+     */
+    public void mark() {
+        this.input.mark();
+    }
+
+    /**
+     * Get the characters read since the last {@link #mark()}, and stop keeping them.
+     *
+     * @return the characters
+     * @see CharInput#release()
+     */
+    public @NotNull String release() {
+        return this.input.release();
+    }
+
+    /**
+     * Append every character to the output until the given quote is found.
+     * Quotes escaped with a backslash are treated as normal characters.
+     * The closing quote is consumed, but not appended.
+     *
+     * @param quote  the quote
+     * @param output the output
+     * @return the quote or -1 if the end has been reached
+     * @throws IOException the io exception
+     */
+    public int readQuoted(int quote, @NotNull StringBuilder output) throws IOException {
+        int read;
+        while ((read = readWhile(c -> c != quote, output)) != -1) {
+            this.input.position++;
+            final int length = output.length();
+            if (length == 0 || output.charAt(length - 1) != '\\') return read;
+            output.append((char) read);
+        }
+        return -1;
+    }
+
+    /**
+     * Read the attributes of a tag, up to its closing &gt; (included).
+     * Attributes without a value are stored with null.
+     *
+     * @param attributes the map where the attributes will be stored
+     * @return '/' if the tag ended with /&gt;, '&gt;' if it ended with &gt; or -1 if the end has been reached
+     * @throws IOException the io exception
+     */
+    public int readAttributes(@NotNull Map<String, String> attributes) throws IOException {
+        final StringBuilder builder = this.scratch;
+        int read;
+        while ((read = skipWhitespace()) != -1) {
+            if (read == '>') {
+                this.input.position++;
+                return read;
+            }
+            if (read == '/' || read == '?' || read == '=') {
+                this.input.position++;
+                if (read != '=' && peek() == '>') {
+                    this.input.position++;
+                    return read == '/' ? read : '>';
+                }
+                continue;
+            }
+
+            builder.setLength(0);
+            readWhile(c -> !CharClasses.is(c, CharClasses.ATTRIBUTE_NAME_END), builder);
+            final String name = this.names.get(builder, 0, builder.length());
+            if (skipWhitespace() != '=') {
+                attributes.put(name, null);
+                continue;
+            }
+
+            this.input.position++;
+            read = skipWhitespace();
+            builder.setLength(0);
+            if (CharClasses.isQuote(read)) {
+                this.input.position++;
+                readQuoted(read, builder);
+            } else {
+                read = readWhile(c -> !CharClasses.is(c, CharClasses.ATTRIBUTE_VALUE_END), builder);
+                final int length = builder.length();
+                if (read == '>' && length > 0 && builder.charAt(length - 1) == '/') {
+                    attributes.put(name, value(builder, length - 1));
+                    this.input.position++;
+                    return '/';
+                }
+            }
+            attributes.put(name, value(builder, builder.length()));
+        }
+        return -1;
+    }
+
+    private @NotNull String value(@NotNull StringBuilder builder, int length) {
+        if (this.values == null) return builder.substring(0, length);
+        return this.values.get(builder, 0, length);
+    }
+
+    /**
+     * Read a comment, a CDATA section, a markup declaration or a processing instruction.
+     * The opening &lt; should have already been consumed, while the next character should be either ! or ?.
+     * Only the contents are appended to the output, without the delimiters.
+     *
+     * @param output the output
+     * @return the type of markup read: {@link #COMMENT}, {@link #CDATA}, {@link #DECLARATION} or {@link #PROCESSING_INSTRUCTION}
+     * @throws IOException the io exception
+     */
+    public int readMarkup(@NotNull StringBuilder output) throws IOException {
+        if (read() == '?') {
+            readTerminated(output, '?', 1);
+            return PROCESSING_INSTRUCTION;
+        }
+        if (peek() == '-') {
+            this.input.position++;
+            if (peek() == '-') {
+                this.input.position++;
+                readTerminated(output, '-', 2);
+                return COMMENT;
+            }
+            output.append('-');
+        } else if (peek() == '[') {
+            int i = 0;
+            while (i < CDATA_START.length && peek() == CDATA_START[i]) {
+                this.input.position++;
+                i++;
+            }
+            if (i == CDATA_START.length) {
+                readTerminated(output, ']', 2);
+                return CDATA;
+            }
+            output.append(CDATA_START, 0, i);
+        }
+        readTerminated(output, '>', 0);
+        return DECLARATION;
+    }
+
+    /**
+     * Append every character to the output until a &gt; preceded by the given amount of markers is found.
+     * The terminator is consumed, but not appended.
+     *
+     * @param output  the output
+     * @param marker  the marker
+     * @param markers the amount of markers required before the &gt;
+     * @return '&gt;' or -1 if the end has been reached
+     */
+    private int readTerminated(@NotNull StringBuilder output, char marker, int markers) throws IOException {
+        while (readWhile(c -> c != '>', output) != -1) {
+            this.input.position++;
+            final int length = output.length();
+            int found = 0;
+            while (found < markers && found < length && output.charAt(length - 1 - found) == marker) found++;
+            if (found == markers) {
+                output.setLength(length - markers);
+                return '>';
+            }
+            output.append('>');
+        }
+        return -1;
+    }
+}
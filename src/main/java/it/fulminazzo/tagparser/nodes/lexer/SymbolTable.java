@@ -0,0 +1,133 @@
+package it.fulminazzo.tagparser.nodes.lexer;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A thread-safe table of canonical strings, used by {@link NodeLexer} to avoid allocating
+ * the same tag names, attribute names and values again for every occurrence.
+ * <p>
+ * Symbols are looked up directly from the characters read, so a symbol already in the table is returned
+ * without allocating anything. Lookups do not lock: only adding a new symbol does.
+ * The table is bounded: once full, or for strings too long, new strings are returned without being added.
+ */
+public final class SymbolTable {
+    /**
+     * The table shared by every lexer for tag and attribute names,
+     * seeded with the names of HTML elements and attributes.
+     * Since the seeds are literals, the names read are the same instances as the literals used in code.
+     */
+    public static final SymbolTable NAMES = new SymbolTable(8192, 64).seed(
+            // Elements
+            "a", "abbr", "address", "area", "article", "aside", "audio", "b", "base", "bdi", "bdo", "blockquote",
+            "body", "br", "button", "canvas", "caption", "cite", "code", "col", "colgroup", "data", "datalist",
+            "dd", "del", "details", "dfn", "dialog", "div", "dl", "dt", "em", "embed", "fieldset", "figcaption",
+            "figure", "footer", "form", "h1", "h2", "h3", "h4", "h5", "h6", "head", "header", "hgroup", "hr", "html",
+            "i", "iframe", "img", "input", "ins", "kbd", "label", "legend", "li", "link", "main", "map", "mark",
+            "menu", "meta", "meter", "nav", "noscript", "object", "ol", "optgroup", "option", "output", "p",
+            "param", "picture", "pre", "progress", "q", "rp", "rt", "ruby", "s", "samp", "script", "search",
+            "section", "select", "slot", "small", "source", "span", "strong", "style", "sub", "summary", "sup",
+            "svg", "path", "g", "circle", "rect", "line", "polygon", "table", "tbody", "td", "template",
+            "textarea", "tfoot", "th", "thead", "time", "title", "tr", "track", "u", "ul", "var", "video", "wbr",
+            // Attributes
+            "accept", "action", "alt", "async", "autocomplete", "autofocus", "charset", "checked", "class",
+            "cols", "colspan", "content", "contenteditable", "crossorigin", "d", "defer", "dir", "disabled",
+            "download", "draggable", "enctype", "fill", "for", "height", "hidden", "href", "hreflang", "http-equiv",
+            "id", "integrity", "lang", "loading", "max", "maxlength", "media", "method", "min", "minlength",
+            "multiple", "name", "onclick", "onload", "pattern", "placeholder", "readonly", "referrerpolicy", "rel",
+            "required", "role", "rows", "rowspan", "sizes", "src", "srcset", "step", "stroke", "tabindex",
+            "target", "type", "value", "viewBox", "width", "xmlns");
+
+    private final int maxSize;
+    private final int maxLength;
+    private volatile String @NotNull [] table;
+    private int size;
+
+    /**
+     * Instantiates a new Symbol table.
+     *
+     * @param maxSize   the maximum number of symbols
+     * @param maxLength the maximum length of a symbol
+     */
+    public SymbolTable(int maxSize, int maxLength) {
+        this.maxSize = maxSize;
+        this.maxLength = maxLength;
+        this.table = new String[16];
+    }
+
+    /**
+     * Add the given strings to the table, so that they will be the canonical instances.
+     *
+     * @param symbols the symbols
+     * @return this table
+     */
+    public @NotNull SymbolTable seed(String @NotNull ... symbols) {
+        for (String symbol : symbols) add(symbol, symbol.hashCode());
+        return this;
+    }
+
+    /**
+     * Get the canonical instance of the characters of the given sequence between start (included) and end (excluded).
+     * If not present, they are added to the table.
+     *
+     * @param chars the characters
+     * @param start the start
+     * @param end   the end
+     * @return the symbol
+     */
+    public @NotNull String get(@NotNull CharSequence chars, int start, int end) {
+        if (end - start > this.maxLength) return chars.subSequence(start, end).toString();
+        int hash = 0;
+        for (int i = start; i < end; i++) hash = 31 * hash + chars.charAt(i);
+
+        final String[] table = this.table;
+        final int mask = table.length - 1;
+        String symbol;
+        for (int slot = hash & mask; (symbol = table[slot]) != null; slot = (slot + 1) & mask)
+            if (symbol.hashCode() == hash && matches(symbol, chars, start, end)) return symbol;
+        return add(chars.subSequence(start, end).toString(), hash);
+    }
+
+    /**
+     * Gets the number of symbols in the table.
+     *
+     * @return the size
+     */
+    public int size() {
+        return this.size;
+    }
+
+    private synchronized @NotNull String add(@NotNull String symbol, int hash) {
+        String[] table = this.table;
+        int mask = table.length - 1;
+        for (int slot = hash & mask; table[slot] != null; slot = (slot + 1) & mask)
+            if (table[slot].equals(symbol)) return table[slot];
+        if (this.size >= this.maxSize) return symbol;
+
+        // Keep the table at most half full, so that probes stay short.
+        if (2 * (this.size + 1) > table.length) {
+            final String[] resized = new String[2 * table.length];
+            mask = resized.length - 1;
+            for (String s : table)
+                if (s != null) resized[free(resized, s.hashCode() & mask)] = s;
+            table = resized;
+        }
+        table[free(table, hash & mask)] = symbol;
+        this.size++;
+        // Publishes the new symbol (and the resized table) to the lookups.
+        this.table = table;
+        return symbol;
+    }
+
+    private static int free(String @NotNull [] table, int slot) {
+        final int mask = table.length - 1;
+        while (table[slot] != null) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private static boolean matches(@NotNull String symbol, @NotNull CharSequence chars, int start, int end) {
+        if (symbol.length() != end - start) return false;
+        for (int i = start; i < end; i++)
+            if (symbol.charAt(i - start) != chars.charAt(i)) return false;
+        return true;
+    }
+}
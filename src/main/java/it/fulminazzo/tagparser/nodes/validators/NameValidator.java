@@ -0,0 +1,69 @@
+package it.fulminazzo.tagparser.nodes.validators;
+
+import it.fulminazzo.tagparser.nodes.Node;
+import it.fulminazzo.tagparser.nodes.lexer.CharClasses;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+/**
+ * The validation of tag names, attribute names and contents against regular expressions.
+ * <p>
+ * Names are checked against {@link Node#TAG_NAME_REGEX} with a scanner on {@link CharClasses},
+ * while any other regex is compiled once and cached.
+ */
+public final class NameValidator {
+    private static final int MAX_CACHE_SIZE = 512;
+    private static final Map<String, Pattern> CACHE = new ConcurrentHashMap<>();
+
+    private NameValidator() {
+    }
+
+    /**
+     * Checks if the given name matches {@link Node#TAG_NAME_REGEX},
+     * without using regular expressions.
+     *
+     * @param name the name
+     * @return true if it does
+     */
+    public static boolean isValidName(@NotNull CharSequence name) {
+        final int length = name.length();
+        if (length == 0 || !CharClasses.is(name.charAt(0), CharClasses.NAME_START)) return false;
+        for (int i = 1; i < length; i++)
+            if (!CharClasses.is(name.charAt(i), CharClasses.NAME)) return false;
+        // The name cannot end with one of _-:.
+        return CharClasses.is(name.charAt(length - 1), CharClasses.NAME_START) ||
+                Character.isDigit(name.charAt(length - 1));
+    }
+
+    /**
+     * Checks if the whole input matches the given regex.
+     * {@link Node#TAG_NAME_REGEX} is checked by {@link #isValidName(CharSequence)}.
+     *
+     * @param input the input
+     * @param regex the regex
+     * @return true if it does
+     */
+    public static boolean matches(@NotNull CharSequence input, @NotNull String regex) {
+        if (regex.equals(Node.TAG_NAME_REGEX)) return isValidName(input);
+        return compile(regex).matcher(input).matches();
+    }
+
+    /**
+     * Get the compiled pattern of the given regex.
+     * The compiled patterns are cached.
+     *
+     * @param regex the regex
+     * @return the pattern
+     */
+    public static @NotNull Pattern compile(@NotNull String regex) {
+        final Pattern cached = CACHE.get(regex);
+        if (cached != null) return cached;
+        final Pattern compiled = Pattern.compile(regex);
+        if (CACHE.size() >= MAX_CACHE_SIZE) CACHE.clear();
+        CACHE.put(regex, compiled);
+        return compiled;
+    }
+}
@@ -0,0 +1,625 @@
+package it.fulminazzo.tagparser.paths;
+
+import it.fulminazzo.tagparser.markup.INodeObject;
+import it.fulminazzo.tagparser.nodes.ContainerNode;
+import it.fulminazzo.tagparser.nodes.Node;
+import it.fulminazzo.tagparser.nodes.NodeIndex;
+import it.fulminazzo.tagparser.paths.exceptions.PathSyntaxException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * A path expression, written in a subset of XPath, compiled into a reusable plan.
+ * Supported syntax:
+ * <ul>
+ *     <li>absolute (<code>/config/database</code>) and relative (<code>database/host</code>) paths;</li>
+ *     <li>child (<code>/</code>) and descendant (<code>//</code>) steps, matching a tag name or any node (<code>*</code>);</li>
+ *     <li>predicates: <code>[@attr]</code>, <code>[@attr='v']</code>, <code>[@attr!='v']</code>, <code>[text()='v']</code>,
+ *     <code>[child]</code>, <code>[child='v']</code>, <code>[n]</code> and <code>[last()]</code>;</li>
+ *     <li>a final <code>/text()</code> or <code>/@attr</code> step, to read values instead of nodes.</li>
+ * </ul>
+ * Absolute paths start from a virtual document containing only the given node,
+ * while relative paths start from the given node itself.
+ * As in XPath, positions in predicates start from 1 and are counted among siblings.
+ * <p>
+ * The steps are evaluated in a pipeline: every node found by a step is passed to the next one,
+ * without collecting the intermediate results.
+ * Only when the results of the plan may be out of document order or repeated (see {@link #explain()})
+ * they are collected and then sorted with a single visit of the tree.
+ * <p>
+ * Plans are immutable, so they can be shared among threads.
+ * The ones created with {@link #compile(String)} are also cached.
+ */
+public final class PathExpression {
+    private static final int MAX_CACHE_SIZE = 512;
+    private static final Map<String, PathExpression> CACHE = new ConcurrentHashMap<>();
+
+    private final @NotNull String source;
+    private final boolean absolute;
+    private final Step @NotNull [] steps;
+    private final @Nullable String attribute;
+    private final boolean text;
+    private final boolean ordered;
+
+    private PathExpression(@NotNull String source, boolean absolute, Step @NotNull [] steps,
+                           @Nullable String attribute, boolean text) {
+        this.source = source;
+        this.absolute = absolute;
+        this.steps = steps;
+        this.attribute = attribute;
+        this.text = text;
+        // Results are in document order, and never repeated, only if the descendant step (if any)
+        // is the last one and does not use positions: every other step visits disjoint subtrees in order.
+        boolean ordered = true;
+        for (int i = 0; i < steps.length; i++)
+            if (steps[i].descendant && (i < steps.length - 1 || steps[i].positional)) ordered = false;
+        this.ordered = ordered;
+    }
+
+    /**
+     * Compile the given path expression, or get it from the cache if it has already been compiled.
+     *
+     * @param path the path expression
+     * @return the compiled plan
+     * @throws PathSyntaxException if the path is not valid
+     */
+    public static @NotNull PathExpression compile(@NotNull String path) {
+        final PathExpression cached = CACHE.get(path);
+        if (cached != null) return cached;
+        final PathExpression compiled = new Parser(path).parse();
+        if (CACHE.size() >= MAX_CACHE_SIZE) CACHE.clear();
+        CACHE.put(path, compiled);
+        return compiled;
+    }
+
+    /**
+     * Get all the nodes found by this path, in document order.
+     * If the path ends with <code>text()</code> or <code>@attr</code>, only the nodes with a text or that attribute are returned.
+     *
+     * @param node the node to start from
+     * @return the nodes
+     */
+    public @NotNull List<Node> selectNodes(@Nullable Node node) {
+        return node == null ? new ArrayList<>() : collect(node, null, false);
+    }
+
+    /**
+     * Get the first node found by this path, in document order.
+     *
+     * @param node the node to start from
+     * @return the node
+     * @see #selectNodes(Node)
+     */
+    public @Nullable Node selectNode(@Nullable Node node) {
+        return node == null ? null : first(collect(node, null, true));
+    }
+
+    /**
+     * Get all the values found by this path, in document order.
+     * These are the values of the attribute for paths ending with <code>@attr</code>,
+     * or the texts of the nodes otherwise.
+     *
+     * @param node the node to start from
+     * @return the values
+     */
+    public @NotNull List<String> selectValues(@Nullable Node node) {
+        return values(selectNodes(node));
+    }
+
+    /**
+     * Get the first value found by this path, in document order.
+     *
+     * @param node the node to start from
+     * @return the value
+     * @see #selectValues(Node)
+     */
+    public @Nullable String selectValue(@Nullable Node node) {
+        return first(values(node == null ? new ArrayList<>() : collect(node, null, true)));
+    }
+
+    /**
+     * Get all the nodes found by this path in the root node of the given object, in document order.
+     * If the object has an index, it is used for a first descendant step.
+     *
+     * @param object the object
+     * @return the nodes
+     * @see #selectNodes(Node)
+     */
+    public @NotNull List<Node> selectNodes(@NotNull INodeObject object) {
+        final Node root = object.getRootNode();
+        return root == null ? new ArrayList<>() : collect(root, object.getIndex(), false);
+    }
+
+    /**
+     * Get the first node found by this path in the root node of the given object, in document order.
+     *
+     * @param object the object
+     * @return the node
+     * @see #selectNodes(INodeObject)
+     */
+    public @Nullable Node selectNode(@NotNull INodeObject object) {
+        final Node root = object.getRootNode();
+        return root == null ? null : first(collect(root, object.getIndex(), true));
+    }
+
+    /**
+     * Get all the values found by this path in the root node of the given object, in document order.
+     *
+     * @param object the object
+     * @return the values
+     * @see #selectValues(Node)
+     */
+    public @NotNull List<String> selectValues(@NotNull INodeObject object) {
+        return values(selectNodes(object));
+    }
+
+    /**
+     * Get the first value found by this path in the root node of the given object, in document order.
+     *
+     * @param object the object
+     * @return the value
+     * @see #selectValues(Node)
+     */
+    public @Nullable String selectValue(@NotNull INodeObject object) {
+        final Node root = object.getRootNode();
+        return root == null ? null : first(values(collect(root, object.getIndex(), true)));
+    }
+
+    /**
+     * Describe how this plan is evaluated, without using any index.
+     *
+     * @return the description, one line per step
+     */
+    public @NotNull String explain() {
+        return explain((NodeIndex) null);
+    }
+
+    /**
+     * Describe how this plan is evaluated on the given object, reporting for every step
+     * whether its nodes are looked up in the index or found by visiting the tree.
+     *
+     * @param object the object
+     * @return the description, one line per step
+     */
+    public @NotNull String explain(@NotNull INodeObject object) {
+        return explain(object.getIndex());
+    }
+
+    private @NotNull String explain(@Nullable NodeIndex index) {
+        final StringBuilder builder = new StringBuilder(this.source);
+        final String lookup = index == null ? null : indexLookup();
+        for (int i = 0; i < this.steps.length; i++) {
+            final Step step = this.steps[i];
+            builder.append("\n  ").append(i + 1).append(". ").append(step.source).append(": ");
+            if (i == 0 && lookup != null) builder.append("index lookup by ").append(lookup);
+            else if (!step.descendant) builder.append("scan of children");
+            else if (step.positional) builder.append("scan of children of every descendant");
+            else builder.append("scan of descendants");
+        }
+        if (this.attribute != null) builder.append("\n  ").append(this.steps.length + 1).append(". @").append(this.attribute);
+        else if (this.text) builder.append("\n  ").append(this.steps.length + 1).append(". text()");
+        builder.append("\n  results: ").append(this.ordered ? "streamed in document order" :
+                "collected and sorted in document order");
+        return builder.toString();
+    }
+
+    /**
+     * Get how the first step can be looked up in an index.
+     *
+     * @return "id", "tag name" or null if the index cannot be used
+     */
+    private @Nullable String indexLookup() {
+        if (!this.absolute || this.steps.length == 0) return null;
+        final Step first = this.steps[0];
+        if (!first.descendant || first.positional) return null;
+        if (first.id() != null) return "id";
+        return first.name == null ? null : "tag name";
+    }
+
+    private @NotNull List<Node> collect(@NotNull Node start, @Nullable NodeIndex index, boolean onlyFirst) {
+        final List<Node> nodes = new ArrayList<>();
+        if (this.ordered) {
+            run(start, index, n -> {
+                if (!accept(n)) return true;
+                nodes.add(n);
+                return !onlyFirst;
+            });
+            return nodes;
+        }
+
+        final Set<Node> found = Collections.newSetFromMap(new IdentityHashMap<>());
+        run(start, index, n -> {
+            if (accept(n)) found.add(n);
+            return true;
+        });
+        for (Iterator<Node> iterator = start.iterator(); iterator.hasNext() && nodes.size() < found.size(); ) {
+            final Node node = iterator.next();
+            if (found.contains(node)) {
+                nodes.add(node);
+                if (onlyFirst) break;
+            }
+        }
+        return nodes;
+    }
+
+    private boolean accept(@NotNull Node node) {
+        if (this.attribute != null) return node.getAttribute(this.attribute) != null;
+        if (this.text) return node instanceof ContainerNode && ((ContainerNode) node).getText() != null;
+        return true;
+    }
+
+    private @NotNull List<String> values(@NotNull List<Node> nodes) {
+        final List<String> values = new ArrayList<>();
+        for (Node node : nodes) {
+            final String value = this.attribute != null ? node.getAttribute(this.attribute) :
+                    node instanceof ContainerNode ? ((ContainerNode) node).getText() : null;
+            if (value != null) values.add(value);
+        }
+        return values;
+    }
+
+    private static <T> @Nullable T first(@NotNull List<T> list) {
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    private void run(@NotNull Node start, @Nullable NodeIndex index, @NotNull Predicate<Node> sink) {
+        if (this.steps.length == 0) {
+            sink.test(start);
+            return;
+        }
+        final Node context = this.absolute ? null : start;
+        final String lookup = index == null ? null : indexLookup();
+        if (lookup == null) {
+            evaluate(0, context, start, sink);
+            return;
+        }
+
+        final Step first = this.steps[0];
+        final Predicate<Node> next = this.steps.length == 1 ? sink : n -> evaluate(1, n, start, sink);
+        final String id = first.id();
+        // More nodes may have the same id, so all of them are matched.
+        if (id != null) {
+            for (Node node : index.getNodesByAttribute("id"))
+                if (id.equals(node.getAttribute("id")) && first.matches(node) && first.test(node) && !next.test(node)) return;
+        } else for (Node node : index.getNodesByTagName(Objects.requireNonNull(first.name)))
+            if (first.test(node) && !next.test(node)) return;
+    }
+
+    /**
+     * Evaluate the step at the given position from the given context,
+     * passing every node found to the following steps.
+     *
+     * @param i        the position of the step
+     * @param context  the context node, or null for the document
+     * @param document the only node of the document
+     * @param sink     the consumer of the final results, returns false to stop
+     * @return false if the evaluation has been stopped
+     */
+    private boolean evaluate(int i, @Nullable Node context, @NotNull Node document, @NotNull Predicate<Node> sink) {
+        final Step step = this.steps[i];
+        final Predicate<Node> next = i == this.steps.length - 1 ? sink : n -> evaluate(i + 1, n, document, sink);
+        if (!step.descendant) return children(step, context, document, next);
+
+        final Iterator<Node> iterator = (context == null ? document : context).iterator();
+        if (step.positional) {
+            if (context == null && !children(step, null, document, next)) return false;
+            while (iterator.hasNext())
+                if (!children(step, iterator.next(), document, next)) return false;
+        } else {
+            if (context != null) iterator.next();
+            while (iterator.hasNext()) {
+                final Node node = iterator.next();
+                if (step.matches(node) && step.test(node) && !next.test(node)) return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean children(@NotNull Step step, @Nullable Node context, @NotNull Node document,
+                                    @NotNull Predicate<Node> next) {
+        final Siblings siblings = new Siblings(step, context, document);
+        final int[] counters = new int[step.filters.length];
+        final int count = siblings.count();
+        for (int i = 0; i < count; i++) {
+            final Node child = siblings.get(i);
+            if (step.matches(child) && siblings.accept(child, counters, step.filters.length) && !next.test(child))
+                return false;
+        }
+        return true;
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return this.source;
+    }
+
+    /**
+     * A predicate of a step.
+     */
+    @FunctionalInterface
+    private interface Filter {
+
+        /**
+         * Test the given node.
+         *
+         * @param node     the node
+         * @param position the position of the node among the siblings that passed the previous filters
+         * @param siblings the siblings, available only for steps with positional filters
+         * @param level    the position of this filter in the step
+         * @return true if the node passed the test
+         */
+        boolean test(@NotNull Node node, int position, @Nullable Siblings siblings, int level);
+    }
+
+    /**
+     * A filter on the value of an attribute.
+     */
+    private static final class AttributeFilter implements Filter {
+        private final @NotNull String name;
+        private final @Nullable String value;
+        private final boolean negate;
+
+        private AttributeFilter(@NotNull String name, @Nullable String value, boolean negate) {
+            this.name = name;
+            this.value = value;
+            this.negate = negate;
+        }
+
+        @Override
+        public boolean test(@NotNull Node node, int position, @Nullable Siblings siblings, int level) {
+            final String actual = node.getAttribute(this.name);
+            if (actual == null) return false;
+            return this.value == null || this.value.equals(actual) != this.negate;
+        }
+    }
+
+    /**
+     * A step of the path.
+     */
+    private static final class Step {
+        private final @NotNull String source;
+        private final boolean descendant;
+        private final @Nullable String name;
+        private final Filter @NotNull [] filters;
+        private final boolean positional;
+
+        private Step(@NotNull String source, boolean descendant, @Nullable String name,
+                     Filter @NotNull [] filters, boolean positional) {
+            this.source = source;
+            this.descendant = descendant;
+            this.name = name;
+            this.filters = filters;
+            this.positional = positional;
+        }
+
+        private boolean matches(@NotNull Node node) {
+            return this.name == null || this.name.equals(node.getTagName());
+        }
+
+        /**
+         * Test the given node against filters that do not depend on positions.
+         *
+         * @param node the node
+         * @return true if the node passed every filter
+         */
+        private boolean test(@NotNull Node node) {
+            for (Filter filter : this.filters)
+                if (!filter.test(node, 0, null, 0)) return false;
+            return true;
+        }
+
+        /**
+         * Get the id required by the first filter of this step, if any.
+         *
+         * @return the id
+         */
+        private @Nullable String id() {
+            if (this.filters.length == 0 || !(this.filters[0] instanceof AttributeFilter)) return null;
+            final AttributeFilter filter = (AttributeFilter) this.filters[0];
+            return filter.name.equals("id") && !filter.negate ? filter.value : null;
+        }
+    }
+
+    /**
+     * The children of a context node, for steps that count positions among siblings.
+     */
+    private static final class Siblings {
+        private final @NotNull Step step;
+        private final @Nullable Node context;
+        private final @NotNull Node document;
+        private final int @NotNull [] sizes;
+
+        private Siblings(@NotNull Step step, @Nullable Node context, @NotNull Node document) {
+            this.step = step;
+            this.context = context;
+            this.document = document;
+            this.sizes = new int[step.filters.length];
+            Arrays.fill(this.sizes, -1);
+        }
+
+        private int count() {
+            if (this.context == null) return 1;
+            return this.context instanceof ContainerNode ? ((ContainerNode) this.context).childCount() : 0;
+        }
+
+        private @NotNull Node get(int index) {
+            return this.context == null ? this.document : ((ContainerNode) this.context).getChild(index);
+        }
+
+        private boolean accept(@NotNull Node node, int @NotNull [] counters, int limit) {
+            for (int j = 0; j < limit; j++)
+                if (!this.step.filters[j].test(node, ++counters[j], this, j)) return false;
+            return true;
+        }
+
+        /**
+         * Get the number of siblings that pass the filters before the given one.
+         *
+         * @param level the position of the filter
+         * @return the number of siblings
+         */
+        private int size(int level) {
+            if (this.sizes[level] < 0) {
+                final int[] counters = new int[level];
+                int size = 0;
+                final int count = count();
+                for (int i = 0; i < count; i++) {
+                    final Node child = get(i);
+                    if (this.step.matches(child) && accept(child, counters, level)) size++;
+                }
+                this.sizes[level] = size;
+            }
+            return this.sizes[level];
+        }
+    }
+
+    /**
+     * A hand-written parser of path expressions.
+     */
+    private static final class Parser {
+        private final @NotNull String path;
+        private int position;
+
+        private Parser(@NotNull String path) {
+            this.path = path;
+        }
+
+        private @NotNull PathExpression parse() {
+            final List<Step> steps = new ArrayList<>();
+            String attribute = null;
+            boolean text = false;
+
+            boolean absolute = false;
+            boolean descendant = false;
+            if (consume("//")) absolute = descendant = true;
+            else if (consume("/")) absolute = true;
+
+            while (true) {
+                final int start = this.position;
+                if (this.path.startsWith("@", start) || this.path.startsWith("text()", start)) {
+                    if (descendant) throw error("Attributes and texts can only be read from the current step");
+                    if (consume("@")) attribute = name();
+                    else text = consume("text()");
+                } else steps.add(step(start, descendant));
+
+                if (this.position == this.path.length()) break;
+                if (attribute != null || text) throw error("Expected the end of the path");
+                if (consume("//")) descendant = true;
+                else if (consume("/")) descendant = false;
+                else throw error(String.format("Unexpected character '%s'", this.path.charAt(this.position)));
+            }
+
+            if (absolute && steps.isEmpty()) throw error("Expected a node step");
+            return new PathExpression(this.path, absolute, steps.toArray(new Step[0]), attribute, text);
+        }
+
+        private @NotNull Step step(int start, boolean descendant) {
+            final String name = consume("*") ? null : name();
+            final List<Filter> filters = new ArrayList<>();
+            boolean positional = false;
+            while (consume("[")) {
+                skipWhitespaces();
+                final Filter filter;
+                if (this.position < this.path.length() && Character.isDigit(this.path.charAt(this.position))) {
+                    final int index = number();
+                    filter = (n, p, s, l) -> p == index;
+                    positional = true;
+                } else if (consume("last()")) {
+                    filter = (n, p, s, l) -> s != null && p == s.size(l);
+                    positional = true;
+                } else if (consume("@")) {
+                    final String attribute = name();
+                    skipWhitespaces();
+                    if (consume("!=")) filter = new AttributeFilter(attribute, literal(), true);
+                    else if (consume("=")) filter = new AttributeFilter(attribute, literal(), false);
+                    else filter = new AttributeFilter(attribute, null, false);
+                } else if (consume("text()")) {
+                    skipWhitespaces();
+                    expect("=");
+                    final String value = literal();
+                    filter = (n, p, s, l) -> n instanceof ContainerNode && value.equals(((ContainerNode) n).getText());
+                } else {
+                    final String child = name();
+                    skipWhitespaces();
+                    if (consume("=")) {
+                        final String value = literal();
+                        filter = (n, p, s, l) -> n instanceof ContainerNode && ((ContainerNode) n).getChild(c ->
+                                c.getTagName().equals(child) && c instanceof ContainerNode &&
+                                        value.equals(((ContainerNode) c).getText())) != null;
+                    } else filter = (n, p, s, l) -> n instanceof ContainerNode &&
+                            ((ContainerNode) n).getChild(c -> c.getTagName().equals(child)) != null;
+                }
+                skipWhitespaces();
+                expect("]");
+                filters.add(filter);
+            }
+            final String source = (descendant ? "//" : "/") + this.path.substring(start, this.position);
+            return new Step(source, descendant, name, filters.toArray(new Filter[0]), positional);
+        }
+
+        private @NotNull String name() {
+            final int start = this.position;
+            while (this.position < this.path.length() && isNameChar(this.path.charAt(this.position))) this.position++;
+            if (this.position == start) throw error("Expected a name");
+            return this.path.substring(start, this.position);
+        }
+
+        private int number() {
+            final int start = this.position;
+            while (this.position < this.path.length() && Character.isDigit(this.path.charAt(this.position))) this.position++;
+            final int number;
+            try {
+                number = Integer.parseInt(this.path.substring(start, this.position));
+            } catch (NumberFormatException e) {
+                this.position = start;
+                throw error("Invalid position");
+            }
+            if (number < 1) {
+                this.position = start;
+                throw error("Positions start from 1");
+            }
+            return number;
+        }
+
+        private @NotNull String literal() {
+            skipWhitespaces();
+            if (this.position == this.path.length()) throw error("Expected a string");
+            final char quote = this.path.charAt(this.position);
+            if (quote != '\'' && quote != '"') throw error("Expected a string");
+            final int end = this.path.indexOf(quote, this.position + 1);
+            if (end == -1) throw error("Unterminated string");
+            final String literal = this.path.substring(this.position + 1, end);
+            this.position = end + 1;
+            return literal;
+        }
+
+        private void skipWhitespaces() {
+            while (this.position < this.path.length() && Character.isWhitespace(this.path.charAt(this.position)))
+                this.position++;
+        }
+
+        private boolean consume(@NotNull String token) {
+            if (this.path.startsWith(token, this.position)) {
+                this.position += token.length();
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(@NotNull String token) {
+            if (!consume(token)) throw error(String.format("Expected '%s'", token));
+        }
+
+        private @NotNull PathSyntaxException error(@NotNull String message) {
+            return new PathSyntaxException(this.path, this.position, message);
+        }
+
+        private static boolean isNameChar(char c) {
+            return Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.' || c == ':';
+        }
+    }
+}
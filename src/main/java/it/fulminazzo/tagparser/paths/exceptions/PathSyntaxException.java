@@ -0,0 +1,20 @@
+package it.fulminazzo.tagparser.paths.exceptions;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An exception thrown when compiling a path expression that is not valid.
+ */
+public class PathSyntaxException extends RuntimeException {
+
+    /**
+     * Instantiates a new Path syntax exception.
+     *
+     * @param path     the path
+     * @param position the position of the error
+     * @param message  the message
+     */
+    public PathSyntaxException(@NotNull String path, int position, @NotNull String message) {
+        super(String.format("%s at position %s of \"%s\"", message, position, path));
+    }
+}
@@ -0,0 +1,535 @@
+package it.fulminazzo.tagparser.selectors;
+
+import it.fulminazzo.tagparser.markup.INodeObject;
+import it.fulminazzo.tagparser.nodes.ContainerNode;
+import it.fulminazzo.tagparser.nodes.Node;
+import it.fulminazzo.tagparser.nodes.NodeIndex;
+import it.fulminazzo.tagparser.selectors.exceptions.SelectorSyntaxException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Predicate;
+
+/**
+ * A CSS selector compiled into a reusable matcher.
+ * Supported syntax:
+ * <ul>
+ *     <li>type (<code>div</code>), universal (<code>*</code>), id (<code>#main</code>) and class (<code>.item</code>) selectors;</li>
+ *     <li>attribute selectors: <code>[attr]</code>, <code>[attr=v]</code>, <code>[attr~=v]</code>, <code>[attr|=v]</code>,
+ *     <code>[attr^=v]</code>, <code>[attr$=v]</code> and <code>[attr*=v]</code>, with quoted or unquoted values;</li>
+ *     <li>pseudo-classes: <code>:first-child</code>, <code>:last-child</code>, <code>:only-child</code>,
+ *     <code>:nth-child(an+b)</code>, <code>:nth-last-child(an+b)</code>, <code>:empty</code> and <code>:not(compound)</code>;</li>
+ *     <li>descendant (space), child (<code>&gt;</code>), adjacent sibling (<code>+</code>) and general sibling (<code>~</code>) combinators;</li>
+ *     <li>groups of selectors separated by commas.</li>
+ * </ul>
+ * Every node is matched from right to left: the rightmost compound is checked first,
+ * starting from the cheapest tests (tag, id and classes), and only then its ancestors and siblings.
+ * <p>
+ * Selectors are immutable, so they can be shared among threads.
+ * The ones created with {@link #compile(String)} are also cached.
+ */
+public final class Selector {
+    private static final int MAX_CACHE_SIZE = 512;
+    private static final Map<String, Selector> CACHE = new ConcurrentHashMap<>();
+
+    private final @NotNull String source;
+    private final Complex @NotNull [] alternatives;
+
+    private Selector(@NotNull String source, Complex @NotNull [] alternatives) {
+        this.source = source;
+        this.alternatives = alternatives;
+    }
+
+    /**
+     * Compile the given selector, or get it from the cache if it has already been compiled.
+     *
+     * @param selector the selector
+     * @return the compiled selector
+     * @throws SelectorSyntaxException if the selector is not valid
+     */
+    public static @NotNull Selector compile(@NotNull String selector) {
+        final Selector cached = CACHE.get(selector);
+        if (cached != null) return cached;
+        final Selector compiled = new Parser(selector).parse();
+        if (CACHE.size() >= MAX_CACHE_SIZE) CACHE.clear();
+        CACHE.put(selector, compiled);
+        return compiled;
+    }
+
+    /**
+     * Get all the nodes among the given node and its descendants that match this selector, in document order.
+     * Ancestors and siblings of the given node are not considered by combinators.
+     *
+     * @param root the node to search in
+     * @return the nodes
+     */
+    public @NotNull List<Node> select(@Nullable Node root) {
+        final List<Node> nodes = new ArrayList<>();
+        if (root != null) walk(root, this.alternatives, nodes::add);
+        return nodes;
+    }
+
+    /**
+     * Get the first node among the given node and its descendants that matches this selector, in document order.
+     * Ancestors and siblings of the given node are not considered by combinators.
+     *
+     * @param root the node to search in
+     * @return the node
+     */
+    public @Nullable Node selectFirst(@Nullable Node root) {
+        final Node[] found = new Node[1];
+        if (root != null) walk(root, this.alternatives, n -> {
+            found[0] = n;
+            return false;
+        });
+        return found[0];
+    }
+
+    /**
+     * Get all the nodes of the given object that match this selector, in document order.
+     * If the object has an index, selectors that cannot match any node are rejected without visiting the tree.
+     *
+     * @param object the object
+     * @return the nodes
+     */
+    public @NotNull List<Node> select(@NotNull INodeObject object) {
+        final List<Node> nodes = new ArrayList<>();
+        final Node root = object.getRootNode();
+        if (root == null) return nodes;
+        final Complex[] alternatives = candidates(object.getIndex());
+        if (alternatives.length > 0) walk(root, alternatives, nodes::add);
+        return nodes;
+    }
+
+    /**
+     * Get the first node of the given object that matches this selector, in document order.
+     * If the object has an index, selectors that cannot match any node are rejected without visiting the tree.
+     *
+     * @param object the object
+     * @return the node
+     */
+    public @Nullable Node selectFirst(@NotNull INodeObject object) {
+        final Node[] found = new Node[1];
+        final Node root = object.getRootNode();
+        if (root == null) return null;
+        final Complex[] alternatives = candidates(object.getIndex());
+        if (alternatives.length > 0) walk(root, alternatives, n -> {
+            found[0] = n;
+            return false;
+        });
+        return found[0];
+    }
+
+    private Complex @NotNull [] candidates(@Nullable NodeIndex index) {
+        if (index == null) return this.alternatives;
+        return Arrays.stream(this.alternatives).filter(c -> c.compounds[0].mayMatch(index)).toArray(Complex[]::new);
+    }
+
+    /**
+     * Visit the given node and its descendants, keeping the path from the root and the position of every node
+     * among its siblings, so that the alternatives can be matched from right to left.
+     *
+     * @param root         the root
+     * @param alternatives the alternatives
+     * @param action       the action to execute on every match, returns false to stop
+     */
+    private static void walk(@NotNull Node root, Complex @NotNull [] alternatives, @NotNull Predicate<Node> action) {
+        Node[] path = new Node[16];
+        int[] positions = new int[16];
+        int depth = 0;
+        path[0] = root;
+        positions[0] = -1;
+        Node current = root;
+        while (true) {
+            for (Complex complex : alternatives)
+                if (complex.matchAt(0, current, depth, positions[depth], path, positions)) {
+                    if (!action.test(current)) return;
+                    break;
+                }
+
+            if (current instanceof ContainerNode && ((ContainerNode) current).childCount() > 0) {
+                if (++depth == path.length) {
+                    path = Arrays.copyOf(path, depth * 2);
+                    positions = Arrays.copyOf(positions, depth * 2);
+                }
+                current = path[depth] = ((ContainerNode) current).getChild(0);
+                positions[depth] = 0;
+                continue;
+            }
+
+            while (true) {
+                if (depth == 0) return;
+                final ContainerNode parent = (ContainerNode) path[depth - 1];
+                final int next = positions[depth] + 1;
+                if (next < parent.childCount()) {
+                    current = path[depth] = parent.getChild(next);
+                    positions[depth] = next;
+                    break;
+                }
+                current = path[--depth];
+            }
+        }
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return this.source;
+    }
+
+    /**
+     * A test on a node, given its parent and its position among its siblings.
+     */
+    @FunctionalInterface
+    private interface Condition {
+
+        boolean test(@NotNull Node node, @Nullable ContainerNode parent, int position);
+    }
+
+    /**
+     * A sequence of compound selectors joined by combinators, stored from right to left.
+     */
+    private static final class Complex {
+        private final Compound @NotNull [] compounds;
+        private final char @NotNull [] combinators;
+
+        private Complex(Compound @NotNull [] compounds, char @NotNull [] combinators) {
+            this.compounds = compounds;
+            this.combinators = combinators;
+        }
+
+        private boolean matchAt(int k, @NotNull Node node, int depth, int position,
+                                Node @NotNull [] path, int @NotNull [] positions) {
+            final ContainerNode parent = depth > 0 ? (ContainerNode) path[depth - 1] : null;
+            if (!this.compounds[k].test(node, parent, position)) return false;
+            if (k == this.compounds.length - 1) return true;
+            switch (this.combinators[k]) {
+                case '>':
+                    return depth > 0 && matchAt(k + 1, path[depth - 1], depth - 1, positions[depth - 1], path, positions);
+                case '+':
+                    return parent != null && position > 0 &&
+                            matchAt(k + 1, parent.getChild(position - 1), depth, position - 1, path, positions);
+                case '~':
+                    if (parent != null)
+                        for (int p = position - 1; p >= 0; p--)
+                            if (matchAt(k + 1, parent.getChild(p), depth, p, path, positions)) return true;
+                    return false;
+                default:
+                    for (int d = depth - 1; d >= 0; d--)
+                        if (matchAt(k + 1, path[d], d, positions[d], path, positions)) return true;
+                    return false;
+            }
+        }
+    }
+
+    /**
+     * A sequence of simple selectors that must all match the same node.
+     */
+    private static final class Compound implements Condition {
+        private final @Nullable String tagName;
+        private final @Nullable String id;
+        private final String @NotNull [] classes;
+        private final Condition @NotNull [] conditions;
+
+        private Compound(@Nullable String tagName, @Nullable String id,
+                         String @NotNull [] classes, Condition @NotNull [] conditions) {
+            this.tagName = tagName;
+            this.id = id;
+            this.classes = classes;
+            this.conditions = conditions;
+        }
+
+        @Override
+        public boolean test(@NotNull Node node, @Nullable ContainerNode parent, int position) {
+            if (this.tagName != null && !this.tagName.equals(node.getTagName())) return false;
+            final Map<String, String> attributes = node.getAttributes();
+            if (this.id != null && !this.id.equals(attributes.get("id"))) return false;
+            if (this.classes.length > 0) {
+                final String value = attributes.get("class");
+                if (value == null) return false;
+                for (String c : this.classes)
+                    if (!containsToken(value, c)) return false;
+            }
+            for (Condition condition : this.conditions)
+                if (!condition.test(node, parent, position)) return false;
+            return true;
+        }
+
+        private boolean mayMatch(@NotNull NodeIndex index) {
+            if (this.id != null && index.getNodeById(this.id) == null) return false;
+            if (this.tagName != null && index.getNodesByTagName(this.tagName).isEmpty()) return false;
+            for (String c : this.classes)
+                if (index.getNodesByClass(c).isEmpty()) return false;
+            return true;
+        }
+    }
+
+    private static boolean containsToken(@NotNull String value, @NotNull String token) {
+        final int length = token.length();
+        int from = 0;
+        int i;
+        while ((i = value.indexOf(token, from)) != -1) {
+            final int end = i + length;
+            if ((i == 0 || Character.isWhitespace(value.charAt(i - 1))) &&
+                    (end == value.length() || Character.isWhitespace(value.charAt(end))))
+                return true;
+            from = i + 1;
+        }
+        return false;
+    }
+
+    private static boolean nth(int a, int b, int index) {
+        if (a == 0) return index == b;
+        final int n = index - b;
+        return n / a >= 0 && n % a == 0;
+    }
+
+    /**
+     * A hand-written parser of selectors.
+     */
+    private static final class Parser {
+        private final @NotNull String selector;
+        private int position;
+
+        private Parser(@NotNull String selector) {
+            this.selector = selector;
+        }
+
+        private @NotNull Selector parse() {
+            final List<Complex> alternatives = new ArrayList<>();
+            do alternatives.add(parseComplex());
+            while (consume(','));
+            if (this.position < this.selector.length())
+                throw error(String.format("Unexpected character '%s'", peek()));
+            return new Selector(this.selector, alternatives.toArray(new Complex[0]));
+        }
+
+        private @NotNull Complex parseComplex() {
+            skipWhitespaces();
+            final List<Compound> compounds = new ArrayList<>();
+            final StringBuilder combinators = new StringBuilder();
+            compounds.add(parseCompound());
+            while (true) {
+                final boolean whitespace = skipWhitespaces();
+                if (this.position == this.selector.length() || peek() == ',') break;
+                final char c = peek();
+                if (c == '>' || c == '+' || c == '~') {
+                    this.position++;
+                    skipWhitespaces();
+                    combinators.append(c);
+                } else if (whitespace) combinators.append(' ');
+                else throw error(String.format("Unexpected character '%s'", c));
+                compounds.add(parseCompound());
+            }
+            Collections.reverse(compounds);
+            return new Complex(compounds.toArray(new Compound[0]), combinators.reverse().toString().toCharArray());
+        }
+
+        private @NotNull Compound parseCompound() {
+            final int start = this.position;
+            String tagName = null;
+            String id = null;
+            final List<String> classes = new ArrayList<>();
+            final List<Condition> conditions = new ArrayList<>();
+
+            if (this.position < this.selector.length() && peek() == '*') this.position++;
+            else if (this.position < this.selector.length() && isIdentifierStart(peek())) tagName = identifier();
+
+            while (this.position < this.selector.length()) {
+                final char c = peek();
+                if (c == '#') {
+                    this.position++;
+                    final String value = identifier();
+                    if (id == null) id = value;
+                    else conditions.add((n, p, i) -> value.equals(n.getAttribute("id")));
+                } else if (c == '.') {
+                    this.position++;
+                    classes.add(identifier());
+                } else if (c == '[') {
+                    this.position++;
+                    conditions.add(parseAttribute());
+                } else if (c == ':') {
+                    this.position++;
+                    conditions.add(parsePseudoClass());
+                } else break;
+            }
+
+            if (this.position == start) throw error("Expected a selector");
+            return new Compound(tagName, id, classes.toArray(new String[0]), conditions.toArray(new Condition[0]));
+        }
+
+        private @NotNull Condition parseAttribute() {
+            skipWhitespaces();
+            final String name = identifier();
+            skipWhitespaces();
+            if (consume(']')) return (n, p, i) -> n.getAttributes().containsKey(name);
+
+            char operator = '=';
+            if ("~|^$*".indexOf(peek()) != -1) operator = this.selector.charAt(this.position++);
+            expect('=');
+            skipWhitespaces();
+            final String expected = isQuote(peek()) ? quoted() : identifier();
+            skipWhitespaces();
+            expect(']');
+
+            switch (operator) {
+                case '~':
+                    return (n, p, i) -> {
+                        final String value = n.getAttribute(name);
+                        return value != null && !expected.isEmpty() && containsToken(value, expected);
+                    };
+                case '|':
+                    return (n, p, i) -> {
+                        final String value = n.getAttribute(name);
+                        return value != null && (value.equals(expected) || value.startsWith(expected + "-"));
+                    };
+                case '^':
+                    return (n, p, i) -> {
+                        final String value = n.getAttribute(name);
+                        return value != null && !expected.isEmpty() && value.startsWith(expected);
+                    };
+                case '$':
+                    return (n, p, i) -> {
+                        final String value = n.getAttribute(name);
+                        return value != null && !expected.isEmpty() && value.endsWith(expected);
+                    };
+                case '*':
+                    return (n, p, i) -> {
+                        final String value = n.getAttribute(name);
+                        return value != null && !expected.isEmpty() && value.contains(expected);
+                    };
+                default:
+                    return (n, p, i) -> expected.equals(n.getAttribute(name));
+            }
+        }
+
+        private @NotNull Condition parsePseudoClass() {
+            final int start = this.position;
+            final String name = identifier().toLowerCase();
+            switch (name) {
+                case "first-child":
+                    return (n, p, i) -> p != null && i == 0;
+                case "last-child":
+                    return (n, p, i) -> p != null && i == p.childCount() - 1;
+                case "only-child":
+                    return (n, p, i) -> p != null && p.childCount() == 1;
+                case "empty":
+                    return (n, p, i) -> {
+                        if (!(n instanceof ContainerNode)) return true;
+                        final ContainerNode container = (ContainerNode) n;
+                        return container.getChild() == null && (container.getText() == null || container.getText().isEmpty());
+                    };
+                case "nth-child":
+                case "nth-last-child": {
+                    final int[] ab = parseNth();
+                    final int a = ab[0];
+                    final int b = ab[1];
+                    if (name.equals("nth-child")) return (n, p, i) -> p != null && nth(a, b, i + 1);
+                    else return (n, p, i) -> p != null && nth(a, b, p.childCount() - i);
+                }
+                case "not": {
+                    expect('(');
+                    skipWhitespaces();
+                    final Compound compound = parseCompound();
+                    skipWhitespaces();
+                    expect(')');
+                    return (n, p, i) -> !compound.test(n, p, i);
+                }
+                default:
+                    this.position = start;
+                    throw error(String.format("Unknown pseudo-class '%s'", name));
+            }
+        }
+
+        private int @NotNull [] parseNth() {
+            expect('(');
+            final int start = this.position;
+            final int end = this.selector.indexOf(')', start);
+            if (end == -1) throw error("Expected ')'");
+            final String expression = this.selector.substring(start, end).replaceAll("\\s+", "").toLowerCase();
+            this.position = end + 1;
+            try {
+                if (expression.equals("odd")) return new int[]{2, 1};
+                if (expression.equals("even")) return new int[]{2, 0};
+                final int n = expression.indexOf('n');
+                if (n == -1) return new int[]{0, Integer.parseInt(expression)};
+                final String a = expression.substring(0, n);
+                final String b = expression.substring(n + 1);
+                return new int[]{
+                        a.isEmpty() || a.equals("+") ? 1 : a.equals("-") ? -1 : Integer.parseInt(a),
+                        b.isEmpty() ? 0 : Integer.parseInt(b.startsWith("+") ? b.substring(1) : b)
+                };
+            } catch (NumberFormatException e) {
+                this.position = start;
+                throw error(String.format("Invalid expression '%s'", expression));
+            }
+        }
+
+        private @NotNull String identifier() {
+            final StringBuilder builder = new StringBuilder();
+            while (this.position < this.selector.length()) {
+                final char c = peek();
+                if (c == '\\' && this.position + 1 < this.selector.length()) {
+                    builder.append(this.selector.charAt(this.position + 1));
+                    this.position += 2;
+                } else if (isIdentifierChar(c)) {
+                    builder.append(c);
+                    this.position++;
+                } else break;
+            }
+            if (builder.length() == 0) throw error("Expected an identifier");
+            return builder.toString();
+        }
+
+        private @NotNull String quoted() {
+            final char quote = this.selector.charAt(this.position++);
+            final StringBuilder builder = new StringBuilder();
+            while (this.position < this.selector.length()) {
+                final char c = this.selector.charAt(this.position++);
+                if (c == quote) return builder.toString();
+                if (c == '\\' && this.position < this.selector.length()) builder.append(this.selector.charAt(this.position++));
+                else builder.append(c);
+            }
+            throw error("Unterminated string");
+        }
+
+        private boolean skipWhitespaces() {
+            final int start = this.position;
+            while (this.position < this.selector.length() && Character.isWhitespace(peek())) this.position++;
+            return this.position > start;
+        }
+
+        private boolean consume(char c) {
+            if (this.position < this.selector.length() && peek() == c) {
+                this.position++;
+                return true;
+            }
+            return false;
+        }
+
+        private void expect(char c) {
+            if (!consume(c)) throw error(String.format("Expected '%s'", c));
+        }
+
+        private char peek() {
+            return this.position < this.selector.length() ? this.selector.charAt(this.position) : '\0';
+        }
+
+        private @NotNull SelectorSyntaxException error(@NotNull String message) {
+            return new SelectorSyntaxException(this.selector, this.position, message);
+        }
+
+        private static boolean isIdentifierStart(char c) {
+            return Character.isLetter(c) || c == '_' || c == '-' || c == '\\' || c >= 0x80;
+        }
+
+        private static boolean isIdentifierChar(char c) {
+            return isIdentifierStart(c) || Character.isDigit(c);
+        }
+
+        private static boolean isQuote(char c) {
+            return c == '"' || c == '\'';
+        }
+    }
+}
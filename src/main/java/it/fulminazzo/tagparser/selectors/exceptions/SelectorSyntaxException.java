@@ -0,0 +1,20 @@
+package it.fulminazzo.tagparser.selectors.exceptions;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An exception thrown when compiling a selector that is not valid.
+ */
+public class SelectorSyntaxException extends RuntimeException {
+
+    /**
+     * Instantiates a new Selector syntax exception.
+     *
+     * @param selector the selector
+     * @param position the position of the error
+     * @param message  the message
+     */
+    public SelectorSyntaxException(@NotNull String selector, int position, @NotNull String message) {
+        super(String.format("%s at position %s of \"%s\"", message, position, selector));
+    }
+}
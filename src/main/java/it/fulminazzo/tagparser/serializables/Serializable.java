@@ -28,7 +28,8 @@ public interface Serializable {
         Class<?> clazz = this.getClass();
         while (clazz != Object.class) {
             for (Field field : clazz.getDeclaredFields())
-                if (!field.getName().equals("this$0") && !Modifier.isStatic(field.getModifiers())) {
+                if (!field.getName().equals("this$0") && !Modifier.isStatic(field.getModifiers())
+                        && !Modifier.isTransient(field.getModifiers())) {
                     if (builder.length() != 0 && builder.charAt(builder.length() - 1) != '\n') builder.append("\n");
                     builder.append(field.getName()).append(":");
                     try {
@@ -63,7 +64,8 @@ public interface Serializable {
         Class<?> clazz = this.getClass();
         while (clazz != Object.class) {
             for (Field field : clazz.getDeclaredFields())
-                if (!field.getName().equals("this$0") && !Modifier.isStatic(field.getModifiers())) {
+                if (!field.getName().equals("this$0") && !Modifier.isStatic(field.getModifiers())
+                        && !Modifier.isTransient(field.getModifiers())) {
                     if (builder.length() != 1) builder.append(",");
                     builder.append("\"").append(field.getName()).append("\":");
                     try {
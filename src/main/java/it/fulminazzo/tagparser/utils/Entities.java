@@ -0,0 +1,247 @@
+package it.fulminazzo.tagparser.utils;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A single pass decoder and escaper of the character references of HTML5.
+ * <p>
+ * The decoder supports
+ * all the named references (like &amp;amp; or &amp;nbsp;) and the decimal and hexadecimal ones (like &amp;#39; or &amp;#x27;).
+ * <p>
+ * The named references are looked up in a trie, loaded from <i>entities.txt</i> the first time it is needed.
+ * As in HTML5, the longest name is matched and the old references without the final semicolon (like &amp;copy) are recognized.
+ * Numeric references to invalid characters are replaced with U+FFFD,
+ * while the ones in the range 0x80-0x9F are mapped to their windows-1252 characters.
+ * <p>
+ * The escaper replaces only the characters that are special in the given context:
+ * {@link #TEXT}, {@link #ATTRIBUTE} or {@link #RAW_TEXT}.
+ */
+public final class Entities {
+    /**
+     * The text of an element: &amp;, &lt;, &gt;, " and ' are escaped.
+     */
+    public static final int TEXT = 0;
+    /**
+     * The value of an attribute, written between double quotes: &amp; and " are escaped.
+     */
+    public static final int ATTRIBUTE = 1;
+    /**
+     * The text of an element that is not parsed, like &lt;script&gt; or &lt;style&gt;:
+     * only &lt;/ is escaped as &lt;\/, so that the element cannot be closed early.
+     */
+    public static final int RAW_TEXT = 2;
+
+    private static final char REPLACEMENT_CHARACTER = '\uFFFD';
+    private static final char[] WINDOWS_1252 = new char[]{
+            '\u20AC', '\u0081', '\u201A', '\u0192', '\u201E', '\u2026', '\u2020', '\u2021',
+            '\u02C6', '\u2030', '\u0160', '\u2039', '\u0152', '\u008D', '\u017D', '\u008F',
+            '\u0090', '\u2018', '\u2019', '\u201C', '\u201D', '\u2022', '\u2013', '\u2014',
+            '\u02DC', '\u2122', '\u0161', '\u203A', '\u0153', '\u009D', '\u017E', '\u0178'
+    };
+
+    private Entities() {
+    }
+
+    /**
+     * Decode the character references of the given text.
+     *
+     * @param text the text
+     * @return the decoded text, or the same instance if there was nothing to decode
+     */
+    public static String decode(@Nullable String text) {
+        return decode(text, false);
+    }
+
+    /**
+     * Decode the character references of the given attribute value.
+     * Differently from {@link #decode(String)}, named references without the final semicolon
+     * are not decoded if followed by a letter, a digit or =, so that values like <i>?a=1&amp;copy=2</i> are kept.
+     *
+     * @param value the value
+     * @return the decoded value, or the same instance if there was nothing to decode
+     */
+    public static String decodeAttribute(@Nullable String value) {
+        return decode(value, true);
+    }
+
+    /**
+     * Escape the given text in the given context.
+     *
+     * @param text    the text
+     * @param context the context: {@link #TEXT}, {@link #ATTRIBUTE} or {@link #RAW_TEXT}
+     * @return the escaped text, or the same instance if there was nothing to escape
+     */
+    public static String escape(@Nullable String text, int context) {
+        if (text == null) return null;
+        final int length = text.length();
+        StringBuilder output = null;
+        int copied = 0;
+        for (int i = 0; i < length; i++) {
+            final String replacement = escape(text, i, context);
+            if (replacement == null) continue;
+            if (output == null) output = new StringBuilder(length + 16);
+            output.append(text, copied, i).append(replacement);
+            copied = i + 1;
+        }
+        if (output == null) return text;
+        return output.append(text, copied, length).toString();
+    }
+
+    /**
+     * Get the replacement of the character at the given index of the text in the given context.
+     *
+     * @param text    the text
+     * @param index   the index
+     * @param context the context: {@link #TEXT}, {@link #ATTRIBUTE} or {@link #RAW_TEXT}
+     * @return the replacement, or null if the character should be written as it is
+     */
+    public static @Nullable String escape(@NotNull CharSequence text, int index, int context) {
+        switch (text.charAt(index)) {
+            case '&':
+                return context == RAW_TEXT ? null : "&amp;";
+            case '"':
+                return context == RAW_TEXT ? null : "&quot;";
+            case '<':
+                return context == TEXT ? "&lt;" : null;
+            case '>':
+                return context == TEXT ? "&gt;" : null;
+            case '\'':
+                return context == TEXT ? "&apos;" : null;
+            case '/':
+                return context == RAW_TEXT && index > 0 && text.charAt(index - 1) == '<' ? "\\/" : null;
+            default:
+                return null;
+        }
+    }
+
+    private static String decode(@Nullable String text, boolean attribute) {
+        if (text == null) return null;
+        int i = text.indexOf('&');
+        if (i == -1) return text;
+
+        final int length = text.length();
+        StringBuilder output = null;
+        int copied = 0;
+        while (i != -1) {
+            int end = -1;
+            int codePoint = -1;
+            String replacement = null;
+            if (i + 1 < length && text.charAt(i + 1) == '#') {
+                final boolean hexadecimal = i + 2 < length && (text.charAt(i + 2) | 0x20) == 'x';
+                final int radix = hexadecimal ? 16 : 10;
+                int j = i + (hexadecimal ? 3 : 2);
+                final int start = j;
+                int value = 0;
+                for (int digit; j < length && (digit = Character.digit(text.charAt(j), radix)) != -1; j++)
+                    value = Math.min(value * radix + digit, Character.MAX_CODE_POINT + 1);
+                if (j > start) {
+                    end = j < length && text.charAt(j) == ';' ? j + 1 : j;
+                    codePoint = toCodePoint(value);
+                }
+            } else {
+                Trie node = Trie.ROOT;
+                for (int j = i + 1; j < length && (node = node.get(text.charAt(j))) != null; j++)
+                    if (node.value != null) {
+                        end = j + 1;
+                        replacement = node.value;
+                    }
+                if (end != -1 && attribute && text.charAt(end - 1) != ';' && end < length) {
+                    final char next = text.charAt(end);
+                    if (next == '=' || Character.isLetterOrDigit(next)) end = -1;
+                }
+            }
+
+            if (end == -1) {
+                i = text.indexOf('&', i + 1);
+                continue;
+            }
+            if (output == null) output = new StringBuilder(length);
+            output.append(text, copied, i);
+            if (replacement != null) output.append(replacement);
+            else output.appendCodePoint(codePoint);
+            copied = end;
+            i = text.indexOf('&', end);
+        }
+
+        if (output == null) return text;
+        return output.append(text, copied, length).toString();
+    }
+
+    private static int toCodePoint(int value) {
+        if (value == 0 || value > Character.MAX_CODE_POINT) return REPLACEMENT_CHARACTER;
+        if (value >= Character.MIN_SURROGATE && value <= Character.MAX_SURROGATE) return REPLACEMENT_CHARACTER;
+        if (value >= 0x80 && value <= 0x9F) return WINDOWS_1252[value - 0x80];
+        return value;
+    }
+
+    /**
+     * A node of the trie of the named references.
+     * Its children are kept sorted by character, and looked up with a binary search.
+     */
+    private static final class Trie {
+        private static final Trie ROOT = load();
+
+        private char @NotNull [] characters = new char[0];
+        private Trie @NotNull [] children = new Trie[0];
+        private @Nullable String value;
+
+        private @Nullable Trie get(char c) {
+            final int i = Arrays.binarySearch(this.characters, c);
+            return i < 0 ? null : this.children[i];
+        }
+
+        private @NotNull Trie getOrAdd(char c) {
+            int i = Arrays.binarySearch(this.characters, c);
+            if (i >= 0) return this.children[i];
+            i = -i - 1;
+            final int size = this.characters.length;
+            final char[] characters = new char[size + 1];
+            final Trie[] children = new Trie[size + 1];
+            System.arraycopy(this.characters, 0, characters, 0, i);
+            System.arraycopy(this.children, 0, children, 0, i);
+            System.arraycopy(this.characters, i, characters, i + 1, size - i);
+            System.arraycopy(this.children, i, children, i + 1, size - i);
+            characters[i] = c;
+            children[i] = new Trie();
+            this.characters = characters;
+            this.children = children;
+            return children[i];
+        }
+
+        /**
+         * Load the named references from <i>entities.txt</i>.
+         * Every line contains the name of a reference and the hexadecimal code points it stands for, separated by commas.
+         *
+         * @return the root of the trie
+         */
+        private static @NotNull Trie load() {
+            final Trie root = new Trie();
+            try (InputStream stream = Entities.class.getResourceAsStream("entities.txt")) {
+                if (stream == null) throw new IllegalStateException("Could not find entities.txt");
+                final BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.US_ASCII));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    final int space = line.indexOf(' ');
+                    if (space == -1) continue;
+                    Trie node = root;
+                    for (int i = 0; i < space; i++) node = node.getOrAdd(line.charAt(i));
+                    final StringBuilder value = new StringBuilder(2);
+                    for (String codePoint : line.substring(space + 1).split(","))
+                        value.appendCodePoint(Integer.parseInt(codePoint, 16));
+                    node.value = value.toString();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return root;
+        }
+    }
+}
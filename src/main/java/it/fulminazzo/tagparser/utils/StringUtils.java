@@ -2,25 +2,11 @@ package it.fulminazzo.tagparser.utils;
 
 import org.jetbrains.annotations.Nullable;
 
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 /**
  * The type String utils.
  */
 public class StringUtils {
     private static final char[] REPLACED_CHARS = new char[]{'"', '\''};
-    private static final Map<String, String> PARSED_CHARS = new LinkedHashMap<String, String>(){{
-        put("&lt;", "<");
-        put("&#60;", "<");
-        put("&gt;", ">");
-        put("&#62;", ">");
-        put("&apos;", "'");
-        put("&quot;", "\"");
-        put("&amp;", "&");
-    }};
 
     /**
      * Unescapes some special characters.
@@ -36,48 +22,29 @@ public class StringUtils {
         if (string.startsWith("'") && string.endsWith("'") ||
                 string.startsWith("\"") && string.endsWith("\""))
             string = string.substring(1, string.length() - 1);
+        if (string.indexOf('\\') == -1) return string;
         for (char c : REPLACED_CHARS) string = string.replace("\\" + c, "" + c);
         return string;
     }
 
     /**
-     * Parse content using entity-references of XML.
+     * Parse content decoding its character references, as specified by {@link Entities#decode(String)}.
      *
      * @param content the content
      * @return the string
      */
     public static String parseContent(@Nullable String content) {
-        if (content == null) return null;
-        for (String key : PARSED_CHARS.keySet())
-            content = content.replace(key, PARSED_CHARS.get(key));
-        return content;
+        return Entities.decode(content);
     }
 
     /**
-     * Un parse content using entity-references of XML.
+     * Un parse content using character references.
+     * References already in the content are kept: it is first decoded and then escaped as {@link Entities#TEXT}.
      *
      * @param content the content
      * @return the string
      */
     public static String unParseContent(@Nullable String content) {
-        if (content == null) return null;
-        for (String reference : PARSED_CHARS.keySet()) {
-            final String parsed = PARSED_CHARS.get(reference);
-            final Pattern pattern = Pattern.compile(parsed + "(.{0,5})");
-            Matcher matcher = pattern.matcher(content);
-            int i = 0;
-            while (matcher.find(i)) {
-                final String match = matcher.group();
-                final String group = matcher.group(1);
-                final String found = parsed + group.split(" ")[0];
-                if (PARSED_CHARS.keySet().stream().noneMatch(found::contains)) {
-                    final int end = matcher.end() - match.length();
-                    content = content.substring(0, end) + reference + content.substring(end + 1);
-                    matcher = pattern.matcher(content);
-                }
-                i += group.length();
-            }
-        }
-        return content;
+        return Entities.escape(Entities.decode(content), Entities.TEXT);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,81 @@
+package it.fulminazzo.tagparser.markup;
+
+import it.fulminazzo.tagparser.nodes.NodeTest;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Measures the queries per second of N readers while 1 writer updates the document every millisecond,
+ * through a {@link ConcurrentNodeObject} or by locking the {@link HTMLObject} itself.
+ * Run with <code>gradle benchmark</code>.
+ */
+@Tag("benchmark")
+class ConcurrentNodeObjectBenchmark {
+    private static final File FILE = new File(NodeTest.RESOURCES, "index.html");
+    private static final long DURATION = 1_000;
+
+    @Test
+    void benchmarkContention() throws Exception {
+        final int processors = Runtime.getRuntime().availableProcessors();
+        for (int readers : new int[]{1, 4, 16}) {
+            final HTMLObject locked = new HTMLObject(FILE);
+            final ConcurrentNodeObject<HTMLObject> concurrent = new ConcurrentNodeObject<>(new HTMLObject(FILE));
+            final double synchronizedRate = measure(readers,
+                    () -> {
+                        synchronized (locked) {
+                            return locked.getNodesByTagName("p").size();
+                        }
+                    },
+                    update -> {
+                        synchronized (locked) {
+                            update.accept(locked);
+                        }
+                    });
+            final double optimisticRate = measure(readers, () -> concurrent.getNodes("p").size(), concurrent::update);
+            System.out.printf("  %2d readers (%d cores): synchronized %9.0f queries/s, optimistic %9.0f queries/s%n",
+                    readers, processors, synchronizedRate, optimisticRate);
+        }
+    }
+
+    private static double measure(int readers, Supplier<Integer> query,
+                                  Consumer<Consumer<HTMLObject>> writer) throws Exception {
+        final ExecutorService executor = Executors.newFixedThreadPool(readers + 1);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final LongAdder queries = new LongAdder();
+        try {
+            final List<Future<?>> tasks = new ArrayList<>();
+            tasks.add(executor.submit(() -> {
+                int n = 0;
+                while (running.get()) {
+                    final String value = String.valueOf(n++);
+                    writer.accept(o -> Objects.requireNonNull(o.getBody()).setAttribute("n", value));
+                    LockSupport.parkNanos(1_000_000);
+                }
+            }));
+            for (int i = 0; i < readers; i++)
+                tasks.add(executor.submit(() -> {
+                    while (running.get()) {
+                        if (query.get() < 0) throw new IllegalStateException();
+                        queries.increment();
+                    }
+                }));
+            Thread.sleep(DURATION);
+            running.set(false);
+            for (Future<?> task : tasks) task.get();
+        } finally {
+            executor.shutdownNow();
+        }
+        return queries.sum() * 1000.0 / DURATION;
+    }
+}
@@ -0,0 +1,78 @@
+package it.fulminazzo.tagparser.markup;
+
+import it.fulminazzo.tagparser.nodes.FrozenNode;
+import it.fulminazzo.tagparser.nodes.Node;
+import it.fulminazzo.tagparser.nodes.NodeTest;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ConcurrentNodeObjectTest {
+    private static final File file = new File(NodeTest.RESOURCES, "index2.html");
+
+    @Test
+    void testReadsAfterUpdate() {
+        final ConcurrentNodeObject<HTMLObject> object = new ConcurrentNodeObject<>(new HTMLObject(file));
+        final FrozenNode before = object.getSnapshot();
+        assertNotNull(before);
+        assertEquals(new HTMLObject(file).toHTML(), object.toHTML());
+
+        object.update(o -> Objects.requireNonNull(o.getBody()).setAttribute("class", "updated"));
+        assertEquals("updated", Objects.requireNonNull(object.getNode("body")).getAttribute("class"));
+        assertNull(Objects.requireNonNull(before.getNode("body")).getAttribute("class"));
+        assertEquals(object.getNodes("body"), object.read(s -> Objects.requireNonNull(s).getNodes("body")));
+
+        final HTMLObject expected = new HTMLObject(file);
+        Objects.requireNonNull(expected.getBody()).setAttribute("class", "updated");
+        assertEquals(expected.toHTML(), object.toHTML());
+    }
+
+    @Test
+    void testEmpty() {
+        final ConcurrentNodeObject<HTMLObject> object = new ConcurrentNodeObject<>(new HTMLObject());
+        assertNull(object.getSnapshot());
+        assertNull(object.getNode("body"));
+        assertTrue(object.getNodes("body").isEmpty());
+        object.update(o -> o.setRootNode("<html><body></body></html>"));
+        assertNotNull(object.getNode("body"));
+    }
+
+    @Test
+    void testConcurrentUpdates() throws Exception {
+        final int updates = 200;
+        final ConcurrentNodeObject<HTMLObject> object = new ConcurrentNodeObject<>(new HTMLObject(file));
+        final ExecutorService executor = Executors.newFixedThreadPool(5);
+        try {
+            final Future<?> writer = executor.submit(() -> {
+                for (int i = 1; i <= updates; i++) {
+                    final String value = String.valueOf(i);
+                    object.update(o -> Objects.requireNonNull(o.getBody()).setAttribute("n", value));
+                }
+            });
+            final List<Future<?>> readers = new ArrayList<>();
+            for (int r = 0; r < 4; r++)
+                readers.add(executor.submit(() -> {
+                    int last = 0;
+                    while (last < updates) {
+                        final Node body = new HTMLObject(object.toHTML()).getBody();
+                        final String value = Objects.requireNonNull(body).getAttribute("n");
+                        final int current = value == null ? 0 : Integer.parseInt(value);
+                        // Readers never see an update undone.
+                        assertTrue(current >= last);
+                        last = current;
+                    }
+                }));
+            writer.get(30, TimeUnit.SECONDS);
+            for (Future<?> reader : readers) reader.get(30, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(String.valueOf(updates), Objects.requireNonNull(object.getNode("body")).getAttribute("n"));
+    }
+}
@@ -3,7 +3,9 @@ package it.fulminazzo.tagparser.markup;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import it.fulminazzo.tagparser.nodes.ContainerNode;
+import it.fulminazzo.tagparser.nodes.FrozenNode;
 import it.fulminazzo.tagparser.nodes.Node;
+import it.fulminazzo.tagparser.nodes.NodeIndex;
 import it.fulminazzo.tagparser.nodes.NodeTest;
 import it.fulminazzo.yamlparser.utils.FileUtils;
 import org.jetbrains.annotations.NotNull;
@@ -14,6 +16,7 @@ import org.yaml.snakeyaml.Yaml;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -33,6 +36,24 @@ class HTMLObjectTest {
         assertEquals(fileToString(), FileUtils.readFileToString(tmpFile));
     }
 
+    @Test
+    void testDecodeAttributesOnce() {
+        final HTMLObject object = new HTMLObject("<html><body TITLE=\"&amp;lt; &quot;x&quot;\" class=\"&quot;y&quot;\"></body></html>");
+        final Node body = object.getBody();
+        assertNotNull(body);
+        assertEquals("&lt; \"x\"", body.getAttribute("title"));
+        assertEquals("\"y\"", body.getAttribute("class"));
+    }
+
+    @Test
+    void testRawTextNotEscaped() {
+        final HTMLObject object = new HTMLObject("<html><head><script>if (a && b) c('\\/');</script>" +
+                "<title>a && b</title></head></html>");
+        final String html = object.toHTML();
+        assertTrue(html.contains("<script>if (a && b) c('\\/');</script>"), html);
+        assertTrue(html.contains("<title>a &amp;&amp; b</title>"), html);
+    }
+
     @Test
     void testGetHead() {
         final Node head = htmlObject.getHead();
@@ -80,6 +101,123 @@ class HTMLObjectTest {
             assertEquals(src[i], styles.get(i).getAttribute("href"));
     }
 
+    @Test
+    void testIndexedQueries() {
+        final HTMLObject indexed = new HTMLObject(file).enableIndex();
+        assertNotNull(indexed.getIndex());
+        assertEquals(htmlObject.getHead(), indexed.getHead());
+        assertEquals(htmlObject.getBody(), indexed.getBody());
+        assertIterableEquals(htmlObject.getScripts(), indexed.getScripts());
+        assertIterableEquals(htmlObject.getStyles(), indexed.getStyles());
+        assertNull(htmlObject.getIndex());
+    }
+
+    @Test
+    void testCompactDocument() {
+        final HTMLObject compact = new HTMLObject().setDocument(file);
+        assertNotNull(compact.getDocument());
+        assertEquals(htmlObject.toHTML(), compact.toHTML());
+        assertIterableEquals(htmlObject.getStyles(), compact.getStyles());
+
+        assertIterableEquals(htmlObject.getScripts(), compact.getScripts());
+        assertEquals(htmlObject.getNodeById("container"), compact.getNodeById("container"));
+        assertIterableEquals(htmlObject.getNodesByClass("top-left"), compact.getNodesByClass("top-left"));
+        assertEquals(htmlObject.freeze(), compact.freeze());
+        assertEquals(htmlObject.toMap(), compact.toMap());
+        // Queries, writing, freezing and maps do not convert the document.
+        assertNotNull(compact.getDocument());
+        assertEquals(htmlObject.getHead(), compact.getHead());
+        assertEquals(htmlObject.getBody(), compact.getBody());
+
+        final HTMLObject converted = new HTMLObject(file).compact();
+        assertNotNull(converted.getDocument());
+        assertEquals(htmlObject.toHTML(), converted.toHTML());
+        assertNull(converted.setRootNode(htmlObject.getRootNode()).getDocument());
+    }
+
+    @Test
+    void testCompactDocumentConvertedOnce() {
+        final HTMLObject compact = new HTMLObject().setDocument(file);
+        final Node root = compact.getRootNode();
+        assertNotNull(root);
+        assertNull(compact.getDocument());
+        assertSame(root, compact.getRootNode());
+
+        final Node body = compact.getBody();
+        assertNotNull(body);
+        body.setAttribute("class", "changed");
+        assertTrue(compact.toHTML().contains("<body class=\"changed\">"));
+    }
+
+    @Test
+    void testCompactDocumentHeadAndBody() {
+        final HTMLObject compact = new HTMLObject().setDocument(file);
+        final Node body = compact.getBody();
+        assertNotNull(body);
+        assertNull(compact.getDocument());
+        assertSame(body, compact.getBody());
+        assertSame(body, compact.getHead().getNext());
+
+        ((ContainerNode) body).addChild(new ContainerNode("footer"));
+        assertTrue(compact.toHTML().contains("<footer></footer>"));
+    }
+
+    @Test
+    void testCompactDocumentIndexed() {
+        final HTMLObject compact = new HTMLObject().setDocument(file).enableIndex();
+        final NodeIndex index = compact.getIndex();
+        assertNotNull(index);
+        assertNull(compact.getDocument());
+        assertSame(index, compact.getIndex());
+        assertIterableEquals(htmlObject.getNodesByClass("top-left"), compact.getNodesByClass("top-left"));
+        assertSame(compact.getNodeById("container"), compact.getRootNode().getNode(n -> "container".equals(n.getAttribute("id"))));
+    }
+
+    @Test
+    void testDeferChildren() {
+        final HTMLObject deferred = new HTMLObject().deferChildren().setRootNode(file);
+        assertNotNull(deferred);
+        assertEquals(htmlObject.getHead(), deferred.getHead());
+        assertEquals(htmlObject.toHTML(), deferred.toHTML());
+        assertEquals(htmlObject.getRootNode(), deferred.getRootNode());
+    }
+
+    @Test
+    void testFreeze() {
+        final FrozenNode snapshot = htmlObject.freeze();
+        assertNotNull(snapshot);
+        final HTMLObject copy = new HTMLObject().setRootNode(snapshot);
+        assertEquals(htmlObject.toHTML(), copy.toHTML());
+        assertEquals(htmlObject.getHead(), copy.getHead());
+        assertEquals(htmlObject.toHTML(), "<!DOCTYPE html>\n" + snapshot.toHTML(htmlObject.getNodeFactory()));
+        assertNull(new HTMLObject().freeze());
+    }
+
+    @Test
+    void testRawTextNotDecoded() {
+        final String html = "<!DOCTYPE html>\n<html>\n" +
+                "    <head>\n        <script>var s = \"&lt;b&gt;\" &amp;&amp; x;</script>\n" +
+                "        <STYLE>p::after { content: \"&amp;\"; }</STYLE>\n    </head>\n" +
+                "    <body>&lt;b&gt;</body>\n</html>";
+        final HTMLObject object = new HTMLObject(html);
+        final Node script = object.getScripts().iterator().next();
+        assertEquals("var s = \"&lt;b&gt;\" &amp;&amp; x;", ((ContainerNode) script).getText());
+        assertEquals("<b>", ((ContainerNode) Objects.requireNonNull(object.getBody())).getText());
+        assertEquals(html, object.toHTML());
+        assertEquals(html, new HTMLObject().setDocument(html).toHTML());
+        assertEquals(html, new HTMLObject().deferChildren().setRootNode(html).toHTML());
+    }
+
+    @Test
+    void testGetStylesIgnoresCase() {
+        final String html = "<html><head><link rel=\"stylesheet\" href=\"a.css\"/><LINK rel=\"stylesheet\" href=\"b.css\"/>" +
+                "<link rel=\"icon\" href=\"c.ico\"/></head><body></body></html>";
+        final HTMLObject object = new HTMLObject(html);
+        assertEquals(Arrays.asList("a.css", "b.css"),
+                object.getStyles().stream().map(n -> n.getAttribute("href")).collect(Collectors.toList()));
+        assertEquals(object.getStyles(), object.enableIndex().getStyles());
+    }
+
     @Test
     void testHTMLObject() throws IOException {
         assertEquals(fileToString(), htmlObject.toHTML());
@@ -191,4 +329,16 @@ class HTMLObjectTest {
         }};
         assertEquals(expected, htmlObject.toMap());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testStreamElementsWithBuilder() {
+        final List<ContainerNode> buttons = new ArrayList<>();
+        new HTMLObject.HTMLBuilder().from(new File(NodeTest.RESOURCES, "index.html"))
+                .iterateElements("button").forEachRemaining(buttons::add);
+        assertEquals(3, buttons.size());
+        for (ContainerNode button : buttons) {
+            assertNotNull(button.getAttribute("aria-expanded"));
+            assertEquals("svg", button.getChild().getTagName());
+        }
+    }
+}
@@ -80,6 +80,34 @@ class XMLObjectTest {
         assertEquals(fileToString(), FileUtils.readFileToString(tmpFile));
     }
 
+    @Test
+    void testCompactDocument() {
+        final XMLObject compact = new XMLObject().setDocument(file);
+        assertNotNull(compact.getDocument());
+        assertEquals(xmlObject.getAttributes(), compact.getAttributes());
+        assertEquals(xmlObject.toHTML(), compact.toHTML());
+        assertEquals(xmlObject.toMap(), compact.toMap());
+        assertNotNull(compact.getDocument());
+
+        assertEquals(xmlObject.getRootNode(), compact.getRootNode());
+        assertNull(compact.getDocument());
+        assertSame(compact.getRootNode(), compact.getRootNode());
+    }
+
+    @Test
+    void testPrologOnlyBeforeFirstTag() {
+        final String xml = "<?xml version=\"1.0\"?><r><?xml version=\"2.0\"?><a>1</a></r>";
+        final XMLObject[] objects = new XMLObject[]{
+                new XMLObject(xml),
+                new XMLObject().setDocument(xml),
+                new XMLObject().deferChildren().setRootNode(xml)
+        };
+        for (XMLObject object : objects) {
+            assertTrue(object.toHTML().contains("<r>"));
+            assertEquals("1.0", object.getAttributes().get("version"));
+        }
+    }
+
     @ParameterizedTest
     @MethodSource("getXMLObjectTests")
     void testXMLObjects(final String fileName, final String documentType,
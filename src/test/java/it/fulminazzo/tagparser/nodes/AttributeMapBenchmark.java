@@ -0,0 +1,72 @@
+package it.fulminazzo.tagparser.nodes;
+
+import it.fulminazzo.tagparser.markup.HTMLObject;
+import it.fulminazzo.tagparser.markup.XMLObject;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Measures the memory used by the attributes of every node,
+ * stored in an {@link AttributeMap} or in a {@link LinkedHashMap} as before.
+ * Run with <code>gradle benchmark</code>.
+ */
+@Tag("benchmark")
+class AttributeMapBenchmark {
+    private static final int COPIES = 200;
+
+    @Test
+    void benchmarkTestResources() {
+        final List<Node> nodes = new ArrayList<>();
+        for (String file : new String[]{"index.html", "index2.html"})
+            nodes.addAll(new HTMLObject(new File(NodeTest.RESOURCES, file)).getRootNode().stream().collect(Collectors.toList()));
+        for (String file : new String[]{"test1.xml", "test2.xml"})
+            nodes.addAll(new XMLObject(new File(NodeTest.RESOURCES, file)).getRootNode().stream().collect(Collectors.toList()));
+        measure("test resources", nodes, COPIES);
+    }
+
+    @Test
+    void benchmarkGeneratedCorpus() {
+        final Node node = new NodeBuilder(NodeReaderTest.newFeed(100_000)).build();
+        measure("generated corpus", node.stream().collect(Collectors.toList()), 1);
+    }
+
+    private static void measure(String name, List<Node> nodes, int copies) {
+        final long count = (long) nodes.size() * copies;
+        final double compact = bytesPerNode(nodes, copies, a -> {
+            final AttributeMap map = new AttributeMap();
+            map.putAll(a);
+            return map;
+        }) / count;
+        final double linked = bytesPerNode(nodes, copies, LinkedHashMap::new) / count;
+        System.out.printf("%s: %s nodes, %.1f attributes per node%n", name, nodes.size(),
+                nodes.stream().mapToInt(n -> n.getAttributes().size()).average().orElse(0));
+        System.out.printf("  LinkedHashMap: %6.1f bytes per node%n", linked);
+        System.out.printf("  AttributeMap:  %6.1f bytes per node (%.0f%% less)%n", compact, 100 - compact * 100 / linked);
+    }
+
+    private static double bytesPerNode(List<Node> nodes, int copies,
+                                       Function<Map<String, String>, Map<String, String>> copy) {
+        final List<Object> retained = new ArrayList<>(nodes.size() * copies);
+        final long before = usedMemory();
+        for (int i = 0; i < copies; i++)
+            for (Node node : nodes) retained.add(copy.apply(node.getAttributes()));
+        // The list has already been allocated, so only the copies are measured.
+        final long used = usedMemory() - before;
+        if (retained.size() != nodes.size() * copies) throw new IllegalStateException();
+        return used;
+    }
+
+    private static long usedMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,70 @@
+package it.fulminazzo.tagparser.nodes;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AttributeMapTest {
+
+    @Test
+    void testSameAsLinkedHashMap() {
+        final Random random = new Random(42);
+        final Map<String, String> expected = new LinkedHashMap<>();
+        final AttributeMap map = new AttributeMap();
+        for (int i = 0; i < 20_000; i++) {
+            // Few keys at first, then many, to move across the hash threshold.
+            final int keys = i < 10_000 ? 6 : 40;
+            final String key = "k" + random.nextInt(keys);
+            final String value = random.nextInt(5) == 0 ? null : "v" + i;
+            switch (random.nextInt(4)) {
+                case 0:
+                    assertEquals(expected.remove(key), map.remove(key));
+                    break;
+                case 1:
+                    assertEquals(expected.get(key), map.get(key));
+                    assertEquals(expected.containsKey(key), map.containsKey(key));
+                    break;
+                default:
+                    assertEquals(expected.put(key, value), map.put(key, value));
+            }
+            assertEquals(expected.size(), map.size());
+        }
+        assertEquals(new ArrayList<>(expected.entrySet()), new ArrayList<>(map.entrySet()));
+        assertEquals(expected, map);
+        assertEquals(map, expected);
+        assertEquals(expected.hashCode(), map.hashCode());
+    }
+
+    @Test
+    void testLiveView() {
+        final Node node = new Node("a").setAttributes("x", "1", "y", "2", "z", "3");
+        final Iterator<Map.Entry<String, String>> iterator = node.getAttributes().entrySet().iterator();
+        iterator.next().setValue("one");
+        iterator.next();
+        iterator.remove();
+        assertEquals("3", iterator.next().getValue());
+        assertFalse(iterator.hasNext());
+        assertEquals("one", node.getAttribute("x"));
+        assertNull(node.getAttribute("y"));
+        assertEquals(Arrays.asList("x", "z"), new ArrayList<>(node.getAttributes().keySet()));
+
+        node.getAttributes().values().remove("3");
+        assertEquals(1, node.getAttributes().size());
+        node.getAttributes().clear();
+        assertTrue(node.getAttributes().isEmpty());
+        assertEquals("{}", node.getAttributes().toString());
+    }
+
+    @Test
+    void testManyAttributes() {
+        final AttributeMap map = new AttributeMap();
+        for (int i = 0; i < 100; i++) map.put("a" + i, "" + i);
+        for (int i = 0; i < 100; i += 2) map.remove("a" + i);
+        assertEquals(50, map.size());
+        for (int i = 0; i < 100; i++) assertEquals(i % 2 == 0 ? null : "" + i, map.get("a" + i));
+        final Iterator<String> keys = map.keySet().iterator();
+        for (int i = 1; i < 100; i += 2) assertEquals("a" + i, keys.next());
+    }
+}
@@ -0,0 +1,54 @@
+package it.fulminazzo.tagparser.nodes;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.function.Supplier;
+
+/**
+ * Measures the memory and time used to read a document as a tree of {@link Node}s
+ * or as a {@link CompactDocument}, decoded while reading or lazily,
+ * and the time taken by a query by tag name on them.
+ * Run with <code>gradle benchmark</code>.
+ */
+@Tag("benchmark")
+class CompactDocumentBenchmark {
+    private static final int ITEMS = 100_000;
+    private static final int QUERIES = 20;
+
+    @Test
+    void benchmarkGeneratedCorpus() {
+        final Node node = retain(() -> new NodeBuilder(NodeReaderTest.newFeed(ITEMS)).build(), "tree of nodes");
+        final CompactDocument document = retain(() -> new NodeBuilder(NodeReaderTest.newFeed(ITEMS)).buildCompact(),
+                "compact document");
+        retain(() -> new NodeBuilder(NodeReaderTest.newFeed(ITEMS)).decodeLazily().buildCompact(), "lazy document");
+
+        long start = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < QUERIES; i++) found += node.getNodes("name").size();
+        System.out.printf("  tree of nodes:    getNodes in %6.1f ms%n", (System.nanoTime() - start) / 1e6 / QUERIES);
+        start = System.nanoTime();
+        for (int i = 0; i < QUERIES; i++) found -= document.getNodes("name").size();
+        System.out.printf("  compact document: getNodes in %6.1f ms%n", (System.nanoTime() - start) / 1e6 / QUERIES);
+        if (found != 0) throw new IllegalStateException();
+    }
+
+    private static <T> T retain(Supplier<T> supplier, String name) {
+        final long before = usedMemory();
+        final long start = System.nanoTime();
+        final T document = supplier.get();
+        final double time = (System.nanoTime() - start) / 1e6;
+        final long used = usedMemory() - before;
+        final int size = document instanceof Node ? (int) ((Node) document).stream().count() :
+                ((CompactDocument) document).size();
+        System.out.printf("  %-17s %s elements, %6.1f bytes per element, read in %6.1f ms%n",
+                name + ":", size, (double) used / size, time);
+        return document;
+    }
+
+    private static long usedMemory() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) System.gc();
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
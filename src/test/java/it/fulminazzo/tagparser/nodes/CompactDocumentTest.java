@@ -0,0 +1,157 @@
+package it.fulminazzo.tagparser.nodes;
+
+import it.fulminazzo.tagparser.nodes.exceptions.EmptyNodeException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompactDocumentTest {
+    private static final String DOCUMENT = "<root a=\"1\" B='&amp;x'>text<!-- c --><n/>more<p id=\"p\">in<b>bold</b></p></root>" +
+            "<other><p>last</p></other>";
+
+    private static String toHTML(Node node) {
+        final StringBuilder builder = new StringBuilder();
+        for (Node n = node; n != null; n = n.getNext()) builder.append(n.toHTML()).append("\n");
+        return builder.toString();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"index.html", "test1.xml", "test2.xml", "node.xml"})
+    void testSameAsNodes(String fileName) {
+        final File file = new File(NodeTest.RESOURCES, fileName);
+        final Node node = new NodeBuilder(file).keepComments().build();
+        final CompactDocument document = new NodeBuilder(file).keepComments().buildCompact();
+        assertNotNull(node);
+        assertEquals(toHTML(node), toHTML(document.toNode()));
+        assertEquals(toHTML(node), toHTML(CompactDocument.of(node).toNode()));
+
+        final List<Node> nodes = new ArrayList<>();
+        for (Node n = node; n != null; n = n.getNext()) n.stream().forEach(nodes::add);
+        assertEquals(nodes.size(), document.size());
+        for (String tagName : nodes.stream().map(Node::getTagName).collect(Collectors.toSet()))
+            assertEquals(node.getNodes(tagName).stream().map(Node::getAttributes).collect(Collectors.toList()),
+                    document.getNodes(tagName).stream().map(CompactDocument.Element::getAttributes).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testElements() {
+        final CompactDocument document = new NodeBuilder(DOCUMENT).keepComments().buildCompact();
+        final CompactDocument.Element root = document.getRoot();
+        assertNotNull(root);
+        assertEquals("root", root.getTagName());
+        assertEquals("1", root.getAttribute("a"));
+        assertEquals("&x", root.getAttribute("B"));
+        assertNull(root.getAttribute("c"));
+        assertEquals("textmore", root.getText());
+        assertTrue(root.isContainer());
+        assertNull(root.getParent());
+
+        final List<CompactDocument.Element> children = root.getChildren();
+        assertEquals(Arrays.asList(CommentNode.TAG_NAME, "n", "p"),
+                children.stream().map(CompactDocument.Element::getTagName).collect(Collectors.toList()));
+        assertEquals(3, root.countChildren());
+        assertTrue(children.get(0).isComment());
+        assertEquals(" c ", children.get(0).getText());
+        assertFalse(children.get(1).isContainer());
+        assertEquals(children.get(2), root.getChild("P"));
+        assertEquals(root, children.get(2).getParent());
+        assertEquals("bold", Objects.requireNonNull(children.get(2).getChild("b")).getText());
+
+        final CompactDocument.Element other = root.getNext();
+        assertNotNull(other);
+        assertEquals("other", other.getTagName());
+        assertNull(other.getNext());
+        assertEquals(2, document.getNodes("p").size());
+        assertEquals(2, root.getNodes("p").size());
+        assertEquals(1, children.get(2).getNodes("p").size());
+        assertEquals(0, children.get(2).getNodes("other").size());
+        assertEquals(Collections.emptySet(), document.getNodes("missing"));
+        assertEquals("p", Objects.requireNonNull(document.getNode("p")).getAttribute("id"));
+    }
+
+    @Test
+    void testElementToNode() {
+        final CompactDocument document = new NodeBuilder(DOCUMENT).buildCompact();
+        final CompactDocument.Element p = document.getNode("p");
+        assertNotNull(p);
+        final Node node = p.toNode();
+        assertNull(node.getNext());
+        assertEquals("<p id=\"p\">in\n    <b>bold</b>\n</p>", node.toHTML());
+
+        final CompactDocument.Element n = document.getNode("n");
+        assertNotNull(n);
+        assertEquals(node, n.toNode().getNext());
+    }
+
+    @Test
+    void testToNodes() {
+        final CompactDocument document = new NodeBuilder(DOCUMENT).keepComments().buildCompact();
+        final Set<CompactDocument.Element> elements = document.findNodes(e -> e.hasAttribute("id") || e.getTagName().equals("p"));
+        assertEquals(2, elements.size());
+        final List<Node> nodes = document.toNodes(elements, CompactDocument.NodeFactory.DEFAULT);
+        assertEquals(elements.stream().map(CompactDocument.Element::toNode).collect(Collectors.toList()), nodes);
+        assertEquals(toHTML(document.toNode()), toHTML(document.toNodes(Collections.singleton(document.getRoot()),
+                CompactDocument.NodeFactory.DEFAULT).get(0)));
+        assertTrue(document.toNodes(Collections.emptySet(), CompactDocument.NodeFactory.DEFAULT).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> document.toNodes(
+                Collections.singleton(new NodeBuilder(DOCUMENT).buildCompact().getRoot()), CompactDocument.NodeFactory.DEFAULT));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"index.html", "test1.xml", "test2.xml", "node.xml"})
+    void testWriteElements(String fileName) throws IOException {
+        final File file = new File(NodeTest.RESOURCES, fileName);
+        final CompactDocument document = new NodeBuilder(file).keepComments().decodeLazily().buildCompact();
+        final CompactDocument.Element root = document.getRoot();
+        assertNotNull(root);
+        final StringBuilder output = new StringBuilder();
+        new NodeWriter(output).write(root, CompactDocument.NodeFactory.DEFAULT);
+        assertEquals(root.toNode().toHTML(), output.toString());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"index.html", "test1.xml", "test2.xml", "node.xml"})
+    void testDecodeLazily(String fileName) {
+        final File file = new File(NodeTest.RESOURCES, fileName);
+        final CompactDocument eager = new NodeBuilder(file).keepComments().buildCompact();
+        final CompactDocument lazy = new NodeBuilder(file).keepComments().decodeLazily().buildCompact();
+        assertEquals(toHTML(eager.toNode()), toHTML(lazy.toNode()));
+    }
+
+    @Test
+    void testLazyValuesAreCached() {
+        final CompactDocument document = new NodeBuilder("<a title=\"x &amp; \\\"y\\\"\" empty>&lt;b&gt; &amp;amp;<!-- &amp; --></a>")
+                .keepComments().decodeLazily().buildCompact();
+        final CompactDocument.Element a = document.getRoot();
+        assertNotNull(a);
+        final String title = a.getAttribute("title");
+        assertEquals("x & \"y\"", title);
+        assertSame(title, a.getAttribute("title"));
+        assertNull(a.getAttribute("empty"));
+        assertTrue(a.getAttributes().containsKey("empty"));
+        final String text = a.getText();
+        assertEquals("<b> &amp;", text);
+        assertSame(text, a.getText());
+        assertEquals(" &amp; ", Objects.requireNonNull(a.getChild()).getText());
+    }
+
+    @Test
+    void testUncheckNext() {
+        final CompactDocument document = new NodeBuilder(DOCUMENT).uncheckNext().buildCompact();
+        assertNotNull(document.getRoot());
+        assertNull(document.getRoot().getNext());
+        assertEquals(1, document.getNodes("p").size());
+    }
+
+    @Test
+    void testEmpty() {
+        assertThrowsExactly(EmptyNodeException.class, () -> new NodeBuilder("<!-- only -->").buildCompact());
+    }
+}
@@ -10,8 +10,7 @@ import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 
-import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertIterableEquals;
+import static org.junit.jupiter.api.Assertions.*;
 
 class ContainerNodeTest {
     private ContainerNode node;
@@ -149,4 +148,32 @@ class ContainerNodeTest {
         children.add(node.getChild().getNext());
         assertIterableEquals(children, node.getChildren());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testGetChildIndex() {
+        Node n = new Node("child2");
+        node.addChild(n);
+        assertEquals("child", node.getChild(0).getTagName());
+        assertEquals(n, node.getChild(1));
+        assertThrows(IndexOutOfBoundsException.class, () -> node.getChild(2));
+    }
+
+    @Test
+    void testAddChildren() {
+        node.addChildren(new Node("child2"), new Node("child3").setNext(new Node("child4")));
+        assertEquals(4, node.childCount());
+        assertEquals("child4", node.getChild(3).getTagName());
+    }
+
+    @Test
+    void testChildCountAfterSetNext() {
+        node.addChild(new Node("child2"));
+        node.getChild(0).setNext(new Node("child3").setNext(new Node("child4")));
+        assertEquals(3, node.childCount());
+        assertEquals("child4", node.getChild(2).getTagName());
+        node.getChild(1).setNext((Node) null);
+        assertEquals(2, node.childCount());
+        node.addChild(new Node("child5"));
+        assertEquals("child5", node.getChild(0).getNext().getNext().getTagName());
+    }
+}
@@ -0,0 +1,40 @@
+package it.fulminazzo.tagparser.nodes;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+/**
+ * Measures the time taken to read the head of a page with a large body,
+ * reading every node or deferring the children until requested.
+ * Run with <code>gradle benchmark</code>.
+ */
+@Tag("benchmark")
+class DeferredChildrenBenchmark {
+    private static final int ITEMS = 100_000;
+    private static final int RUNS = 10;
+
+    @Test
+    void benchmarkHeadLookup() {
+        final StringBuilder page = new StringBuilder("<html><head><title>Page</title><meta charset=\"utf-8\"/></head><body>");
+        for (int i = 0; i < ITEMS; i++)
+            page.append("<div class=\"item\" id=\"i").append(i).append("\"><p>Item <b>").append(i).append("</b></p></div>");
+        final String html = page.append("</body></html>").toString();
+
+        for (int warmup = 0; warmup < 2; warmup++) {
+            measure(html, false, "eager");
+            measure(html, true, "deferred");
+        }
+    }
+
+    private static void measure(String html, boolean deferred, String name) {
+        long start = System.nanoTime();
+        int found = 0;
+        for (int i = 0; i < RUNS; i++) {
+            final NodeBuilder builder = new NodeBuilder(html);
+            final Node node = (deferred ? builder.deferChildren() : builder).build();
+            if (node != null && node.getNode("title") != null) found++;
+        }
+        if (found != RUNS) throw new IllegalStateException();
+        System.out.printf("  %-9s build and find the title in %6.1f ms%n", name + ":", (System.nanoTime() - start) / 1e6 / RUNS);
+    }
+}
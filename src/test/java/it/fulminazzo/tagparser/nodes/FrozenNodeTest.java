@@ -0,0 +1,118 @@
+package it.fulminazzo.tagparser.nodes;
+
+import it.fulminazzo.tagparser.nodes.exceptions.NotValidTagNameException;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FrozenNodeTest {
+    private static final String DOCUMENT = "<root a=\"1\">text<!-- c --><n/><p id=\"p\">in<b>bold</b></p><q><b>other</b></q></root>";
+
+    @ParameterizedTest
+    @ValueSource(strings = {"index.html", "test1.xml", "test2.xml", "node.xml"})
+    void testSameAsNode(String fileName) {
+        final Node node = new NodeBuilder(new File(NodeTest.RESOURCES, fileName)).keepComments().uncheckNext().build();
+        assertNotNull(node);
+        final FrozenNode frozen = node.freeze();
+        assertEquals(node, frozen.toNode());
+        assertEquals(node.toHTML(), frozen.toHTML());
+        assertEquals(frozen, FrozenNode.of(frozen.toNode()));
+        assertEquals(frozen.hashCode(), FrozenNode.of(frozen.toNode()).hashCode());
+        for (String tagName : node.stream().map(Node::getTagName).collect(Collectors.toSet()))
+            assertEquals(node.getNodes(tagName).size(), frozen.getNodes(tagName).size());
+    }
+
+    @Test
+    void testDeferredChildren() {
+        final File file = new File(NodeTest.RESOURCES, "index.html");
+        final Node node = new NodeBuilder(file).build();
+        assertNotNull(node);
+        assertEquals(node.freeze(), Objects.requireNonNull(new NodeBuilder(file).deferChildren().build()).freeze());
+    }
+
+    @Test
+    void testReadOnly() {
+        final FrozenNode root = Objects.requireNonNull(new NodeBuilder(DOCUMENT).keepComments().build()).freeze();
+        assertEquals("1", root.getAttribute("a"));
+        assertEquals("text", root.getText());
+        assertTrue(root.isContainer());
+        assertEquals(4, root.countChildren());
+        assertTrue(root.getChild(0).isComment());
+        assertEquals(" c ", root.getChild(0).getText());
+        assertFalse(root.getChild(1).isContainer());
+        assertEquals("p", Objects.requireNonNull(root.getChild("P")).getAttribute("id"));
+        assertEquals(Arrays.asList("bold", "other"),
+                root.getNodes("b").stream().map(FrozenNode::getText).collect(Collectors.toList()));
+        assertEquals("bold", Objects.requireNonNull(root.getNode("b")).getText());
+        assertNull(root.getNode("missing"));
+
+        assertThrows(UnsupportedOperationException.class, () -> root.getAttributes().put("b", "2"));
+        assertThrows(UnsupportedOperationException.class, () -> root.getChildren().clear());
+        assertThrows(IndexOutOfBoundsException.class, () -> root.getChild(4));
+    }
+
+    @Test
+    void testWithSharesUntouchedChildren() {
+        final Node node = Objects.requireNonNull(new NodeBuilder(DOCUMENT).keepComments().build());
+        final FrozenNode root = node.freeze();
+
+        final FrozenNode updated = root.withAttribute("a", "\"2\"").withoutAttribute("missing");
+        assertEquals("2", updated.getAttribute("a"));
+        assertEquals("1", root.getAttribute("a"));
+        for (int i = 0; i < root.countChildren(); i++) assertSame(root.getChild(i), updated.getChild(i));
+        assertNotEquals(root, updated);
+        assertEquals(root, updated.withAttribute("a", "1"));
+        assertEquals(Collections.emptyMap(), updated.withoutAttribute("a").getAttributes());
+
+        final FrozenNode added = root.withChild(Objects.requireNonNull(Node.newNode("<r/>")).freeze());
+        assertEquals(5, added.countChildren());
+        assertEquals(4, root.countChildren());
+        assertEquals(root, added.withoutChild(4));
+        assertEquals("changed", root.withText("changed").getText());
+        assertThrows(UnsupportedOperationException.class, () -> root.getChild(1).withText("text"));
+        assertThrows(UnsupportedOperationException.class, () -> root.getChild(0).withAttribute("a", "b"));
+        assertThrows(NotValidTagNameException.class, () -> root.withAttribute("not valid", "b"));
+
+        // The original tree is not affected.
+        assertEquals(node, root.toNode());
+    }
+
+    @Test
+    void testReplaceCopiesOnlyThePath() {
+        final FrozenNode root = Objects.requireNonNull(new NodeBuilder(DOCUMENT).keepComments().build()).freeze();
+        final FrozenNode p = root.getChild(2);
+        final FrozenNode b = Objects.requireNonNull(p.getChild("b"));
+
+        final FrozenNode updated = root.replace(b, b.withText("bolder"));
+        assertEquals("bolder", Objects.requireNonNull(updated.getChild(2).getChild("b")).getText());
+        assertEquals("bold", b.getText());
+        assertNotSame(p, updated.getChild(2));
+        assertSame(root.getChild(0), updated.getChild(0));
+        assertSame(root.getChild(1), updated.getChild(1));
+        assertSame(root.getChild(3), updated.getChild(3));
+
+        assertSame(root, root.replace(Objects.requireNonNull(Node.newNode("<b>bold</b>")).freeze(), b));
+        assertSame(b, root.replace(root, b));
+    }
+
+    @Test
+    void testConcurrentReads() throws Exception {
+        final FrozenNode root = Objects.requireNonNull(new NodeBuilder(new File(NodeTest.RESOURCES, "index.html")).build()).freeze();
+        final String expected = root.toHTML();
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) results.add(executor.submit(() -> root.toHTML()));
+            for (Future<String> result : results) assertEquals(expected, result.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
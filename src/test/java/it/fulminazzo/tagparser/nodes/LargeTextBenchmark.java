@@ -0,0 +1,54 @@
+package it.fulminazzo.tagparser.nodes;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Measures the throughput of reading a single element with a large text,
+ * from a string and from a stream, at growing sizes.
+ * The text contains partial closing tags, so that the search of the closing tag cannot skip it.
+ * Since reading should take linear time, the throughput at the largest size is checked
+ * to be at least a quarter of the one at the smallest.
+ * Run with <code>gradle benchmark</code>.
+ */
+@Tag("benchmark")
+class LargeTextBenchmark {
+    private static final int[] SIZES = {1, 2, 4, 8, 16};
+    private static final int RUNS = 5;
+
+    @Test
+    void benchmarkLargeTextElement() {
+        for (int warmup = 0; warmup < 2; warmup++) measure(SIZES[0], false);
+        double first = 0;
+        double last = 0;
+        for (int size : SIZES) {
+            final double string = measure(size, false);
+            final double stream = measure(size, true);
+            System.out.printf("  %2d MB: string %7.1f MB/s, stream %7.1f MB/s%n", size, string, stream);
+            if (first == 0) first = string;
+            last = string;
+        }
+        if (last < first / 4)
+            throw new IllegalStateException(String.format("Reading does not scale linearly: %.1f MB/s at %s MB, %.1f MB/s at %s MB",
+                    first, SIZES[0], last, SIZES[SIZES.length - 1]));
+    }
+
+    private static double measure(int megabytes, boolean stream) {
+        final StringBuilder text = new StringBuilder();
+        while (text.length() < megabytes * 1024 * 1024) text.append("Lorem ipsum </descr> dolor </description sit amet. ");
+        final String raw = "<description>" + text + "</description>";
+        final byte[] bytes = raw.getBytes(StandardCharsets.UTF_8);
+
+        final long start = System.nanoTime();
+        for (int i = 0; i < RUNS; i++) {
+            final NodeBuilder builder = stream ? new NodeBuilder(new ByteArrayInputStream(bytes)) : new NodeBuilder(raw);
+            final Node node = builder.build();
+            if (!(node instanceof ContainerNode) || ((ContainerNode) node).getText() == null) throw new IllegalStateException();
+        }
+        final double seconds = (System.nanoTime() - start) / 1e9 / RUNS;
+        return megabytes / seconds;
+    }
+}
@@ -4,8 +4,13 @@ import it.fulminazzo.tagparser.nodes.exceptions.*;
 import it.fulminazzo.tagparser.nodes.validators.IntegerValidator;
 import org.junit.jupiter.api.Test;
 
-import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
-import static org.junit.jupiter.api.Assertions.assertThrows;
+import java.io.File;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
 
 class NodeBuilderTest {
 
@@ -85,4 +90,144 @@ class NodeBuilderTest {
     void testFromNotSpecified() {
         assertThrows(FromNotSpecified.class, () -> new NodeBuilder().build());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testSmallBufferSize() {
+        final File file = new File(NodeTest.RESOURCES, "index.html");
+        final Node expected = new NodeBuilder(file).build();
+        final Node actual = new NodeBuilder(file).setBufferSize(1).build();
+        assertEquals(expected, actual);
+    }
+
+    @Test
+    void testDeferChildren() {
+        final File file = new File(NodeTest.RESOURCES, "index.html");
+        final Node expected = new NodeBuilder(file).build();
+        final Node actual = new NodeBuilder(file).setBufferSize(1).deferChildren().build();
+        assertInstanceOf(ContainerNode.class, actual);
+        final ContainerNode head = (ContainerNode) ((ContainerNode) actual).child;
+        assertNotNull(head);
+        assertNull(head.child);
+        assertEquals(expected, actual);
+        assertEquals(expected.toHTML(), new NodeBuilder(file).deferChildren().build().toHTML());
+    }
+
+    @Test
+    void testDeferChildrenValidation() {
+        final ContainerNode node = (ContainerNode) new NodeBuilder("<a><b>Content~</b><c><!-- --></c></a>")
+                .setContentsRegex("[A-Za-z0-9]+").deferChildren().build();
+        assertNotNull(node);
+        assertEquals(2, node.countChildren());
+        final ContainerNode b = (ContainerNode) node.getChild(0);
+        assertThrows(NotValidContentException.class, b::getText);
+        assertNull(((ContainerNode) node.getChild(1)).getText());
+    }
+
+    @Test
+    void testLargeTextElement() {
+        final StringBuilder text = new StringBuilder();
+        while (text.length() < 4 * 1024 * 1024) text.append("Lorem ipsum </descr> dolor </description sit amet. ");
+        final String raw = "<description>" + text + "</description>";
+        final Node node = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> new NodeBuilder(raw).build());
+        assertInstanceOf(ContainerNode.class, node);
+        assertEquals(text.toString(), ((ContainerNode) node).getText());
+    }
+
+    @Test
+    void testDeeplyNestedElements() {
+        final int depth = 100_000;
+        final StringBuilder raw = new StringBuilder();
+        for (int i = 0; i < depth; i++) raw.append("<div>").append(i);
+        for (int i = 0; i < depth; i++) raw.append("</div>");
+        final Node node = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> new NodeBuilder(raw.toString()).build());
+
+        int level = 0;
+        Node current = node;
+        while (current instanceof ContainerNode) {
+            assertEquals("div", current.getTagName());
+            assertEquals(String.valueOf(level), ((ContainerNode) current).getText());
+            current = ((ContainerNode) current).getChild();
+            level++;
+        }
+        assertEquals(depth, level);
+    }
+
+    @Test
+    void testWideElement() {
+        final int width = 200_000;
+        final StringBuilder raw = new StringBuilder("<feed>");
+        for (int i = 0; i < width; i++) raw.append("<item id=\"").append(i).append("\"/>");
+        raw.append("</feed>");
+        final Node node = assertTimeoutPreemptively(Duration.ofSeconds(10), () -> new NodeBuilder(raw.toString()).build());
+        assertInstanceOf(ContainerNode.class, node);
+        final ContainerNode feed = (ContainerNode) node;
+        assertEquals(width, feed.childCount());
+        assertEquals("123456", feed.getChild(123456).getAttribute("id"));
+    }
+
+    @Test
+    void testTextAroundChildren() {
+        final ContainerNode node = (ContainerNode) new NodeBuilder("<a>Hello <b>big</b> <i>wide</i>world</a>").build();
+        assertNotNull(node);
+        assertEquals("Hello  world", node.getText());
+        assertEquals("big", ((ContainerNode) node.getChild()).getText());
+        assertEquals("wide", ((ContainerNode) node.getChild().getNext()).getText());
+    }
+
+    @Test
+    void testDiscardComments() {
+        final Node node = new NodeBuilder("<!-- first --><test>Hello <!-- <child/> -->world</test>").build();
+        assertEquals(new ContainerNode("test").setText("Hello world"), node);
+    }
+
+    @Test
+    void testKeepComments() {
+        final String raw = "<test>\n    <!-- <child/> -->\n    <child/>\n</test>";
+        final Node node = new NodeBuilder(raw).keepComments().build();
+        assertEquals(new ContainerNode("test").addChild(new CommentNode(" <child/> ")).addChild(new Node("child")), node);
+        assertEquals(raw, node.toHTML());
+    }
+
+    @Test
+    void testCData() {
+        final Node node = new NodeBuilder("<test><![CDATA[if (a <b && c>d) <tag/>]]></test>").build();
+        assertEquals(new ContainerNode("test").setText("if (a <b && c>d) <tag/>"), node);
+    }
+
+    @Test
+    void testStreamElements() {
+        final int items = 200_000;
+        try (Stream<ContainerNode> stream = new NodeBuilder(NodeReaderTest.newFeed(items)).streamElements("item")) {
+            final long count = stream.peek(n -> {
+                assertNull(n.getNext());
+                assertEquals("x", ((ContainerNode) n.getChild()).getText());
+            }).count();
+            assertEquals(items, count);
+        }
+    }
+
+    @Test
+    void testIterateElements() {
+        final Iterator<ContainerNode> iterator = new NodeBuilder("<catalog><meta/>" +
+                "<group><item id=\"1\">one<item id=\"2\"></item></item></group>" +
+                "<item/><item id=\"3\">three</item></catalog>").iterateElements("item");
+        ContainerNode node = iterator.next();
+        assertEquals("1", node.getAttribute("id"));
+        assertEquals("one", node.getText());
+        assertEquals("2", node.getChild().getAttribute("id"));
+        node = iterator.next();
+        assertEquals("3", node.getAttribute("id"));
+        assertEquals("three", node.getText());
+        assertFalse(iterator.hasNext());
+        assertThrows(NoSuchElementException.class, iterator::next);
+    }
+
+    @Test
+    void testStreamElementsValidation() {
+        final NodeBuilder builder = new NodeBuilder("<list><item>1</item><item>a</item></list>")
+                .setContentsRegex("[0-9]+");
+        final Iterator<ContainerNode> iterator = builder.iterateElements("item");
+        assertEquals("1", iterator.next().getText());
+        assertThrows(NotValidContentException.class, iterator::next);
+    }
+}
@@ -0,0 +1,135 @@
+package it.fulminazzo.tagparser.nodes;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeIndexTest {
+    private ContainerNode root;
+    private NodeIndex index;
+
+    @BeforeEach
+    void setUp() {
+        root = (ContainerNode) new NodeBuilder(new File(NodeTest.RESOURCES, "index.html")).build();
+        assertNotNull(root);
+        index = NodeIndex.of(root);
+    }
+
+    private Set<Node> scan(java.util.function.Predicate<Node> predicate) {
+        return root.stream().filter(predicate).collect(Collectors.toSet());
+    }
+
+    @Test
+    void testQueriesMatchScan() {
+        assertEquals(scan(n -> n.getTagName().equals("rect")), index.getNodesByTagName("rect"));
+        assertEquals(scan(n -> n.getAttributes().containsKey("viewBox")), index.getNodesByAttribute("viewBox"));
+        assertEquals(6, index.getNodesByClass("line").size());
+        assertEquals(3, index.getNodesByClass("hamburger").size());
+        assertTrue(index.getNodesByTagName("missing").isEmpty());
+    }
+
+    @Test
+    void testAddChild() {
+        final ContainerNode examples = (ContainerNode) index.getNodesByClass("examples").iterator().next();
+        final ContainerNode section = new ContainerNode("section").setAttribute("id", "new");
+        section.addChild(new Node("rect").setAttribute("class", "line extra"));
+        examples.addChild(section);
+        assertSame(section, index.getNodeById("new"));
+        assertEquals(1, index.getNodesByClass("extra").size());
+        assertEquals(scan(n -> n.getTagName().equals("rect")), index.getNodesByTagName("rect"));
+    }
+
+    @Test
+    void testRemoveChild() {
+        final ContainerNode examples = (ContainerNode) index.getNodesByClass("examples").iterator().next();
+        examples.removeChild(n -> n.getTagName().equals("button"));
+        assertEquals(scan(n -> n.getTagName().equals("button")), index.getNodesByTagName("button"));
+        assertEquals(scan(n -> n.getTagName().equals("rect")), index.getNodesByTagName("rect"));
+    }
+
+    @Test
+    void testSetAttribute() {
+        final Node button = index.getNodesByClass("button-one").iterator().next();
+        button.setAttribute("id", "first").setAttribute("class", "button-four");
+        assertSame(button, index.getNodeById("first"));
+        assertTrue(index.getNodesByClass("button-one").isEmpty());
+        assertEquals(1, index.getNodesByClass("button-four").size());
+        button.unsetAttribute("id");
+        assertNull(index.getNodeById("first"));
+    }
+
+    @Test
+    void testSetNextRebuildsIndex() {
+        final Node button = index.getNodesByClass("button-one").iterator().next();
+        button.setNext(new Node("img").setAttribute("id", "image"));
+        assertNotNull(index.getNodeById("image"));
+        assertTrue(index.getNodesByClass("button-two").isEmpty());
+    }
+
+    @Test
+    void testDetachedNodeNotIndexed() {
+        final ContainerNode button = (ContainerNode) index.getNodesByClass("button-one").iterator().next();
+        final Node svg = button.getChild();
+        assertNotNull(svg);
+        button.removeChild(n -> n == svg);
+        assertEquals(2, index.getNodesByClass("hamburger").size());
+        svg.setAttribute("id", "detached");
+        assertNull(index.getNodeById("detached"));
+    }
+
+    @Test
+    void testDocumentOrderAfterChanges() {
+        final ContainerNode body = (ContainerNode) Objects.requireNonNull(
+                Node.newNode("<body><p id=\"b\">1</p><p id=\"a\">2</p></body>"));
+        final NodeIndex index = NodeIndex.of(body);
+        final ContainerNode first = (ContainerNode) body.getChild(0);
+        final ContainerNode second = (ContainerNode) body.getChild(1);
+        assertSame(second, index.getNodeById("a"));
+
+        first.setAttribute("id", "a");
+        assertEquals("1", ((ContainerNode) Objects.requireNonNull(index.getNodeById("a"))).getText());
+        assertSame(body.stream().filter(n -> "a".equals(n.getAttribute("id"))).findFirst().orElse(null),
+                index.getNodeById("a"));
+
+        second.addChild(new Node("i"));
+        first.addChild(new Node("i").setAttribute("class", "x"));
+        final List<Node> scan = new ArrayList<>();
+        body.stream().filter(n -> n.getTagName().equals("i")).forEach(scan::add);
+        assertEquals(scan, new ArrayList<>(index.getNodesByTagName("i")));
+        assertSame(first, index.getNodesByTagName("i").iterator().next().parent);
+    }
+
+    @Test
+    void testRemoveWhileIterating() {
+        final ContainerNode body = (ContainerNode) Objects.requireNonNull(
+                Node.newNode("<body><p>1</p><p>2</p><div><p>3</p></div></body>"));
+        final NodeIndex index = NodeIndex.of(body);
+        for (Node p : index.getNodesByTagName("p")) body.removeChild(n -> n == p);
+        assertEquals(1, index.getNodesByTagName("p").size());
+        assertEquals(index.getNodesByTagName("p"), body.stream().filter(n -> n.getTagName().equals("p")).collect(Collectors.toSet()));
+    }
+
+    @Test
+    void testAddAndQueryInterleaved() {
+        final ContainerNode body = (ContainerNode) Objects.requireNonNull(
+                Node.newNode("<body><div></div><div></div><div></div></body>"));
+        final NodeIndex index = NodeIndex.of(body);
+        for (int i = 0; i < 30; i++) {
+            ((ContainerNode) body.getChild(2 - i % 3)).addChild(new Node("i").setAttribute("class", "c" + i % 2));
+            final List<Node> scan = new ArrayList<>();
+            body.stream().filter(n -> n.getTagName().equals("i")).forEach(scan::add);
+            assertEquals(scan, new ArrayList<>(index.getNodesByTagName("i")));
+            final List<Node> classes = new ArrayList<>();
+            body.stream().filter(n -> "c0".equals(n.getAttribute("class"))).forEach(classes::add);
+            assertEquals(classes, new ArrayList<>(index.getNodesByClass("c0")));
+        }
+    }
+}
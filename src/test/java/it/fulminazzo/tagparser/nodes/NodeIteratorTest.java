@@ -0,0 +1,90 @@
+package it.fulminazzo.tagparser.nodes;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeIteratorTest {
+    private static final String RAW = "<a><b><c/><d/></b><e><f/></e></a>";
+
+    private static List<String> tagNames(Iterator<Node> iterator) {
+        final List<String> names = new ArrayList<>();
+        iterator.forEachRemaining(n -> names.add(n.getTagName()));
+        return names;
+    }
+
+    @Test
+    void testDepthFirst() {
+        final Node node = Node.newNode(RAW);
+        assertNotNull(node);
+        assertEquals(Arrays.asList("a", "b", "c", "d", "e", "f"), tagNames(node.iterator()));
+    }
+
+    @Test
+    void testBreadthFirst() {
+        final Node node = Node.newNode(RAW);
+        assertNotNull(node);
+        assertEquals(Arrays.asList("a", "b", "e", "c", "d", "f"), tagNames(node.iterator(NodeIterator.Order.BREADTH_FIRST)));
+    }
+
+    @Test
+    void testSiblingsNotIncluded() {
+        final ContainerNode node = (ContainerNode) Node.newNode(RAW);
+        assertNotNull(node);
+        final Node b = node.getChild("b");
+        assertNotNull(b);
+        assertEquals(Arrays.asList("b", "c", "d"), tagNames(b.iterator()));
+        assertEquals(Arrays.asList("b", "c", "d"), tagNames(b.iterator(NodeIterator.Order.BREADTH_FIRST)));
+        assertEquals(Arrays.asList("b", "c", "d"), b.stream().map(Node::getTagName).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testVisitorSkipChildren() {
+        final Node node = Node.newNode(RAW);
+        assertNotNull(node);
+        final List<String> visited = new ArrayList<>();
+        final List<String> left = new ArrayList<>();
+        assertTrue(node.accept(new NodeVisitor() {
+            @Override
+            public @NotNull Result visit(@NotNull Node n) {
+                visited.add(n.getTagName());
+                return n.getTagName().equals("b") ? Result.SKIP_CHILDREN : Result.CONTINUE;
+            }
+
+            @Override
+            public void leave(@NotNull ContainerNode n) {
+                left.add(n.getTagName());
+            }
+        }));
+        assertEquals(Arrays.asList("a", "b", "e", "f"), visited);
+        assertEquals(Arrays.asList("b", "e", "a"), left);
+    }
+
+    @Test
+    void testVisitorStop() {
+        final Node node = Node.newNode(RAW);
+        assertNotNull(node);
+        final List<String> visited = new ArrayList<>();
+        assertFalse(node.accept(n -> {
+            visited.add(n.getTagName());
+            return n.getTagName().equals("d") ? NodeVisitor.Result.STOP : NodeVisitor.Result.CONTINUE;
+        }));
+        assertEquals(Arrays.asList("a", "b", "c", "d"), visited);
+    }
+
+    @Test
+    void testLongSiblingChain() {
+        final ContainerNode node = new ContainerNode("feed");
+        for (int i = 0; i < 200_000; i++) node.addChild(new Node("item"));
+        assertEquals(200_000, node.getNodes("item").size());
+        assertNull(node.getNode("missing"));
+        assertEquals(200_001, node.stream().count());
+    }
+}
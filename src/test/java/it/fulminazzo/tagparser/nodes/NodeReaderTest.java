@@ -0,0 +1,166 @@
+package it.fulminazzo.tagparser.nodes;
+
+import it.fulminazzo.tagparser.nodes.exceptions.ClosingTagsNotAllowedException;
+import it.fulminazzo.tagparser.nodes.exceptions.NodeException;
+import it.fulminazzo.tagparser.nodes.exceptions.NotValidTagException;
+import org.junit.jupiter.api.Test;
+
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeReaderTest {
+
+    private static List<String> events(NodeReader reader) {
+        final List<String> events = new ArrayList<>();
+        while (reader.hasNext())
+            switch (reader.next()) {
+                case NodeReader.START_ELEMENT:
+                    events.add("<" + reader.getTagName() + (reader.isContainer() ? ">" : "/>"));
+                    break;
+                case NodeReader.ATTRIBUTE:
+                    events.add("@" + reader.getAttributeName() + "=" + reader.getAttributeValue());
+                    break;
+                case NodeReader.TEXT:
+                    events.add("'" + reader.getText() + "'");
+                    break;
+                case NodeReader.COMMENT:
+                    events.add("#" + reader.getText());
+                    break;
+                case NodeReader.END_ELEMENT:
+                    events.add("</" + reader.getTagName() + ">");
+                    break;
+                default:
+                    events.add("EOF");
+            }
+        return events;
+    }
+
+    @Test
+    void testEvents() {
+        final NodeReader reader = new NodeBuilder("<!DOCTYPE test><a x=\"1\" y=\"2\">Hello <b/>" +
+                "<!-- note --><![CDATA[<raw>]]></c></a><!-- end -->").getReader();
+        assertEquals(NodeReader.START_DOCUMENT, reader.getEventType());
+        assertEquals(Arrays.asList("<a>", "@x=1", "@y=2", "'Hello '", "<b/>", "</b>", "# note ", "'<raw></c>'",
+                "</a>", "# end ", "EOF"), events(reader));
+        assertFalse(reader.hasNext());
+    }
+
+    @Test
+    void testAttributesOfCurrentElement() {
+        final NodeReader reader = new NodeBuilder("<a id=\"first\"><b id=\"second\"></b></a>").getReader();
+        assertTrue(reader.nextElement());
+        assertEquals("first", reader.getAttribute("id"));
+        assertEquals(NodeReader.ATTRIBUTE, reader.next());
+        assertEquals("a", reader.getTagName());
+        assertTrue(reader.nextElement());
+        assertEquals("b", reader.getTagName());
+        assertEquals("second", reader.getAttribute("id"));
+        assertEquals(2, reader.getDepth());
+        assertFalse(reader.nextElement());
+    }
+
+    @Test
+    void testInvalidState() {
+        final NodeReader reader = new NodeBuilder("<a>text</a>").getReader();
+        assertThrows(IllegalStateException.class, reader::getTagName);
+        reader.next();
+        assertThrows(IllegalStateException.class, reader::getText);
+        reader.next();
+        assertThrows(IllegalStateException.class, () -> reader.getAttribute("id"));
+    }
+
+    @Test
+    void testSkipElement() {
+        final NodeReader reader = new NodeBuilder("<a><b><c>1</c><c>2</c></b><d></d></a>").getReader();
+        reader.nextElement();
+        reader.nextElement();
+        reader.skipElement();
+        assertEquals("b", reader.getTagName());
+        assertTrue(reader.nextElement());
+        assertEquals("d", reader.getTagName());
+    }
+
+    @Test
+    void testSkimElement() {
+        final NodeReader reader = new NodeBuilder("<a><b x='</b>'><b>1<!-- </b> --></b><c/></b><d></d><e/></a>").getReader();
+        reader.nextElement();
+        reader.nextElement();
+        assertEquals("<b>1<!-- </b> --></b><c/></b>", reader.skimElement());
+        assertEquals(NodeReader.END_ELEMENT, reader.getEventType());
+        assertEquals("b", reader.getTagName());
+        assertTrue(reader.nextElement());
+        assertEquals("d", reader.getTagName());
+        assertEquals("</d>", reader.skimElement());
+        assertThrows(IllegalStateException.class, reader::skimElement);
+        assertTrue(reader.nextElement());
+        assertEquals("", reader.skimElement());
+        assertEquals("e", reader.getTagName());
+        assertFalse(reader.nextElement());
+    }
+
+    @Test
+    void testBuilderOptions() {
+        assertThrows(ClosingTagsNotAllowedException.class, () ->
+                events(new NodeBuilder("<a><b/></a>").disallowClosingTags().getReader()));
+        assertThrows(NotValidTagException.class, () ->
+                events(new NodeBuilder("<a><b></b></a>").addTag("a", true).getReader()));
+        assertThrows(NodeException.class, () -> events(new NodeBuilder("<a><b></b>").getReader()));
+    }
+
+    @Test
+    void testProcessingInstructionsPassedToBuilder() {
+        final StringBuilder target = new StringBuilder();
+        final NodeBuilder builder = new NodeBuilder("<?xml version=\"1.0\"?><a></a>") {
+            @Override
+            protected void onProcessingInstruction(String t, Map<String, String> attributes) {
+                target.append(t).append(attributes.get("version"));
+            }
+        };
+        assertEquals(Arrays.asList("<a>", "</a>", "EOF"), events(builder.getReader()));
+        assertEquals("xml1.0", target.toString());
+    }
+
+    /**
+     * Generate a feed with the given number of items, without keeping it in memory.
+     *
+     * @param items the number of items
+     * @return the stream
+     */
+    static InputStream newFeed(int items) {
+        return new InputStream() {
+            private final byte[] start = "<feed>".getBytes(StandardCharsets.US_ASCII);
+            private final byte[] item = "<item id=\"0\"><name>x</name></item>".getBytes(StandardCharsets.US_ASCII);
+            private final byte[] end = "</feed>".getBytes(StandardCharsets.US_ASCII);
+            private int count = -1;
+            private int position;
+
+            @Override
+            public int read() {
+                final byte[] current = count == -1 ? start : count < items ? item : end;
+                if (count > items) return -1;
+                final int c = current[position++];
+                if (position == current.length) {
+                    position = 0;
+                    count++;
+                }
+                return c;
+            }
+        };
+    }
+
+    @Test
+    void testLargeStream() {
+        final int items = 500_000;
+        final NodeReader reader = new NodeBuilder(newFeed(items)).getReader();
+        int found = 0;
+        while (reader.nextElement())
+            if (reader.getTagName().equals("item")) found++;
+        assertEquals(items, found);
+    }
+}
@@ -0,0 +1,53 @@
+package it.fulminazzo.tagparser.nodes;
+
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Predicate;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Measures how {@link Node#findAll(Predicate, ForkJoinPool)} scales with the number of threads.
+ * Run with <code>gradle benchmark</code>.
+ */
+@Tag("benchmark")
+class NodeSpliteratorBenchmark {
+    private static final int WARMUP = 5;
+    private static final int ITERATIONS = 10;
+
+    @Test
+    void benchmarkFindAll() {
+        final Node document = NodeSpliteratorTest.newDocument(2_000, 500);
+        // An artificially expensive predicate, like matching attributes against a pattern.
+        final Predicate<Node> predicate = n -> {
+            final String value = n.getAttribute("n");
+            return value != null && value.matches("\\d+-\\d*7") && n.getTagName().equals("item");
+        };
+        final int expected = document.findAll(predicate, 1).size();
+
+        final int processors = Runtime.getRuntime().availableProcessors();
+        System.out.printf("findAll over %s nodes, %s processors%n", document.stream().count(), processors);
+        double base = 0;
+        for (int threads = 1; threads <= Math.max(processors, 8); threads *= 2) {
+            final ForkJoinPool pool = new ForkJoinPool(threads);
+            long total = 0;
+            try {
+                for (int i = 0; i < WARMUP; i++) document.findAll(predicate, pool);
+                for (int i = 0; i < ITERATIONS; i++) {
+                    final long start = System.nanoTime();
+                    final List<Node> nodes = document.findAll(predicate, pool);
+                    total += System.nanoTime() - start;
+                    assertEquals(expected, nodes.size());
+                }
+            } finally {
+                pool.shutdown();
+            }
+            final double millis = total / 1e6 / ITERATIONS;
+            if (threads == 1) base = millis;
+            System.out.printf("threads: %2d  time: %8.2f ms  speedup: %.2fx%n", threads, millis, base / millis);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package it.fulminazzo.tagparser.nodes;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeSpliteratorTest {
+
+    static ContainerNode newDocument(int sections, int items) {
+        final ContainerNode body = new ContainerNode("body");
+        for (int i = 0; i < sections; i++) {
+            final ContainerNode section = new ContainerNode("section").setAttribute("id", String.valueOf(i));
+            for (int j = 0; j < items; j++)
+                section.addChild(new Node(j % 10 == 0 ? "link" : "item").setAttribute("n", i + "-" + j));
+            body.addChild(section);
+        }
+        return new ContainerNode("html").addChild(body);
+    }
+
+    @Test
+    void testSplitAtChildren() {
+        final Node document = newDocument(4, 3);
+        final Spliterator<Node> suffix = document.spliterator();
+        final Spliterator<Node> prefix = suffix.trySplit();
+        assertNotNull(prefix);
+        final StringBuilder order = new StringBuilder();
+        prefix.forEachRemaining(n -> order.append(n.getTagName()).append(' '));
+        assertEquals("html body section item item item section item item item ", order.toString().replace("link", "item"));
+        assertEquals(8, countRemaining(suffix));
+    }
+
+    private static int countRemaining(Spliterator<Node> spliterator) {
+        final int[] count = new int[1];
+        spliterator.forEachRemaining(n -> count[0]++);
+        return count[0];
+    }
+
+    @Test
+    void testParallelStreamDocumentOrder() {
+        final Node document = newDocument(200, 50);
+        final List<Node> expected = document.stream().collect(Collectors.toList());
+        final List<Node> actual = document.parallelStream().collect(Collectors.toList());
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) assertSame(expected.get(i), actual.get(i));
+    }
+
+    @Test
+    void testFindAll() {
+        final Node document = newDocument(100, 100);
+        final List<Node> expected = document.findAll(n -> n.getTagName().equals("link"), 1);
+        assertEquals(1000, expected.size());
+        for (int parallelism : new int[]{2, 4, 8}) {
+            final List<Node> actual = document.findAll(n -> n.getTagName().equals("link"), parallelism);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) assertSame(expected.get(i), actual.get(i));
+        }
+    }
+
+    @Test
+    void testFindAllWithPool() {
+        final Node document = newDocument(100, 100);
+        final List<Node> expected = document.findAll(n -> n.getTagName().equals("link"), 1);
+        final ForkJoinPool pool = new ForkJoinPool(3);
+        try {
+            final List<Node> actual = document.findAll(n -> n.getTagName().equals("link"), pool);
+            assertEquals(expected.size(), actual.size());
+            for (int i = 0; i < expected.size(); i++) assertSame(expected.get(i), actual.get(i));
+            assertThrows(IllegalStateException.class, () -> document.findAll(n -> {
+                throw new IllegalStateException();
+            }, pool));
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testLeafDoesNotSplit() {
+        assertNull(new Node("leaf").spliterator().trySplit());
+    }
+}
@@ -218,7 +218,7 @@ public class NodeTest {
         @Test
         void testToHTML() {
             setAttributes();
-            final String expected = "<test key1=\"value1\" key2=\"value\\\"2\\\"\" key3=\"value3\" key4/>";
+            final String expected = "<test key1=\"value1\" key2=\"value&quot;2&quot;\" key3=\"value3\" key4/>";
             assertEquals(expected, node.toHTML());
         }
 
@@ -0,0 +1,198 @@
+package it.fulminazzo.tagparser.nodes;
+
+import it.fulminazzo.tagparser.markup.HTMLObject;
+import it.fulminazzo.tagparser.utils.Entities;
+import it.fulminazzo.tagparser.utils.StringUtils;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NodeWriterTest {
+
+    /**
+     * The previous, recursive implementation of {@link Node#toHTML()}, with the current escaping of attributes.
+     *
+     * @param node the node
+     * @return the html
+     */
+    private static String recursiveToHTML(Node node) {
+        if (node instanceof CommentNode) return "<!--" + ((CommentNode) node).getComment() + "-->";
+        final StringBuilder builder = new StringBuilder("<").append(node.getTagName());
+        node.getAttributes().forEach((k, v) -> {
+            builder.append(" ").append(k);
+            if (v != null) builder.append("=\"").append(Entities.escape(v, Entities.ATTRIBUTE)).append("\"");
+        });
+        if (!(node instanceof ContainerNode)) return builder.append("/>").toString();
+        final ContainerNode container = (ContainerNode) node;
+        builder.append(">");
+        if (container.getText() != null) builder.append(StringUtils.unParseContent(container.getText()));
+        for (Node child = container.getChild(); child != null; child = child.getNext())
+            builder.append("\n").append(ContainerNode.INDENTATION)
+                    .append(recursiveToHTML(child).replace("\n", "\n" + ContainerNode.INDENTATION));
+        if (container.getChild() != null) builder.append("\n");
+        return builder.append("</").append(node.getTagName()).append(">").toString();
+    }
+
+    @Test
+    void testSameAsRecursive() {
+        final Node node = new NodeBuilder(new File(NodeTest.RESOURCES, "index.html")).keepComments().build();
+        assertNotNull(node);
+        assertEquals(recursiveToHTML(node), node.toHTML());
+    }
+
+    @Test
+    void testMultilineContents() {
+        final ContainerNode root = new ContainerNode("root").setText("first\nsecond");
+        root.addChild(new ContainerNode("a").setText("line\nline").addChild(new Node("b").setAttribute("v", "x\ny")));
+        root.addChild(new CommentNode(" one\ntwo "));
+        assertEquals(recursiveToHTML(root), root.toHTML());
+    }
+
+    private static String write(Node node, NodeWriterOptions options) throws IOException {
+        final StringBuilder output = new StringBuilder();
+        options.apply(new NodeWriter(output)).write(node);
+        return output.toString();
+    }
+
+    private interface NodeWriterOptions {
+        NodeWriter apply(NodeWriter writer);
+    }
+
+    private static ContainerNode newDocument() {
+        final ContainerNode root = new ContainerNode("root").setText("  first \n\t second ");
+        root.addChild(new CommentNode(" comment "));
+        root.addChild(new ContainerNode("a").setText("text").addChild(new Node("b").setAttribute("v", "x\ny")));
+        return root;
+    }
+
+    @Test
+    void testDefaultOptions() throws IOException {
+        final ContainerNode root = newDocument();
+        assertEquals(root.toHTML(), write(root, w -> w.indentation("    ").newLine("\n")));
+    }
+
+    @Test
+    void testIndentationAndNewLine() throws IOException {
+        assertEquals("<root>  first \r\n\t second \r\n" +
+                "\t<!-- comment -->\r\n" +
+                "\t<a>text\r\n" +
+                "\t\t<b v=\"x\r\n\t\ty\"/>\r\n" +
+                "\t</a>\r\n" +
+                "</root>", write(newDocument(), w -> w.indentation("\t").newLine("\r\n")));
+    }
+
+    @Test
+    void testMinify() throws IOException {
+        assertEquals("<root> first second <a>text<b v=\"x\ny\"/></a></root>",
+                write(newDocument(), NodeWriter::minify));
+    }
+
+    private static String minify(String html) throws IOException {
+        final StringBuilder output = new StringBuilder();
+        new HTMLObject(html).write(new NodeWriter(output).minify());
+        return output.toString();
+    }
+
+    @Test
+    void testMinifyKeepsRawText() throws IOException {
+        assertEquals("<!DOCTYPE html><script>// hello\nvar x = 1;</script>",
+                minify("<script>// hello\nvar x = 1;</script>"));
+    }
+
+    @Test
+    void testMinifyKeepsPreformattedText() throws IOException {
+        assertEquals("<!DOCTYPE html><pre>a\n  b</pre>", minify("<pre>a\n  b</pre>"));
+        assertEquals("<!DOCTYPE html><div><pre>a\n  b<i> c  d </i></pre><p> e f </p></div>",
+                minify("<div><pre>a\n  b<i> c  d </i></pre><p>  e \n f </p></div>"));
+        assertEquals("<!DOCTYPE html><textarea>a\n  b</textarea>", minify("<textarea>a\n  b</textarea>"));
+    }
+
+    @Test
+    void testEscapedRoundTrip() {
+        final String html = "<a title=\"x &amp; &quot;y&quot; <z>\">it&apos;s &lt;b&gt; &amp;amp;</a>";
+        final Node node = new NodeBuilder(html).build();
+        assertNotNull(node);
+        assertEquals("x & \"y\" <z>", node.getAttribute("title"));
+        assertEquals(html, node.toHTML());
+    }
+
+    @Test
+    void testWriteToStreamAndChannel() throws IOException {
+        final ContainerNode root = new ContainerNode("p").setText("caf\u00e9 \u20ac");
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (NodeWriter writer = new NodeWriter(stream, StandardCharsets.UTF_8)) {
+            writer.write(root);
+        }
+        assertEquals(root.toHTML(), new String(stream.toByteArray(), StandardCharsets.UTF_8));
+
+        final ByteArrayOutputStream channel = new ByteArrayOutputStream();
+        final NodeWriter writer = new NodeWriter(Channels.newChannel(channel), StandardCharsets.UTF_16BE);
+        writer.write(root).flush();
+        assertEquals(root.toHTML(), new String(channel.toByteArray(), StandardCharsets.UTF_16BE));
+    }
+
+    @Test
+    void testUnmappableCharacters() throws IOException {
+        final ContainerNode root = new ContainerNode("p").setText("snow \u2603 caf\u00e9 \ud83d\ude00")
+                .setAttribute("title", "\u2603");
+        final ByteArrayOutputStream stream = new ByteArrayOutputStream();
+        try (NodeWriter writer = new NodeWriter(stream, StandardCharsets.ISO_8859_1)) {
+            writer.write(root);
+        }
+        final String html = new String(stream.toByteArray(), StandardCharsets.ISO_8859_1);
+        assertEquals("<p title=\"&#9731;\">snow &#9731; caf\u00e9 &#128512;</p>", html);
+        assertEquals(root, new NodeBuilder(html).build());
+
+        final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        try (NodeWriter writer = new NodeWriter(Channels.newChannel(raw), StandardCharsets.US_ASCII)) {
+            writer.append("<s>").writeText("\u2603", Entities.RAW_TEXT).append("</s>");
+        }
+        assertEquals("<s>?</s>", new String(raw.toByteArray(), StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    void testDeeplyNested() throws IOException {
+        final int depth = 10_000;
+        final ContainerNode root = new ContainerNode("n");
+        ContainerNode current = root;
+        for (int i = 1; i < depth; i++) {
+            final ContainerNode child = new ContainerNode("n");
+            current.addChild(child);
+            current = child;
+        }
+        final CountingAppendable output = new CountingAppendable();
+        new NodeWriter(output).write(root);
+        // Every level but the last one writes its tags and two lines, indented by the level.
+        long expected = 0;
+        for (long i = 0; i < depth; i++) expected += "<n></n>".length() + (i < depth - 1 ? 2 + 2 * 4 * i + 4 : 0);
+        assertEquals(expected, output.count);
+    }
+
+    private static final class CountingAppendable implements Appendable {
+        private long count;
+
+        @Override
+        public Appendable append(CharSequence csq) {
+            count += csq.length();
+            return this;
+        }
+
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) {
+            count += end - start;
+            return this;
+        }
+
+        @Override
+        public Appendable append(char c) {
+            count++;
+            return this;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package it.fulminazzo.tagparser.nodes.lexer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CharInputTest {
+
+    @Test
+    void testReadString() throws IOException {
+        final CharInput input = new CharInput("<a/>");
+        assertEquals('<', input.peek());
+        assertEquals("<a/>", readAll(input));
+        assertFalse(input.hasRemaining());
+        assertEquals(-1, input.peek());
+    }
+
+    @Test
+    void testReadStreamAcrossWindows() throws IOException {
+        final StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 1000; i++) expected.append("<item>caff\u00e8 \u20ac").append(i).append("</item>");
+        final byte[] bytes = expected.toString().getBytes(StandardCharsets.UTF_8);
+        final CharInput input = new CharInput(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8, 17, true);
+        assertEquals(expected.toString(), readAll(input));
+        assertFalse(input.hasRemaining());
+    }
+
+    @Test
+    void testReadEmptyStream() throws IOException {
+        final CharInput input = new CharInput(new ByteArrayInputStream(new byte[0]),
+                StandardCharsets.UTF_8, CharInput.DEFAULT_BUFFER_SIZE, false);
+        assertFalse(input.hasRemaining());
+        assertEquals(-1, input.read());
+    }
+
+    private static String readAll(CharInput input) throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        int read;
+        while ((read = input.read()) != -1) builder.append((char) read);
+        return builder.toString();
+    }
+}
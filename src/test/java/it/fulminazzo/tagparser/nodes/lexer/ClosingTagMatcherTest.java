@@ -0,0 +1,34 @@
+package it.fulminazzo.tagparser.nodes.lexer;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ClosingTagMatcherTest {
+
+    static Object[][] getMatcherTests() {
+        return new Object[][]{
+                new Object[]{"test", "Contents</test>", 15},
+                new Object[]{"test", "</tes</test>", 12},
+                new Object[]{"test", "<</test>", 8},
+                new Object[]{"test", "</test </test>", 14},
+                new Object[]{"test", "</TEST>", -1},
+                new Object[]{"a", "</b></a></a>", 8},
+                new Object[]{"description", "</descr></description>", 22},
+        };
+    }
+
+    @ParameterizedTest
+    @MethodSource("getMatcherTests")
+    void testMatch(String tagName, String raw, int expected) {
+        final ClosingTagMatcher matcher = new ClosingTagMatcher(tagName);
+        int end = -1;
+        for (int i = 0; i < raw.length(); i++)
+            if (matcher.accept(raw.charAt(i))) {
+                end = i + 1;
+                break;
+            }
+        assertEquals(expected, end);
+    }
+}
@@ -0,0 +1,68 @@
+package it.fulminazzo.tagparser.nodes.lexer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class NodeLexerTest {
+
+    static Object[][] getAttributesTests() {
+        return new Object[][]{
+                new Object[]{" key=value>", new String[]{"key", "value"}, '>'},
+                new Object[]{" key=value/>", new String[]{"key", "value"}, '/'},
+                new Object[]{" key=\"value\" />", new String[]{"key", "value"}, '/'},
+                new Object[]{" href=\"https://example.com/\">", new String[]{"href", "https://example.com/"}, '>'},
+                new Object[]{"\n\tkey1 = 'a b'\n key2>", new String[]{"key1", "a b", "key2", null}, '>'},
+                new Object[]{" key=\"\\\"quoted\\\"\">", new String[]{"key", "\\\"quoted\\\""}, '>'},
+                new Object[]{" version=\"1.0\" encoding=\"UTF-8\"?>", new String[]{"version", "1.0", "encoding", "UTF-8"}, '>'},
+                new Object[]{" key=value", new String[]{"key", "value"}, -1},
+        };
+    }
+
+    @ParameterizedTest
+    @MethodSource("getAttributesTests")
+    void testReadAttributes(String raw, String[] expected, int end) throws IOException {
+        final Map<String, String> expectedAttributes = new LinkedHashMap<>();
+        for (int i = 0; i < expected.length; i += 2) expectedAttributes.put(expected[i], expected[i + 1]);
+        final Map<String, String> attributes = new LinkedHashMap<>();
+        final NodeLexer lexer = new NodeLexer(new CharInput(raw));
+        assertEquals(end, lexer.readAttributes(attributes));
+        assertEquals(expectedAttributes, attributes);
+    }
+
+    static Object[][] getMarkupTests() {
+        return new Object[][]{
+                new Object[]{"!-- comment -- still comment -->", NodeLexer.COMMENT, " comment -- still comment "},
+                new Object[]{"!---->", NodeLexer.COMMENT, ""},
+                new Object[]{"![CDATA[<a>]]]>", NodeLexer.CDATA, "<a>]"},
+                new Object[]{"!DOCTYPE html>", NodeLexer.DECLARATION, "DOCTYPE html"},
+                new Object[]{"![CDAT>", NodeLexer.DECLARATION, "[CDAT"},
+                new Object[]{"?xml version=\"1.0\"?>", NodeLexer.PROCESSING_INSTRUCTION, "xml version=\"1.0\""},
+        };
+    }
+
+    @ParameterizedTest
+    @MethodSource("getMarkupTests")
+    void testReadMarkup(String raw, int type, String expected) throws IOException {
+        final NodeLexer lexer = new NodeLexer(new CharInput(raw + "<next/>"));
+        final StringBuilder builder = new StringBuilder();
+        assertEquals(type, lexer.readMarkup(builder));
+        assertEquals(expected, builder.toString());
+        assertEquals('<', lexer.peek());
+    }
+
+    @Test
+    void testReadWhile() throws IOException {
+        final NodeLexer lexer = new NodeLexer(new CharInput("  tag-name attr"));
+        final StringBuilder builder = new StringBuilder();
+        assertEquals('t', lexer.skipWhitespace());
+        assertEquals(' ', lexer.readWhile(CharClasses::isNameChar, builder));
+        assertEquals("tag-name", builder.toString());
+    }
+}
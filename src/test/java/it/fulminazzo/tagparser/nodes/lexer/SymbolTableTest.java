@@ -0,0 +1,86 @@
+package it.fulminazzo.tagparser.nodes.lexer;
+
+import it.fulminazzo.tagparser.nodes.ContainerNode;
+import it.fulminazzo.tagparser.nodes.Node;
+import it.fulminazzo.tagparser.nodes.NodeBuilder;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SymbolTableTest {
+
+    @Test
+    void testSameInstance() {
+        final SymbolTable table = new SymbolTable(100, 10);
+        final String first = table.get(new StringBuilder("<item>"), 1, 5);
+        assertEquals("item", first);
+        assertSame(first, table.get("an item", 3, 7));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    void testBounds() {
+        final SymbolTable table = new SymbolTable(2, 4);
+        table.get("a", 0, 1);
+        table.get("b", 0, 1);
+        final String c = table.get("c", 0, 1);
+        assertNotSame(c, table.get(new StringBuilder("c"), 0, 1));
+        assertNotSame(table.get(new StringBuilder("long!"), 0, 5), table.get(new StringBuilder("long!"), 0, 5));
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    void testGrowth() {
+        final SymbolTable table = new SymbolTable(10_000, 10);
+        final List<String> symbols = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) symbols.add(table.get(new StringBuilder("s" + i), 0, ("s" + i).length()));
+        for (int i = 0; i < 5_000; i++) assertSame(symbols.get(i), table.get("s" + i, 0, ("s" + i).length()));
+    }
+
+    @Test
+    void testConcurrentLookups() throws Exception {
+        final SymbolTable table = new SymbolTable(10_000, 10);
+        final ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            final List<Future<String[]>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++)
+                futures.add(executor.submit(() -> {
+                    final String[] symbols = new String[2_000];
+                    for (int i = 0; i < symbols.length; i++)
+                        symbols[i] = table.get(new StringBuilder("n" + i), 0, ("n" + i).length());
+                    return symbols;
+                }));
+            final String[] first = futures.get(0).get();
+            for (Future<String[]> future : futures) {
+                final String[] symbols = future.get();
+                for (int i = 0; i < symbols.length; i++) assertSame(first[i], symbols[i]);
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testParsedNamesAreCanonical() {
+        final Node node = new NodeBuilder("<div class=\"a\"><div class=\"a\"></div><custom class=\"a\"></custom></div>")
+                .internAttributeValues().build();
+        assertInstanceOf(ContainerNode.class, node);
+        final Node first = ((ContainerNode) node).getChild();
+        final Node second = first.getNext();
+        assertSame("div", node.getTagName());
+        assertSame("div", first.getTagName());
+        assertSame(first.getAttributes().keySet().iterator().next(), "class");
+        assertSame(node.getAttribute("class"), first.getAttribute("class"));
+        assertSame(first.getAttribute("class"), second.getAttribute("class"));
+        assertSame(second.getTagName(), new NodeBuilder("<custom></custom>").build().getTagName());
+    }
+
+    @Test
+    void testValuesNotInternedByDefault() {
+        final ContainerNode node = (ContainerNode) new NodeBuilder("<a v=\"x\"><b v=\"x\"></b></a>").build();
+        assertNotSame(node.getAttribute("v"), node.getChild().getAttribute("v"));
+    }
+}
@@ -0,0 +1,37 @@
+package it.fulminazzo.tagparser.nodes.validators;
+
+import it.fulminazzo.tagparser.nodes.Node;
+import it.fulminazzo.tagparser.nodes.NodeBuilder;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NameValidatorTest {
+
+    @ParameterizedTest
+    @ValueSource(strings = {"a", "A", "a1", "h1", "xml:lang", "data-id", "a_b.c", "a-", "a.", "1a", "-a", "",
+            "a b", "a@b", "\u00e0", "a\u00e0", "#comment", "aB9", "a--b"})
+    void testIsValidNameSameAsRegex(String name) {
+        assertEquals(name.matches(Node.TAG_NAME_REGEX), NameValidator.isValidName(name), name);
+        assertEquals(name.matches(Node.TAG_NAME_REGEX), NameValidator.matches(name, Node.TAG_NAME_REGEX), name);
+    }
+
+    @Test
+    void testCustomRegexIsCompiledOnce() {
+        final String regex = "[a-z]+_";
+        assertSame(NameValidator.compile(regex), NameValidator.compile(regex));
+        assertTrue(NameValidator.matches("tag_", regex));
+        assertFalse(NameValidator.matches("tag", regex));
+    }
+
+    @Test
+    void testBuilderWithCustomRegex() {
+        final NodeBuilder builder = new NodeBuilder("<tag_><child_></child_></tag_>");
+        builder.setTagNameRegex("[a-z]+_");
+        final Node node = builder.build();
+        assertNotNull(node);
+        assertEquals("tag_", node.getTagName());
+    }
+}
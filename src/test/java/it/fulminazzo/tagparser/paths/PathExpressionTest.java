@@ -0,0 +1,124 @@
+package it.fulminazzo.tagparser.paths;
+
+import it.fulminazzo.tagparser.markup.XMLObject;
+import it.fulminazzo.tagparser.nodes.Node;
+import it.fulminazzo.tagparser.paths.exceptions.PathSyntaxException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PathExpressionTest {
+    private static final String CONFIG = "<config>" +
+            "<database id=\"main\" type=\"mysql\"><host>localhost</host><port>3306</port></database>" +
+            "<database id=\"backup\" type=\"postgres\"><host>remote</host><port>5432</port></database>" +
+            "<servers>" +
+            "<server name=\"a\"><server name=\"a1\"></server><server name=\"a2\"></server></server>" +
+            "<server name=\"b\"><port>80</port></server>" +
+            "</servers>" +
+            "</config>";
+    private XMLObject xmlObject;
+
+    @BeforeEach
+    void setUp() {
+        xmlObject = new XMLObject(CONFIG);
+    }
+
+    private static Stream<Arguments> getValuePaths() {
+        return Stream.of(
+                Arguments.of("/config/database/host/text()", Arrays.asList("localhost", "remote")),
+                Arguments.of("/config/database/@type", Arrays.asList("mysql", "postgres")),
+                Arguments.of("/config/database[@id='backup']/port/text()", Collections.singletonList("5432")),
+                Arguments.of("/config/database[@id!='backup']/@id", Collections.singletonList("main")),
+                Arguments.of("/config/database[2]/@id", Collections.singletonList("backup")),
+                Arguments.of("/config/database[last()]/@id", Collections.singletonList("backup")),
+                Arguments.of("/config/database[host='remote']/@type", Collections.singletonList("postgres")),
+                Arguments.of("/config/*[port]/@id", Arrays.asList("main", "backup")),
+                Arguments.of("//port/text()", Arrays.asList("3306", "5432", "80")),
+                Arguments.of("//server/@name", Arrays.asList("a", "a1", "a2", "b")),
+                Arguments.of("//server[1]/@name", Arrays.asList("a", "a1")),
+                Arguments.of("//server//server/@name", Arrays.asList("a1", "a2")),
+                Arguments.of("//servers//*/@name", Arrays.asList("a", "a1", "a2", "b")),
+                Arguments.of("//server[port]/port/text()", Collections.singletonList("80")),
+                Arguments.of("//*[@id='main']/host/text()", Collections.singletonList("localhost")),
+                Arguments.of("//database[port][text()='x']/@id", Collections.emptyList()),
+                Arguments.of("/servers/server", Collections.emptyList()),
+                Arguments.of("servers/server[2]/@name", Collections.singletonList("b"))
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("getValuePaths")
+    void testSelectValues(String path, List<String> expected) {
+        assertEquals(expected, PathExpression.compile(path).selectValues(xmlObject));
+    }
+
+    @ParameterizedTest
+    @MethodSource("getValuePaths")
+    void testSelectValuesIndexed(String path, List<String> expected) {
+        xmlObject.enableIndex();
+        assertEquals(expected, PathExpression.compile(path).selectValues(xmlObject));
+    }
+
+    @Test
+    void testSelectNode() {
+        final PathExpression path = PathExpression.compile("//database[@id='backup']");
+        final Node node = path.selectNode(xmlObject);
+        assertNotNull(node);
+        assertEquals("postgres", node.getAttribute("type"));
+        assertEquals("localhost", PathExpression.compile("//host/text()").selectValue(xmlObject));
+        assertNull(PathExpression.compile("//missing").selectNode(xmlObject));
+    }
+
+    @Test
+    void testRelativePath() {
+        final Node database = PathExpression.compile("/config/database").selectNode(xmlObject);
+        assertEquals(Collections.singletonList("3306"), PathExpression.compile("port/text()").selectValues(database));
+        assertEquals("main", PathExpression.compile("@id").selectValue(database));
+    }
+
+    @Test
+    void testExplain() {
+        final PathExpression path = PathExpression.compile("//database[@id='main']/host/text()");
+        assertEquals("//database[@id='main']/host/text()\n" +
+                "  1. //database[@id='main']: scan of descendants\n" +
+                "  2. /host: scan of children\n" +
+                "  3. text()\n" +
+                "  results: collected and sorted in document order", path.explain(xmlObject));
+        xmlObject.enableIndex();
+        assertTrue(path.explain(xmlObject).contains("1. //database[@id='main']: index lookup by id"));
+        assertTrue(PathExpression.compile("//port").explain(xmlObject).contains("index lookup by tag name"));
+        assertTrue(PathExpression.compile("/config/database").explain(xmlObject).contains("streamed in document order"));
+    }
+
+    @Test
+    void testDuplicateIdsIndexed() {
+        final XMLObject object = new XMLObject("<r><s id=\"k\">w</s><d id=\"k\">v</d><d id=\"k\">u</d></r>");
+        final PathExpression path = PathExpression.compile("//d[@id='k']/text()");
+        assertEquals(Arrays.asList("v", "u"), path.selectValues(object));
+        object.enableIndex();
+        assertEquals(Arrays.asList("v", "u"), path.selectValues(object));
+        assertEquals("v", path.selectValue(object));
+    }
+
+    @Test
+    void testCompileIsCached() {
+        assertSame(PathExpression.compile("/config/database"), PathExpression.compile("/config/database"));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "/", "/config/", "/config[", "/config[0]", "/config[@id=main]", "/config/text()/port",
+            "/config[@id='main]", "/config$", "//config//@id"})
+    void testInvalidPaths(String path) {
+        assertThrows(PathSyntaxException.class, () -> PathExpression.compile(path));
+    }
+}
@@ -0,0 +1,131 @@
+package it.fulminazzo.tagparser.selectors;
+
+import it.fulminazzo.tagparser.markup.HTMLObject;
+import it.fulminazzo.tagparser.nodes.ContainerNode;
+import it.fulminazzo.tagparser.nodes.Node;
+import it.fulminazzo.tagparser.nodes.NodeTest;
+import it.fulminazzo.tagparser.selectors.exceptions.SelectorSyntaxException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.File;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SelectorTest {
+    private HTMLObject htmlObject;
+
+    @BeforeEach
+    void setUp() {
+        htmlObject = new HTMLObject(new File(NodeTest.RESOURCES, "index.html"));
+    }
+
+    private static Stream<Arguments> getSelectors() {
+        return Stream.of(
+                Arguments.of("rect", 3),
+                Arguments.of("*", 21),
+                Arguments.of("button.button-two", 1),
+                Arguments.of(".line", 6),
+                Arguments.of(".line.top", 2),
+                Arguments.of("svg > rect", 3),
+                Arguments.of("div rect", 3),
+                Arguments.of("body > rect", 0),
+                Arguments.of("html > head > title", 1),
+                Arguments.of("p + button", 1),
+                Arguments.of("p ~ button", 3),
+                Arguments.of("button + p", 0),
+                Arguments.of("[aria-expanded]", 3),
+                Arguments.of("[aria-expanded=false]", 2),
+                Arguments.of("[aria-expanded='undefined']", 1),
+                Arguments.of("[class~=middle]", 1),
+                Arguments.of("[class|=button]", 3),
+                Arguments.of("[fill^=var]", 1),
+                Arguments.of("[src$=\".js\"]", 1),
+                Arguments.of("[viewbox*=\"100 100\"]", 2),
+                Arguments.of("rect:first-child", 1),
+                Arguments.of("rect:last-child", 1),
+                Arguments.of("svg:only-child", 3),
+                Arguments.of("button:nth-child(2n)", 2),
+                Arguments.of("button:nth-child(odd)", 1),
+                Arguments.of("div > :nth-last-child(1)", 1),
+                Arguments.of("line:empty", 2),
+                Arguments.of("button:not(.button-two)", 2),
+                Arguments.of("title, script, link", 3),
+                Arguments.of("#missing", 0)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("getSelectors")
+    void testSelect(String selector, int expected) {
+        final List<Node> nodes = htmlObject.select(selector);
+        assertEquals(expected, nodes.size(), String.format("Invalid matches for %s: %s", selector, nodes));
+    }
+
+    @ParameterizedTest
+    @MethodSource("getSelectors")
+    void testSelectIndexed(String selector, int expected) {
+        htmlObject.enableIndex();
+        assertEquals(expected, htmlObject.select(selector).size());
+    }
+
+    @Test
+    void testDocumentOrder() {
+        final List<String> classes = htmlObject.select("button, svg").stream()
+                .map(n -> n.getAttribute("class"))
+                .collect(Collectors.toList());
+        assertEquals(java.util.Arrays.asList("button-one", "hamburger", "button-two", "hamburger",
+                "button-three", "hamburger"), classes);
+    }
+
+    @Test
+    void testSelectFirst() {
+        final Node node = htmlObject.selectFirst("div.examples > button[aria-expanded^=f]");
+        assertNotNull(node);
+        assertEquals("button-one", node.getAttribute("class"));
+        assertNull(htmlObject.selectFirst("table"));
+    }
+
+    @Test
+    void testCombinatorsStayInsideRoot() {
+        final Node body = htmlObject.getBody();
+        assertNotNull(body);
+        assertEquals(0, Selector.compile("html div").select(body).size());
+        assertEquals(1, Selector.compile("body div").select(body).size());
+    }
+
+    @Test
+    void testMultipleIds() {
+        final ContainerNode root = new ContainerNode("root");
+        root.addChild(new Node("a").setAttribute("id", "x"));
+        assertEquals(1, Selector.compile("#x#x").select(root).size());
+        assertEquals(0, Selector.compile("#x#y").select(root).size());
+    }
+
+    @Test
+    void testEscapedIdentifier() {
+        final ContainerNode root = new ContainerNode("root");
+        root.addChild(new Node("a").setAttribute("class", "w-1/2"));
+        assertEquals(1, Selector.compile(".w-1\\/2").select(root).size());
+    }
+
+    @Test
+    void testCompileIsCached() {
+        assertSame(Selector.compile("div > p"), Selector.compile("div > p"));
+        assertEquals("div > p", Selector.compile("div > p").toString());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "div >", "> div", "div,", "[href", "[href=]", "a:unknown", "a:nth-child(x)",
+            "a:not(", "div $ p", "[href='a]"})
+    void testInvalidSelectors(String selector) {
+        assertThrows(SelectorSyntaxException.class, () -> Selector.compile(selector));
+    }
+}
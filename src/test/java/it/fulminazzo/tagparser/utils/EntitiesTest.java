@@ -0,0 +1,64 @@
+package it.fulminazzo.tagparser.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EntitiesTest {
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', quoteCharacter = '`', value = {
+            "&lt;a&gt; &amp;amp; &quot;b&quot;|<a> &amp; \"b\"",
+            "it&apos;s it&#39;s it&#x27;s it&#X27s|it's it's it's it's",
+            "a&nbsp;b|a\u00A0b",
+            "&NotEqualTilde;|\u2242\u0338",
+            "&#128512;&#x1F600;|\uD83D\uDE00\uD83D\uDE00",
+            "&#0;&#xD800;&#x110000;&#99999999999;|\uFFFD\uFFFD\uFFFD\uFFFD",
+            "&#128;&#x99;|\u20AC\u2122",
+            "&copy 2024 &notit; &notin;|\u00A9 2024 \u00ACit; \u2209",
+            "&unknown; & &# &#x; &;|&unknown; & &# &#x; &;",
+    })
+    void testDecode(String text, String expected) {
+        assertEquals(expected, Entities.decode(text));
+    }
+
+    @Test
+    void testDecodeAttribute() {
+        assertEquals("?a=1&copy=2&b=\u00A9&c=&lt2", Entities.decodeAttribute("?a=1&copy=2&b=&copy;&c=&lt2"));
+        assertEquals("\u00A9 &copyx", Entities.decodeAttribute("&copy &copyx"));
+    }
+
+    @Test
+    void testEscape() {
+        final String text = "<a href=\"x\">it's & </a>";
+        assertEquals("&lt;a href=&quot;x&quot;&gt;it&apos;s &amp; &lt;/a&gt;", Entities.escape(text, Entities.TEXT));
+        assertEquals("<a href=&quot;x&quot;>it's &amp; </a>", Entities.escape(text, Entities.ATTRIBUTE));
+        assertEquals("<a href=\"x\">it's & <\\/a>", Entities.escape(text, Entities.RAW_TEXT));
+    }
+
+    @Test
+    void testEscapeDecodeRoundTrip() {
+        final String text = "&amp;lt; \"quoted\" <tag> & it's";
+        assertEquals(text, Entities.decode(Entities.escape(text, Entities.TEXT)));
+        assertEquals(text, Entities.decodeAttribute(Entities.escape(text, Entities.ATTRIBUTE)));
+    }
+
+    @Test
+    void testSameInstanceWhenNothingToEscape() {
+        final String text = "nothing to escape";
+        assertSame(text, Entities.escape(text, Entities.TEXT));
+        final String raw = "if (a < b && c > d) e = '/';";
+        assertSame(raw, Entities.escape(raw, Entities.RAW_TEXT));
+    }
+
+    @Test
+    void testSameInstanceWhenNothingToDecode() {
+        final String text = "nothing to decode";
+        assertSame(text, Entities.decode(text));
+        final String ampersands = "a & b && c &unknown;";
+        assertSame(ampersands, Entities.decode(ampersands));
+        assertNull(Entities.decode(null));
+    }
+}